@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.google.common.collect.MapMaker;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Apps (builds) recently run on the devices, used to send sessions to the devices with the requested app already installed.
+ * <p>
+ * The build is identified by {@code zebrunner:appHash} capability (content hash of the app), or by {@code appium:app},
+ * {@code appium:bundleId}, {@code appium:appPackage} capabilities. Device without the requested build declines the session
+ * while a free device with this build exists, or while a busy device with this build exists and the request waits less than
+ * {@code APP_AFFINITY_WAIT} seconds (default 30). Every device keeps the last {@code APP_AFFINITY_APPS_PER_DEVICE} builds (default 5),
+ * the table keeps the last {@code APP_AFFINITY_SIZE} builds (default 1000). Opt-in: enabled if {@code APP_AFFINITY} is {@code true}.
+ */
+public final class AppAffinity {
+    private static final boolean ENABLED = Optional.ofNullable(System.getenv("APP_AFFINITY"))
+            .filter(StringUtils::isNotBlank)
+            .map(Boolean::parseBoolean)
+            .orElse(false);
+    private static final long WAIT = TimeUnit.SECONDS.toMillis(Optional.ofNullable(System.getenv("APP_AFFINITY_WAIT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .orElse(30L));
+    private static final int APPS_PER_DEVICE = Optional.ofNullable(System.getenv("APP_AFFINITY_APPS_PER_DEVICE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(5);
+    private static final int MAX_APPS = Optional.ofNullable(System.getenv("APP_AFFINITY_SIZE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(1000);
+    private static final List<String> APP_CAPABILITIES = List.of("app", "bundleId", "appPackage");
+    // Key - requested capabilities (the same map for all matching cycles of the request, compared by identity), value - moment
+    // of the first decline. Weak keys, so the entry is removed together with the request
+    private static final ConcurrentMap<Map<String, Object>, Long> WAITING_SINCE = new MapMaker().weakKeys().makeMap();
+    // Key - app, value - ids of the proxies with this app. Access order, the least recently used app is evicted first
+    private static final Map<String, Set<String>> APPS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+            if (size() <= MAX_APPS) {
+                return false;
+            }
+            eldest.getValue().forEach(id -> Optional.ofNullable(DEVICES.get(id))
+                    .ifPresent(apps -> apps.remove(eldest.getKey())));
+            return true;
+        }
+    };
+    // Key - proxy id, value - apps of the device, the least recently used first
+    private static final Map<String, Set<String>> DEVICES = new HashMap<>();
+
+    private AppAffinity() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Register the app of the started session
+     *
+     * @param proxy proxy of the device
+     * @param requestedCapabilities requested capabilities of the session
+     */
+    public static void onSessionStart(RemoteProxy proxy, Map<String, Object> requestedCapabilities) {
+        String app = getApp(requestedCapabilities);
+        if (app != null) {
+            add(proxy.getId(), app);
+        }
+    }
+
+    /**
+     * Check if the device should take the session
+     *
+     * @param proxy proxy of the free device that matches requested capabilities
+     * @param requestedCapabilities requested capabilities
+     * @return false if the session should wait for (or be taken by) another device with the requested app
+     */
+    public static boolean accept(MobileRemoteProxy proxy, Map<String, Object> requestedCapabilities) {
+        String app = getApp(requestedCapabilities);
+        if (app == null) {
+            return true;
+        }
+        Set<String> holders;
+        synchronized (APPS) {
+            Set<String> apps = DEVICES.get(proxy.getId());
+            if (apps != null && apps.contains(app)) {
+                return true;
+            }
+            holders = new HashSet<>(APPS.getOrDefault(app, Set.of()));
+        }
+        if (holders.isEmpty()) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Long waitingSince = WAITING_SINCE.putIfAbsent(requestedCapabilities, now);
+        boolean canWait = waitingSince == null || now - waitingSince < WAIT;
+        GridRegistry registry = proxy.getRegistry();
+        for (String id : holders) {
+            RemoteProxy holder = registry.getProxyById(id);
+            if (!(holder instanceof MobileRemoteProxy) || holder == proxy || !holder.hasCapability(requestedCapabilities)) {
+                continue;
+            }
+            MobileRemoteProxy device = (MobileRemoteProxy) holder;
+            if (device.isDown() || device.getValidationState() != MobileRemoteProxy.ValidationState.VALID
+                    || DeviceQuarantine.isQuarantined(device.getUdid())) {
+                continue;
+            }
+            if (device.getTotalUsed() == 0 || canWait) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void unregister(RemoteProxy proxy) {
+        synchronized (APPS) {
+            Set<String> apps = DEVICES.remove(proxy.getId());
+            if (apps != null) {
+                apps.forEach(app -> removeHolder(app, proxy.getId()));
+            }
+        }
+    }
+
+    static String getApp(Map<String, Object> requestedCapabilities) {
+        Optional<String> hash = CapabilityUtils.getZebrunnerCapability(requestedCapabilities, "appHash")
+                .map(String::valueOf)
+                .filter(StringUtils::isNotBlank);
+        if (hash.isPresent()) {
+            return "appHash:" + hash.get();
+        }
+        for (String capability : APP_CAPABILITIES) {
+            Optional<String> value = CapabilityUtils.getAppiumCapability(requestedCapabilities, capability)
+                    .map(String::valueOf)
+                    .filter(StringUtils::isNotBlank);
+            if (value.isPresent()) {
+                return capability + ":" + value.get();
+            }
+        }
+        return null;
+    }
+
+    static void add(String id, String app) {
+        synchronized (APPS) {
+            Set<String> apps = DEVICES.computeIfAbsent(id, key -> new LinkedHashSet<>());
+            apps.remove(app);
+            apps.add(app);
+            if (apps.size() > APPS_PER_DEVICE) {
+                Iterator<String> iterator = apps.iterator();
+                removeHolder(iterator.next(), id);
+                iterator.remove();
+            }
+            APPS.computeIfAbsent(app, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    static Set<String> getHolders(String app) {
+        synchronized (APPS) {
+            return Set.copyOf(APPS.getOrDefault(app, Set.of()));
+        }
+    }
+
+    static void clear() {
+        synchronized (APPS) {
+            APPS.clear();
+            DEVICES.clear();
+        }
+    }
+
+    private static void removeHolder(String app, String id) {
+        Set<String> holders = APPS.get(app);
+        if (holders != null) {
+            holders.remove(id);
+            if (holders.isEmpty()) {
+                APPS.remove(app);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the slots matching the requested capabilities.
+ * <p>
+ * Matching slots are cached per request fingerprint (see {@link MobileCapabilityMatcher#getFingerprint(Map)}), so lookups of
+ * the same capabilities do not run the validators against every node. The index is dropped when a node is registered or removed.
+ * The state of the slots (sessions, quarantine) is not cached.
+ */
+public final class CapabilityIndex {
+    private static final int SIZE = 1000;
+    // Key - request fingerprint, value - matching slots. Access order, the least recently used fingerprint is evicted first
+    private static final Map<String, List<TestSlot>> SLOTS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<TestSlot>> eldest) {
+            return size() > SIZE;
+        }
+    };
+    private static long version = 0;
+
+    private CapabilityIndex() {
+        //hide
+    }
+
+    /**
+     * @param proxies registered proxies
+     * @param requestedCapabilities requested capabilities
+     * @return slots matching the capabilities, regardless of their state
+     */
+    public static List<TestSlot> getSlots(Iterable<RemoteProxy> proxies, Map<String, Object> requestedCapabilities) {
+        String fingerprint = MobileCapabilityMatcher.getFingerprint(requestedCapabilities);
+        long expectedVersion;
+        synchronized (SLOTS) {
+            List<TestSlot> slots = SLOTS.get(fingerprint);
+            if (slots != null) {
+                return slots;
+            }
+            expectedVersion = version;
+        }
+        List<TestSlot> slots = new ArrayList<>();
+        for (RemoteProxy proxy : proxies) {
+            for (TestSlot slot : proxy.getTestSlots()) {
+                if (slot.matches(requestedCapabilities)) {
+                    slots.add(slot);
+                }
+            }
+        }
+        slots = Collections.unmodifiableList(slots);
+        synchronized (SLOTS) {
+            // nodes could be changed during the lookup
+            if (version == expectedVersion) {
+                SLOTS.put(fingerprint, slots);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Drop the index after registration or removal of the node
+     */
+    public static void invalidate() {
+        synchronized (SLOTS) {
+            version++;
+            SLOTS.clear();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceStatus;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling health score of the devices, used to order idle devices for new sessions
+ * (see {@link MobileRemoteProxy#getResourceUsageInPercent()}).
+ * <p>
+ * Score is from 0 (healthy) to 1 and combines recent rates of Appium check failures, new session failures,
+ * sessions released by inactivity timeout and STF status changes with the battery state from STF (level below
+ * {@code DEVICE_LOW_BATTERY} percents, default 20, temperature above {@code DEVICE_HOT_BATTERY}, default 40).
+ * Rates are exponentially weighted, so a device recovers after a series of successful sessions. Device health has
+ * {@code DEVICE_HEALTH_WEIGHT} (default 0.6) in the candidate ordering, the rest is the host load ({@link HostLoad}).
+ * Disabled if {@code DEVICE_HEALTH_SELECTION} is {@code false}.
+ */
+public final class DeviceHealth {
+    private static final boolean ENABLED = Optional.ofNullable(System.getenv("DEVICE_HEALTH_SELECTION"))
+            .filter(StringUtils::isNotBlank)
+            .map(Boolean::parseBoolean)
+            .orElse(true);
+    private static final float WEIGHT = Optional.ofNullable(System.getenv("DEVICE_HEALTH_WEIGHT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Float::parseFloat)
+            .orElse(0.6f);
+    private static final float LOW_BATTERY = Optional.ofNullable(System.getenv("DEVICE_LOW_BATTERY"))
+            .filter(StringUtils::isNotBlank)
+            .map(Float::parseFloat)
+            .orElse(20f);
+    private static final float HOT_BATTERY = Optional.ofNullable(System.getenv("DEVICE_HOT_BATTERY"))
+            .filter(StringUtils::isNotBlank)
+            .map(Float::parseFloat)
+            .orElse(40f);
+    private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    // weight of the new event in the rate, about the last 10 events matter
+    private static final double SMOOTHING = 0.1;
+    // Key - udid
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+    private static volatile Map<String, Float> scores = Map.of();
+    private static volatile long refreshedAt = System.nanoTime() - REFRESH_INTERVAL;
+
+    private DeviceHealth() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @return weight of the device health in the candidate ordering, from 0 to 1
+     */
+    public static float getWeight() {
+        return ENABLED ? WEIGHT : 0;
+    }
+
+    /**
+     * Get health score of the device calculated during the last refresh
+     *
+     * @param udid device udid
+     * @return score from 0 (healthy) to 1
+     */
+    public static float getScore(String udid) {
+        return scores.getOrDefault(udid, 0f);
+    }
+
+    public static void onAppiumCheck(String udid, boolean success) {
+        stats(udid).appiumFailures.add(success ? 0 : 1);
+    }
+
+    public static void onSessionStart(String udid, boolean success) {
+        stats(udid).sessionFailures.add(success ? 0 : 1);
+    }
+
+    /**
+     * Session is finished
+     *
+     * @param udid device udid
+     * @param timedOut true if session is released by inactivity timeout
+     */
+    public static void onSessionEnd(String udid, boolean timedOut) {
+        stats(udid).timeouts.add(timedOut ? 1 : 0);
+    }
+
+    /**
+     * Register device state received from STF
+     *
+     * @param udid device udid
+     * @param device STF device
+     */
+    public static void onSTFDevice(String udid, STFDeviceRecord device) {
+        Stats stats = stats(udid);
+        synchronized (stats) {
+            stats.statusChanges.add(stats.status != null && stats.status != device.getStatus() ? 1 : 0);
+            stats.status = device.getStatus();
+            stats.batteryLevel = device.getBatteryLevel();
+            stats.batteryTemperature = device.getBatteryTemperature();
+        }
+    }
+
+    /**
+     * Recalculate device scores if they are older than one second. Should be called on the matcher thread.
+     */
+    public static void refresh() {
+        long now = System.nanoTime();
+        if (now - refreshedAt < REFRESH_INTERVAL) {
+            return;
+        }
+        refreshedAt = now;
+        Map<String, Float> result = new HashMap<>(STATS.size() * 2);
+        STATS.forEach((udid, stats) -> result.put(udid, stats.score()));
+        scores = result;
+    }
+
+    static void clear() {
+        STATS.clear();
+        scores = Map.of();
+        refreshedAt = System.nanoTime() - REFRESH_INTERVAL;
+    }
+
+    private static Stats stats(String udid) {
+        return STATS.computeIfAbsent(udid, key -> new Stats());
+    }
+
+    /**
+     * Battery penalty from 0 to 1: low level or high temperature
+     */
+    static float batteryPenalty(float level, float temperature) {
+        float penalty = 0;
+        if (!Float.isNaN(level) && level < LOW_BATTERY) {
+            penalty = (LOW_BATTERY - level) / LOW_BATTERY;
+        }
+        if (!Float.isNaN(temperature) && temperature > HOT_BATTERY) {
+            penalty = Math.max(penalty, Math.min((temperature - HOT_BATTERY) / 10, 1));
+        }
+        return penalty;
+    }
+
+    private static final class Stats {
+        private final Rate appiumFailures = new Rate();
+        private final Rate sessionFailures = new Rate();
+        private final Rate timeouts = new Rate();
+        private final Rate statusChanges = new Rate();
+        private STFDeviceStatus status;
+        private float batteryLevel = Float.NaN;
+        private float batteryTemperature = Float.NaN;
+
+        private synchronized float score() {
+            return (float) (0.3 * appiumFailures.get()
+                    + 0.3 * sessionFailures.get()
+                    + 0.2 * timeouts.get()
+                    + 0.1 * statusChanges.get()
+                    + 0.1 * batteryPenalty(batteryLevel, batteryTemperature));
+        }
+    }
+
+    private static final class Rate {
+        private double value;
+
+        private synchronized void add(int event) {
+            value += SMOOTHING * (event - value);
+        }
+
+        private synchronized double get() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.events.GridEventType;
+import com.zebrunner.mcloud.grid.events.GridEvents;
+import com.zebrunner.mcloud.grid.jfr.QuarantineEvent;
+import com.zebrunner.mcloud.grid.journal.HubJournal;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Devices temporarily ignored for automation (quarantined).
+ * Quarantine is checked on every new session request, so any change takes effect on the next matching cycle.
+ * Expired quarantines are removed every {@link #SWEEP_INTERVAL}, so the grid state version changes when a quarantine expires.
+ */
+public final class DeviceQuarantine {
+    // Key - device udid, value - quarantine
+    private static final Map<String, Entry> DEVICE_IGNORE_AUTOMATION_TIMERS = new ConcurrentHashMap<>();
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(1);
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+
+    private DeviceQuarantine() {
+        //hide
+    }
+
+    /**
+     * Ignore device for automation
+     *
+     * @param udid    device udid
+     * @param timeout how long device should be ignored
+     * @param reason  quarantine reason
+     */
+    public static void put(String udid, Duration timeout, String reason) {
+        Entry entry = new Entry(udid, reason, Instant.now().plus(timeout));
+        DEVICE_IGNORE_AUTOMATION_TIMERS.put(udid, entry);
+        QuarantineEvent.enter(udid, reason, timeout.toSeconds());
+        onQuarantined(entry);
+    }
+
+    /**
+     * Restore device quarantine from the hub journal. Expired quarantine is ignored.
+     *
+     * @param udid       device udid
+     * @param reason     quarantine reason
+     * @param expiration moment when quarantine expires
+     */
+    public static void restore(String udid, String reason, Instant expiration) {
+        Entry entry = new Entry(udid, reason, expiration);
+        if (!entry.isActive()) {
+            return;
+        }
+        DEVICE_IGNORE_AUTOMATION_TIMERS.put(udid, entry);
+        QuarantineEvent.enter(udid, reason, Duration.between(Instant.now(), expiration).toSeconds());
+        onQuarantined(entry);
+    }
+
+    /**
+     * Extend device quarantine. If device is not quarantined, it will be quarantined for the specified time.
+     *
+     * @param udid    device udid
+     * @param timeout additional time
+     * @param reason  quarantine reason (used if device is not quarantined)
+     * @return updated quarantine
+     */
+    public static Entry extend(String udid, Duration timeout, String reason) {
+        Entry entry = DEVICE_IGNORE_AUTOMATION_TIMERS.compute(udid, (key, current) -> current != null && current.isActive() ?
+                new Entry(udid, current.getReason(), current.getExpiration().plus(timeout)) :
+                new Entry(udid, reason, Instant.now().plus(timeout)));
+        QuarantineEvent.enter(udid, entry.getReason(), Duration.between(Instant.now(), entry.getExpiration()).toSeconds());
+        onQuarantined(entry);
+        return entry;
+    }
+
+    /**
+     * Return device to automation
+     *
+     * @param udid   device udid
+     * @param reason reason (for events)
+     * @return true if device was quarantined, false otherwise
+     */
+    public static boolean clear(String udid, String reason) {
+        Entry entry = DEVICE_IGNORE_AUTOMATION_TIMERS.remove(udid);
+        if (entry == null) {
+            return false;
+        }
+        onReleased(udid, reason);
+        return entry.isActive();
+    }
+
+    /**
+     * Return all devices to automation
+     *
+     * @param reason reason (for events)
+     * @return amount of released devices
+     */
+    public static int clearAll(String reason) {
+        int released = 0;
+        for (String udid : List.copyOf(DEVICE_IGNORE_AUTOMATION_TIMERS.keySet())) {
+            if (clear(udid, reason)) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Check is device ignored for automation. Expired quarantine is removed.
+     *
+     * @param udid device udid
+     * @return true if device is quarantined, false otherwise
+     */
+    public static boolean isQuarantined(String udid) {
+        Entry entry = DEVICE_IGNORE_AUTOMATION_TIMERS.get(udid);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.isActive()) {
+            return true;
+        }
+        if (DEVICE_IGNORE_AUTOMATION_TIMERS.remove(udid, entry)) {
+            onReleased(udid, "EXPIRED");
+        }
+        return false;
+    }
+
+    /**
+     * Get moment when device quarantine expires
+     *
+     * @param udid device udid
+     * @return {@link Optional} of quarantine expiration, empty if device is not quarantined
+     */
+    public static Optional<Instant> getExpiration(String udid) {
+        return Optional.ofNullable(DEVICE_IGNORE_AUTOMATION_TIMERS.get(udid))
+                .filter(Entry::isActive)
+                .map(Entry::getExpiration);
+    }
+
+    /**
+     * Get active quarantines
+     *
+     * @return {@link List} of active quarantines
+     */
+    public static List<Entry> list() {
+        return DEVICE_IGNORE_AUTOMATION_TIMERS.values()
+                .stream()
+                .filter(Entry::isActive)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Remove expired quarantines
+     */
+    static void sweep() {
+        for (String udid : List.copyOf(DEVICE_IGNORE_AUTOMATION_TIMERS.keySet())) {
+            isQuarantined(udid);
+        }
+    }
+
+    private static void onQuarantined(Entry entry) {
+        if (STARTED.compareAndSet(false, true)) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "quarantine-sweep");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(DeviceQuarantine::sweep, SWEEP_INTERVAL.toMillis(), SWEEP_INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        HubJournal.quarantined(entry.getUdid(), entry.getReason(), entry.getExpiration());
+        GridStateVersion.increment();
+        GridEvents.publish(GridEventType.DEVICE_QUARANTINED, entry.getUdid(),
+                Map.of("reason", entry.getReason(), "until", entry.getExpiration().toEpochMilli()));
+    }
+
+    private static void onReleased(String udid, String reason) {
+        HubJournal.quarantineCleared(udid);
+        QuarantineEvent.exit(udid, reason);
+        GridStateVersion.increment();
+        GridEvents.publish(GridEventType.DEVICE_RELEASED, udid, Map.of("reason", reason));
+    }
+
+    public static final class Entry {
+        private final String udid;
+        private final String reason;
+        private final Instant expiration;
+
+        private Entry(String udid, String reason, Instant expiration) {
+            this.udid = udid;
+            this.reason = reason;
+            this.expiration = expiration;
+        }
+
+        public String getUdid() {
+            return udid;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public Instant getExpiration() {
+            return expiration;
+        }
+
+        public boolean isActive() {
+            return Instant.now().isBefore(expiration);
+        }
+    }
+}
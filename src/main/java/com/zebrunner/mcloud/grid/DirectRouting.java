@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.openqa.grid.internal.TestSession;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Direct-to-node routing.
+ * <p>
+ * If session is requested with {@code zebrunner:directRouting=true} capability, new session response is extended with
+ * {@code zebrunner:directEndpoint} (node URL, so the client can send commands directly to the node),
+ * {@code zebrunner:leasePath} (hub path of the {@code SessionLeaseServlet} for this session) and
+ * {@code zebrunner:leaseTimeout} (seconds). The hub does not see commands of such session, so the client should renew
+ * the lease (PUT) more often than the lease timeout, otherwise the session is released by the inactivity timeout.
+ * The session should be finished through the hub or by DELETE of the lease, so {@code afterSession} cleanup is done immediately.
+ */
+public final class DirectRouting {
+    public static final String DIRECT_ROUTING_CAPABILITY = "directRouting";
+    public static final String LEASE_SERVLET_PATH = "/grid/admin/SessionLeaseServlet/";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private DirectRouting() {
+        //hide
+    }
+
+    /**
+     * Check is direct routing requested for the session
+     *
+     * @param session session
+     * @return true if direct routing requested
+     */
+    public static boolean isRequested(TestSession session) {
+        return CapabilityUtils.getZebrunnerCapability(session.getRequestedCapabilities(), DIRECT_ROUTING_CAPABILITY)
+                .map(String::valueOf)
+                .map(Boolean::parseBoolean)
+                .orElse(false);
+    }
+
+    /**
+     * Add direct routing capabilities to the new session response
+     *
+     * @param session session
+     * @param body    new session response body
+     * @return updated response body, or the original body if response does not contain capabilities
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] decorateNewSessionResponse(TestSession session, byte[] body) throws IOException {
+        if (body == null || session.getExternalKey() == null) {
+            return body;
+        }
+        Map<String, Object> json = MAPPER.readValue(body, Map.class);
+        Object value = json.get("value");
+        if (!(value instanceof Map)) {
+            return body;
+        }
+        // W3C: {"value": {"sessionId": .., "capabilities": {..}}}, JSONWP: {"sessionId": .., "value": {..}}
+        Object capabilities = ((Map<String, Object>) value).get("capabilities");
+        Map<String, Object> target = capabilities instanceof Map ? (Map<String, Object>) capabilities : (Map<String, Object>) value;
+        target.put("zebrunner:directEndpoint", session.getSlot().getRemoteURL().toString());
+        target.put("zebrunner:leasePath", LEASE_SERVLET_PATH + session.getExternalKey().getKey());
+        target.put("zebrunner:leaseTimeout", session.getSlot().getProxy().getTimeOut() / 1000);
+        return MAPPER.writeValueAsBytes(json);
+    }
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version of the grid state (registrations, sessions, quarantines).
+ * Incremented after every change so observers can detect that nothing changed since the last poll.
+ */
+public final class GridStateVersion {
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    private GridStateVersion() {
+        //hide
+    }
+
+    public static long get() {
+        return VERSION.get();
+    }
+
+    public static long increment() {
+        return VERSION.incrementAndGet();
+    }
+}
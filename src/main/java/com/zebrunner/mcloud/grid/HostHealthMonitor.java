@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.integration.client.Path;
+import com.zebrunner.mcloud.grid.util.HttpClient.Response;
+import com.zebrunner.mcloud.grid.util.HttpClientApache.HttpGetWithEntity;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Health checks of the nodes grouped by Appium host.
+ * <p>
+ * Many devices are served by the same host (the same host of the node url, different ports). Nodes of the host are checked
+ * together every {@code HOST_HEALTH_CHECK_INTERVAL} seconds (default 10) with shared connections and at most
+ * {@code HOST_HEALTH_CHECK_CONCURRENCY} (default 4) requests to the host at a time, the same limit is applied to Appium
+ * status checks of the new sessions. A few nodes of the host ({@code HOST_DOWN_PROBES}, default 3) are checked first:
+ * if none of them could be reached, the whole host is down, all its devices are quarantined ({@code HOST_DOWN}) without
+ * waiting for the timeouts of every node, and the quarantine is cleared when the host is reachable again.
+ * Node liveness polling of the grid ({@link MobileRemoteProxy#isAlive()}) uses the results of the last check.
+ */
+public final class HostHealthMonitor {
+    private static final Logger LOGGER = Logger.getLogger(HostHealthMonitor.class.getName());
+    public static final String HOST_DOWN_REASON = "HOST_DOWN";
+    private static final Duration CHECK_INTERVAL = Optional.ofNullable(System.getenv("HOST_HEALTH_CHECK_INTERVAL"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(10));
+    private static final int CHECK_TIMEOUT = (int) Optional.ofNullable(System.getenv("HOST_HEALTH_CHECK_TIMEOUT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(5))
+            .toMillis();
+    private static final int CONCURRENCY = Optional.ofNullable(System.getenv("HOST_HEALTH_CHECK_CONCURRENCY"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(4);
+    private static final int DOWN_PROBES = Optional.ofNullable(System.getenv("HOST_DOWN_PROBES"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(3);
+    // Key - host, value - nodes of the host
+    private static final Map<String, Host> HOSTS = new ConcurrentHashMap<>();
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+    private static final CloseableHttpClient CLIENT = HttpClients.custom()
+            .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(CHECK_TIMEOUT)
+                    .setConnectTimeout(CHECK_TIMEOUT)
+                    .setSocketTimeout(CHECK_TIMEOUT)
+                    .build())
+            .setMaxConnTotal(1024)
+            .setMaxConnPerRoute(CONCURRENCY)
+            .disableAutomaticRetries()
+            .build();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "host-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private HostHealthMonitor() {
+        //hide
+    }
+
+    /**
+     * Start health checks of the node
+     *
+     * @param proxy node proxy
+     */
+    public static void register(MobileRemoteProxy proxy) {
+        register(proxy.getId(), proxy.getUdids(), proxy.getRemoteHost());
+    }
+
+    static void register(String id, List<String> udids, URL remoteHost) {
+        HOSTS.computeIfAbsent(remoteHost.getHost(), Host::new)
+                .nodes.put(id, new Node(udids, remoteHost));
+        if (STARTED.compareAndSet(false, true)) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "host-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(HostHealthMonitor::checkAll, CHECK_INTERVAL.toMillis(), CHECK_INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop health checks of the node
+     *
+     * @param proxy node proxy
+     */
+    public static void unregister(MobileRemoteProxy proxy) {
+        Optional.ofNullable(HOSTS.get(proxy.getRemoteHost().getHost()))
+                .ifPresent(host -> host.nodes.remove(proxy.getId()));
+    }
+
+    /**
+     * Result of the last health check of the node
+     *
+     * @param proxy node proxy
+     * @return false if the node or its host could not be reached during the last check, true otherwise
+     */
+    public static boolean isAlive(MobileRemoteProxy proxy) {
+        return isAlive(proxy.getRemoteHost(), proxy.getId());
+    }
+
+    static boolean isAlive(URL remoteHost, String id) {
+        Host host = HOSTS.get(remoteHost.getHost());
+        if (host == null) {
+            return true;
+        }
+        Node node = host.nodes.get(id);
+        return host.alive && (node == null || node.alive);
+    }
+
+    /**
+     * Check is the host reachable
+     *
+     * @param remoteHost url of the node
+     * @return false if the host was down during the last check, true otherwise
+     */
+    public static boolean isHostAlive(URL remoteHost) {
+        return Optional.ofNullable(HOSTS.get(remoteHost.getHost()))
+                .map(host -> host.alive)
+                .orElse(true);
+    }
+
+    /**
+     * Appium status check of the node ({@code /status-adb}, {@code /status-wda}) with shared connections and the host
+     * concurrency limit. Not executed if the host is down.
+     *
+     * @param remoteURL url of the node
+     * @param path status path
+     * @return response, status 0 if the host could not be reached
+     */
+    public static Response<String> appiumStatus(URL remoteURL, Path path) {
+        Response<String> result = new Response<>();
+        Host host = HOSTS.get(remoteURL.getHost());
+        if (host != null && !host.alive) {
+            result.setObject("Host is down.");
+            return result;
+        }
+        HttpGetWithEntity request = new HttpGetWithEntity(path.build(remoteURL.toString()));
+        request.setEntity(new StringEntity("{\"exitCode\": 101}", ContentType.APPLICATION_JSON));
+        Semaphore permits = host != null ? host.permits : null;
+        try {
+            if (permits != null && !permits.tryAcquire(CHECK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                result.setObject("Too many concurrent requests to the host.");
+                return result;
+            }
+            try (CloseableHttpResponse response = CLIENT.execute(request)) {
+                result.setStatus(response.getStatusLine().getStatusCode());
+                result.setObject(EntityUtils.toString(response.getEntity()));
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } catch (IOException e) {
+            result.setObject(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.setObject(e.getMessage());
+        }
+        return result;
+    }
+
+    private static void checkAll() {
+        for (Host host : HOSTS.values()) {
+            if (host.nodes.isEmpty()) {
+                HOSTS.remove(host.name, host);
+                continue;
+            }
+            // previous check of the slow host is not finished yet
+            if (host.running.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        check(host);
+                    } catch (Exception e) {
+                        LOGGER.warning(() -> String.format("[HOST-%s] Health check failed. Error message: %s", host.name, e.getMessage()));
+                    } finally {
+                        host.running.set(false);
+                    }
+                }, EXECUTOR);
+            }
+        }
+    }
+
+    static void check(String name) {
+        Optional.ofNullable(HOSTS.get(name)).ifPresent(HostHealthMonitor::check);
+    }
+
+    private static void check(Host host) {
+        List<Node> nodes = new ArrayList<>(host.nodes.values());
+        if (nodes.isEmpty()) {
+            return;
+        }
+        // other nodes are probed on the next cycles, so the host is not declared down because of a few broken nodes
+        int offset = Math.floorMod(host.cycle.getAndIncrement(), nodes.size());
+        List<Node> ordered = new ArrayList<>(nodes.subList(offset, nodes.size()));
+        ordered.addAll(nodes.subList(0, offset));
+        List<Node> probes = ordered.subList(0, Math.min(DOWN_PROBES, ordered.size()));
+        List<Node> others = ordered.subList(probes.size(), ordered.size());
+
+        List<Status> probeResults = checkNodes(host, probes);
+        if (probeResults.stream().allMatch(status -> status == Status.UNREACHABLE)) {
+            hostDown(host, nodes);
+            return;
+        }
+        hostUp(host, nodes);
+        checkNodes(host, others);
+    }
+
+    private static List<Status> checkNodes(Host host, List<Node> nodes) {
+        Status[] statuses = new Status[nodes.size()];
+        AtomicInteger next = new AtomicInteger();
+        // CONCURRENCY workers per host take the next node when the previous check is finished,
+        // so the threads do not wait for the permits of the host
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < nodes.size(); i = next.getAndIncrement()) {
+                Node node = nodes.get(i);
+                // shared with the Appium status checks of the host
+                host.permits.acquireUninterruptibly();
+                try {
+                    statuses[i] = checkNode(node);
+                    node.alive = statuses[i] == Status.ALIVE;
+                } finally {
+                    host.permits.release();
+                }
+            }
+        };
+        CompletableFuture.allOf(IntStream.range(0, Math.min(CONCURRENCY, nodes.size()))
+                        .mapToObj(i -> CompletableFuture.runAsync(worker, EXECUTOR))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+        return Arrays.asList(statuses);
+    }
+
+    private static Status checkNode(Node node) {
+        try (CloseableHttpResponse response = CLIENT.execute(new HttpGet(node.statusUrl))) {
+            int code = response.getStatusLine().getStatusCode();
+            EntityUtils.consume(response.getEntity());
+            // the same as the grid node status check
+            return code == 200 || code == 404 ? Status.ALIVE : Status.FAILED;
+        } catch (IOException e) {
+            LOGGER.fine(() -> String.format("[NODE-%s] Node could not be reached: %s", String.join(",", node.udids), e.getMessage()));
+            return Status.UNREACHABLE;
+        }
+    }
+
+    private static void hostDown(Host host, List<Node> nodes) {
+        if (host.alive) {
+            LOGGER.warning(() -> String.format("[HOST-%s] Host could not be reached, %s device(s) will be quarantined.", host.name,
+                    nodes.stream().mapToInt(node -> node.udids.size()).sum()));
+        }
+        host.alive = false;
+        for (Node node : nodes) {
+            node.alive = false;
+            for (String udid : node.udids) {
+                if (!DeviceQuarantine.isQuarantined(udid)) {
+                    DeviceQuarantine.put(udid, QuarantineTimeout.HOST_DOWN_TIMEOUT.get(), HOST_DOWN_REASON);
+                }
+            }
+        }
+    }
+
+    private static void hostUp(Host host, List<Node> nodes) {
+        if (host.alive) {
+            return;
+        }
+        host.alive = true;
+        LOGGER.warning(() -> String.format("[HOST-%s] Host is reachable again.", host.name));
+        List<String> udids = nodes.stream()
+                .flatMap(node -> node.udids.stream())
+                .collect(Collectors.toList());
+        DeviceQuarantine.list()
+                .stream()
+                .filter(entry -> HOST_DOWN_REASON.equals(entry.getReason()) && udids.contains(entry.getUdid()))
+                .forEach(entry -> DeviceQuarantine.clear(entry.getUdid(), "HOST_UP"));
+    }
+
+    private enum Status {
+        ALIVE,
+        // node responded with error
+        FAILED,
+        UNREACHABLE
+    }
+
+    private static final class Host {
+        private final String name;
+        // Key - proxy id
+        private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+        private final Semaphore permits = new Semaphore(CONCURRENCY);
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final AtomicInteger cycle = new AtomicInteger();
+        private volatile boolean alive = true;
+
+        private Host(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Node {
+        // udids of the devices of all slots
+        private final List<String> udids;
+        private final String statusUrl;
+        private volatile boolean alive = true;
+
+        private Node(List<String> udids, URL remoteHost) {
+            this.udids = List.copyOf(udids);
+            this.statusUrl = remoteHost.toExternalForm() + "/wd/hub/status";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load of the Appium hosts, used to order idle devices for new sessions (see {@link MobileRemoteProxy#getResourceUsageInPercent()}).
+ * <p>
+ * Host load combines the share of busy devices of the host and the average command latency of the host
+ * (relative to {@code HOST_LATENCY_REFERENCE} ms, default 2000). Scores are recalculated not more often than
+ * once per {@code HOST_LOAD_REFRESH_INTERVAL} ms (default 1000) on the matcher thread, so candidates of one matching
+ * cycle are always compared with the same scores. Disabled if {@code HOST_LOAD_SELECTION} is {@code false}.
+ */
+public final class HostLoad {
+    private static final boolean ENABLED = Optional.ofNullable(System.getenv("HOST_LOAD_SELECTION"))
+            .filter(StringUtils::isNotBlank)
+            .map(Boolean::parseBoolean)
+            .orElse(true);
+    private static final double LATENCY_REFERENCE = Optional.ofNullable(System.getenv("HOST_LATENCY_REFERENCE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Double::parseDouble)
+            .orElse(2000d);
+    private static final long REFRESH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(Optional.ofNullable(System.getenv("HOST_LOAD_REFRESH_INTERVAL"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .orElse(1000L));
+    private static final double LOAD_WEIGHT = 0.7;
+    // weight of the new command latency in the average
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // max score of the idle device, busy device is 100
+    private static final float MAX_SCORE = 99;
+    // Key - host, value - average command latency in ms
+    private static final Map<String, Latency> LATENCY = new ConcurrentHashMap<>();
+    private static volatile Map<String, Float> scores = Map.of();
+    private static volatile long refreshedAt = System.nanoTime() - REFRESH_INTERVAL;
+
+    private HostLoad() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Get load score of the host
+     *
+     * @param host host of the node url
+     * @return score from 0 (idle and fast host) to 99
+     */
+    public static float getScore(String host) {
+        return scores.getOrDefault(host, 0f);
+    }
+
+    /**
+     * Register command latency of the host
+     *
+     * @param host host of the node url
+     * @param nanos command duration
+     */
+    public static void onCommand(String host, long nanos) {
+        LATENCY.computeIfAbsent(host, key -> new Latency())
+                .add(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * Recalculate host scores if they are older than the refresh interval. Should be called on the matcher thread.
+     *
+     * @param registry registry
+     */
+    public static void refresh(GridRegistry registry) {
+        long now = System.nanoTime();
+        if (now - refreshedAt < REFRESH_INTERVAL) {
+            return;
+        }
+        refreshedAt = now;
+        update(registry.getAllProxies());
+    }
+
+    /**
+     * Recalculate host scores
+     *
+     * @param proxies all registered proxies
+     */
+    static void update(Iterable<? extends RemoteProxy> proxies) {
+        Map<String, int[]> usage = new HashMap<>();
+        for (RemoteProxy proxy : proxies) {
+            if (proxy.getRemoteHost() == null) {
+                continue;
+            }
+            int[] hostUsage = usage.computeIfAbsent(proxy.getRemoteHost().getHost(), key -> new int[2]);
+            hostUsage[0] += proxy.getTotalUsed();
+            hostUsage[1] += proxy.getMaxNumberOfConcurrentTestSessions();
+        }
+        Map<String, Double> latency = new HashMap<>();
+        LATENCY.forEach((host, value) -> latency.put(host, value.get()));
+        scores = compute(usage, latency);
+    }
+
+    /**
+     * Calculate host scores
+     *
+     * @param usage key - host, value - used and total number of slots
+     * @param latency key - host, value - average command latency in ms
+     * @return key - host, value - score
+     */
+    static Map<String, Float> compute(Map<String, int[]> usage, Map<String, Double> latency) {
+        Map<String, Float> result = new HashMap<>(usage.size() * 2);
+        usage.forEach((host, hostUsage) -> {
+            double load = hostUsage[1] > 0 ? (double) hostUsage[0] / hostUsage[1] : 0;
+            double slowness = Math.min(latency.getOrDefault(host, 0d) / LATENCY_REFERENCE, 1);
+            result.put(host, (float) (MAX_SCORE * (LOAD_WEIGHT * load + (1 - LOAD_WEIGHT) * slowness)));
+        });
+        return result;
+    }
+
+    private static final class Latency {
+        private double average = -1;
+
+        private synchronized void add(double value) {
+            average = average < 0 ? value : average + LATENCY_SMOOTHING * (value - average);
+        }
+
+        private synchronized double get() {
+            return Math.max(average, 0);
+        }
+    }
+}
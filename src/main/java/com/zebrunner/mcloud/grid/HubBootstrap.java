@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.integration.client.STFClient;
+import com.zebrunner.mcloud.grid.journal.HubJournal;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous hub bootstrap and node validation.
+ * <p>
+ * Node registration is accepted immediately: STF device check and MITM proxy initialization are done on the bootstrap
+ * thread. Bootstrap recovers hub state (see {@link HubJournal}) or disconnects all STF devices of the hub user, then
+ * validates nodes registered so far with one STF device snapshot. Until bootstrap is finished the hub is not ready
+ * and sessions are held in the queue.
+ * <p>
+ * Later registrations arriving within {@code NODE_VALIDATION_WINDOW} ms are validated together. Node whose device is
+ * not found in STF becomes pending and is rechecked every {@code NODE_VALIDATION_RECHECK_INTERVAL} seconds; it is removed
+ * from the registry if the device is still missing after {@code NODE_VALIDATION_PENDING_TIMEOUT} seconds.
+ */
+public final class HubBootstrap {
+    private static final Logger LOGGER = Logger.getLogger(HubBootstrap.class.getName());
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+    private static final BlockingQueue<MobileRemoteProxy> REGISTRATIONS = new LinkedBlockingQueue<>();
+    // Key - pending node, value - moment when node became pending. Used on the bootstrap thread only
+    private static final Map<MobileRemoteProxy, Instant> PENDING = new HashMap<>();
+    private static final Duration VALIDATION_WINDOW = Optional.ofNullable(System.getenv("NODE_VALIDATION_WINDOW"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofMillis)
+            .orElse(Duration.ofMillis(500));
+    private static final Duration RECHECK_INTERVAL = Optional.ofNullable(System.getenv("NODE_VALIDATION_RECHECK_INTERVAL"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(30));
+    private static final Duration PENDING_TIMEOUT = Optional.ofNullable(System.getenv("NODE_VALIDATION_PENDING_TIMEOUT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofMinutes(10));
+    private static volatile boolean ready = false;
+
+    private HubBootstrap() {
+        //hide
+    }
+
+    /**
+     * Start bootstrap if it is not started yet
+     */
+    public static void start() {
+        if (STARTED.compareAndSet(false, true)) {
+            Thread thread = new Thread(HubBootstrap::run, "hub-bootstrap");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Check is hub ready for sessions
+     *
+     * @return true if bootstrap is finished
+     */
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Queue node for validation
+     *
+     * @param proxy node proxy
+     */
+    public static void register(MobileRemoteProxy proxy) {
+        REGISTRATIONS.add(proxy);
+        start();
+    }
+
+    private static void run() {
+        long start = System.currentTimeMillis();
+        recover();
+        List<MobileRemoteProxy> proxies = new ArrayList<>();
+        REGISTRATIONS.drainTo(proxies);
+        validate(proxies);
+        ready = true;
+        GridStateVersion.increment();
+        LOGGER.warning(() -> String.format("[BOOTSTRAP] Hub is ready. Bootstrap took %s ms, %s node(s) validated, %s node(s) pending.",
+                System.currentTimeMillis() - start, proxies.size() - PENDING.size(), PENDING.size()));
+
+        long nextRecheck = System.currentTimeMillis() + RECHECK_INTERVAL.toMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                proxies.clear();
+                MobileRemoteProxy proxy = REGISTRATIONS.poll(Math.max(0, nextRecheck - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (proxy != null) {
+                    // registrations arrived within the window are validated together
+                    proxies.add(proxy);
+                    long windowEnd = System.currentTimeMillis() + VALIDATION_WINDOW.toMillis();
+                    while ((proxy = REGISTRATIONS.poll(Math.max(0, windowEnd - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) != null) {
+                        proxies.add(proxy);
+                    }
+                }
+                if (System.currentTimeMillis() >= nextRecheck) {
+                    proxies.addAll(PENDING.keySet());
+                    nextRecheck = System.currentTimeMillis() + RECHECK_INTERVAL.toMillis();
+                }
+                validate(proxies);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.warning(() -> String.format("[BOOTSTRAP] Could not validate nodes. Error message: %s", e.getMessage()));
+            }
+        }
+    }
+
+    private static void recover() {
+        try {
+            if (HubJournal.isEnabled()) {
+                try {
+                    HubJournal.recover();
+                    return;
+                } catch (Exception e) {
+                    LOGGER.warning(() -> String.format("Could not recover hub state from the journal, so all STF devices will be disconnected. "
+                            + "Error message: %s", e.getMessage()));
+                }
+            }
+            STFClient.disconnectAllDevices();
+        } catch (Exception e) {
+            LOGGER.warning(() -> String.format("Could not disconnect STF devices. Error message: %s", e.getMessage()));
+        }
+    }
+
+    private static void validate(List<MobileRemoteProxy> proxies) {
+        if (proxies.isEmpty()) {
+            return;
+        }
+        Optional<Set<String>> serials = STFClient.isSTFEnabled() ? STFClient.getDeviceSerials() : Optional.empty();
+        for (MobileRemoteProxy proxy : new LinkedHashSet<>(proxies)) {
+            if (proxy.getValidationState() == MobileRemoteProxy.ValidationState.REMOVED) {
+                PENDING.remove(proxy);
+                continue;
+            }
+            if (STFClient.isSTFEnabled() && serials.map(s -> !s.containsAll(proxy.getUdids())).orElse(true)) {
+                String reason = serials.isPresent() ?
+                        String.format("Could not find device with udid '%s' in STF.", proxy.getUdids()) :
+                        "Unable to get STF devices.";
+                Instant pendingSince = PENDING.computeIfAbsent(proxy, p -> Instant.now());
+                if (Instant.now().isAfter(pendingSince.plus(PENDING_TIMEOUT))) {
+                    PENDING.remove(proxy);
+                    proxy.reject(reason);
+                } else {
+                    proxy.pending(reason);
+                }
+                continue;
+            }
+            PENDING.remove(proxy);
+            try {
+                proxy.accept();
+            } catch (Exception e) {
+                proxy.reject(String.format("Could not initialize node. Error message: %s", e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.jfr.MatchCacheEvent;
+import jdk.jfr.FlightRecorder;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Cache of the capability match results of the nodes.
+ * <p>
+ * The same queued request is matched against the same nodes on every matching cycle. The result depends only on the request
+ * fingerprint (see {@link MobileCapabilityMatcher#getFingerprint(Map)}) and on the node capabilities, so it is cached by
+ * (fingerprint, node id, capability version). Every registration of the node gets a new capability version, and results of the
+ * node are dropped when it is removed. Up to {@code MATCH_CACHE_SIZE} results are kept (default 10000, {@code 0} disables the cache),
+ * the least recently used result is evicted first. Hits and misses are published as {@link MatchCacheEvent}.
+ */
+public final class MatchCache {
+    private static final int SIZE = Optional.ofNullable(System.getenv("MATCH_CACHE_SIZE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(10_000);
+    private static final AtomicLong CAPABILITY_VERSION = new AtomicLong();
+    private static final Map<Key, Boolean> RESULTS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            return size() > SIZE;
+        }
+    };
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    static {
+        FlightRecorder.addPeriodicEvent(MatchCacheEvent.class, () -> MatchCacheEvent.emit(HITS.sum(), MISSES.sum(), size()));
+    }
+
+    private MatchCache() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return SIZE > 0;
+    }
+
+    /**
+     * @return capability version of the new registration
+     */
+    public static long nextCapabilityVersion() {
+        return CAPABILITY_VERSION.incrementAndGet();
+    }
+
+    /**
+     * @param nodeId node id
+     * @param capabilityVersion capability version of the node registration
+     * @param requestedCapabilities requested capabilities
+     * @param matcher match of the node, called if the result is not cached
+     * @return true if the node matches the request
+     */
+    public static boolean matches(String nodeId, long capabilityVersion, Map<String, Object> requestedCapabilities, BooleanSupplier matcher) {
+        Key key = new Key(MobileCapabilityMatcher.getFingerprint(requestedCapabilities), nodeId, capabilityVersion);
+        Boolean result;
+        synchronized (RESULTS) {
+            result = RESULTS.get(key);
+        }
+        if (result != null) {
+            HITS.increment();
+            return result;
+        }
+        MISSES.increment();
+        result = matcher.getAsBoolean();
+        synchronized (RESULTS) {
+            RESULTS.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drop results of the removed node
+     *
+     * @param nodeId node id
+     */
+    public static void invalidate(String nodeId) {
+        synchronized (RESULTS) {
+            RESULTS.keySet().removeIf(key -> key.nodeId.equals(nodeId));
+        }
+    }
+
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    public static int size() {
+        synchronized (RESULTS) {
+            return RESULTS.size();
+        }
+    }
+
+    static void clear() {
+        synchronized (RESULTS) {
+            RESULTS.clear();
+        }
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    private static final class Key {
+        private final String fingerprint;
+        private final String nodeId;
+        private final long capabilityVersion;
+
+        private Key(String fingerprint, String nodeId, long capabilityVersion) {
+            this.fingerprint = fingerprint;
+            this.nodeId = nodeId;
+            this.capabilityVersion = capabilityVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return capabilityVersion == key.capabilityVersion && fingerprint.equals(key.fingerprint) && nodeId.equals(key.nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fingerprint, nodeId, capabilityVersion);
+        }
+    }
+}
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package com.zebrunner.mcloud.grid;
 
+import com.zebrunner.mcloud.grid.jfr.SessionMatchEvent;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
 import com.zebrunner.mcloud.grid.validator.DeviceNameValidator;
 import com.zebrunner.mcloud.grid.validator.DeviceTypeValidator;
 import com.zebrunner.mcloud.grid.validator.MobilePlatformValidator;
@@ -26,6 +28,7 @@ import org.openqa.grid.internal.utils.DefaultCapabilityMatcher;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Custom selenium capability matcher for mobile grid.
@@ -43,9 +46,47 @@ public class MobileCapabilityMatcher extends DefaultCapabilityMatcher {
 
     @Override
     public boolean matches(Map<String, Object> nodeCapabilities, Map<String, Object> requestedCapabilities) {
-        return nodeCapabilities != null &&
+        SessionMatchEvent event = SessionMatchEvent.start();
+        boolean matches = nodeCapabilities != null &&
                 requestedCapabilities != null &&
                 VALIDATORS.stream()
                         .allMatch(v -> v.apply(nodeCapabilities, requestedCapabilities));
+        if (event.shouldCommit() && nodeCapabilities != null) {
+            event.setFingerprint(getFingerprint(requestedCapabilities));
+            event.complete(CapabilityUtils.getAppiumCapability(nodeCapabilities, "udid")
+                            .map(String::valueOf)
+                            .orElse(null),
+                    nodeCapabilities.get("platformName"),
+                    matches ? "MATCHED" : "REJECTED");
+        }
+        return matches;
+    }
+
+    /**
+     * @param nodeCapabilities node capabilities
+     * @param requestedCapabilities requested capabilities
+     * @return first validator rejecting the node, empty if the node matches the request
+     */
+    public static Optional<Validator> getRejectingValidator(Map<String, Object> nodeCapabilities, Map<String, Object> requestedCapabilities) {
+        return VALIDATORS.stream()
+                .filter(v -> !v.apply(nodeCapabilities, requestedCapabilities))
+                .findFirst();
+    }
+
+    /**
+     * Fingerprint of the capabilities checked by the validators. Requests with the same fingerprint match the same nodes.
+     *
+     * @param requestedCapabilities requested capabilities
+     * @return fingerprint
+     */
+    public static String getFingerprint(Map<String, Object> requestedCapabilities) {
+        return String.join("|",
+                String.valueOf(requestedCapabilities.get("platformName")),
+                CapabilityUtils.getAppiumCapability(requestedCapabilities, "platformVersion").map(String::valueOf).orElse(""),
+                CapabilityUtils.getAppiumCapability(requestedCapabilities, "deviceName").map(String::valueOf).orElse(""),
+                CapabilityUtils.getZebrunnerCapability(requestedCapabilities, "deviceType").map(String::valueOf).orElse(""),
+                CapabilityUtils.getAppiumCapability(requestedCapabilities, "udid").map(String::valueOf).orElse(""),
+                CapabilityUtils.getZebrunnerCapability(requestedCapabilities, ProxyValidator.MITM_CAPABILITY).map(String::valueOf).orElse(""),
+                CapabilityUtils.getZebrunnerCapability(requestedCapabilities, ProxyValidator.MITM_TYPE_CAPABILITY).map(String::valueOf).orElse(""));
     }
 }
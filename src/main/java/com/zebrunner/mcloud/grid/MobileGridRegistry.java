@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.autoscaling.Autoscaler;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.common.SeleniumProtocol;
+import org.openqa.grid.common.exception.CapabilityNotPresentOnTheGridException;
+import org.openqa.grid.internal.BaseRemoteProxy;
+import org.openqa.grid.internal.DefaultGridRegistry;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.grid.internal.listeners.CommandListener;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the hub ({@code -registry com.zebrunner.mcloud.grid.MobileGridRegistry}).
+ * <p>
+ * With {@code throwOnCapabilityNotPresent} new session requests are checked by {@link SessionSatisfiability} before the queue,
+ * and queued requests are checked again every {@link SessionSatisfiability#CHECK_INTERVAL}. A request that no registered node
+ * could ever match fails with the diagnostic instead of waiting for {@code newSessionWaitTimeout}.
+ * <p>
+ * The profile shard ({@link ProfileShards}) of the queued request is computed once, nodes skip requests of the shards they could not
+ * serve. The matcher of {@link DefaultGridRegistry} still offers every queued request to every node on each release: its queue and
+ * proxy set are private, so requests are not split into per-shard sub-queues.
+ * <p>
+ * Starts the {@link Autoscaler} if it is enabled.
+ */
+public class MobileGridRegistry extends DefaultGridRegistry {
+    private static final Logger LOGGER = Logger.getLogger(MobileGridRegistry.class.getName());
+    private static final String REJECTION_DIAGNOSTIC = "zebrunner:rejectionDiagnostic";
+    // Key - requested capabilities of the queued request (the same instance is passed to the nodes), compared by identity
+    private final Map<Map<String, Object>, QueuedRequest> queued = new IdentityHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-satisfiability");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private RejectedRequestProxy rejectedRequestProxy;
+
+    @Override
+    public void start() {
+        super.start();
+        if (Autoscaler.isEnabled()) {
+            Autoscaler.start(this);
+        }
+        scheduler.scheduleWithFixedDelay(this::checkQueued, SessionSatisfiability.CHECK_INTERVAL.toMillis(),
+                SessionSatisfiability.CHECK_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        super.stop();
+    }
+
+    /**
+     * Requests are checked by {@link SessionSatisfiability} instead, which also accepts requests of the profiles launched on demand by
+     * the {@link Autoscaler} while they have no registered nodes.
+     */
+    @Override
+    public void setThrowOnCapabilityNotPresent(boolean throwOnCapabilityNotPresent) {
+        super.setThrowOnCapabilityNotPresent(false);
+    }
+
+    @Override
+    public void addNewSessionRequest(RequestHandler handler) {
+        Map<String, Object> requestedCapabilities = handler.getRequest().getDesiredCapabilities();
+        if (SessionSatisfiability.isEnabled(this)) {
+            Optional<String> diagnostic = SessionSatisfiability.check(this, requestedCapabilities);
+            if (diagnostic.isPresent()) {
+                LOGGER.warning(() -> String.format("New session request is rejected: %s Capabilities: %s", diagnostic.get(),
+                        requestedCapabilities));
+                throw new CapabilityNotPresentOnTheGridException(diagnostic.get());
+            }
+        }
+        synchronized (queued) {
+            queued.put(requestedCapabilities, new QueuedRequest(handler));
+        }
+        try {
+            super.addNewSessionRequest(handler);
+        } catch (RuntimeException e) {
+            untrack(handler);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean removeNewSessionRequest(RequestHandler request) {
+        // the request is untracked only after it is removed from the queue, so the matcher could not match the rejected request
+        boolean removed = super.removeNewSessionRequest(request);
+        untrack(request);
+        return removed;
+    }
+
+    @Override
+    public void terminate(TestSession session, SessionTerminationReason reason) {
+        if (session.getSlot().getProxy() instanceof RejectedRequestProxy) {
+            // session of the rejected request does not occupy any node
+            return;
+        }
+        super.terminate(session, reason);
+    }
+
+    /**
+     * Creates the session on the node unless the node could not serve the profile shard of the request, or the queued request is
+     * rejected concurrently. Called on the matcher thread.
+     *
+     * @param proxy node
+     * @param requestedCapabilities requested capabilities
+     * @param node creation of the session on the node
+     * @return session or null if the node could not serve the request, or the request is rejected
+     */
+    TestSession getNewSession(MobileRemoteProxy proxy, Map<String, Object> requestedCapabilities, Supplier<TestSession> node) {
+        QueuedRequest request;
+        synchronized (queued) {
+            request = queued.get(requestedCapabilities);
+        }
+        if (request == null) {
+            return proxy.isSupported(ProfileShards.getShard(requestedCapabilities)) ? node.get() : null;
+        }
+        if (!proxy.isSupported(request.shard)) {
+            return null;
+        }
+        synchronized (request) {
+            if (request.rejected) {
+                return null;
+            }
+            TestSession session = node.get();
+            if (session != null) {
+                request.matched = true;
+            }
+            return session;
+        }
+    }
+
+    /**
+     * Forgets the matched requests and rejects the queued requests that could not be matched anymore, for example when the matching
+     * node is removed
+     */
+    void checkQueued() {
+        try {
+            List<QueuedRequest> requests;
+            synchronized (queued) {
+                queued.values().removeIf(request -> request.matched);
+                requests = new ArrayList<>(queued.values());
+            }
+            if (!SessionSatisfiability.isEnabled(this)) {
+                return;
+            }
+            for (QueuedRequest request : requests) {
+                SessionSatisfiability.check(this, request.handler.getRequest().getDesiredCapabilities())
+                        .ifPresent(diagnostic -> reject(request, diagnostic));
+            }
+        } catch (Exception e) {
+            LOGGER.warning(() -> String.format("Satisfiability check of the queued requests failed: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Fails the queued request with the diagnostic unless it is matched already.
+     * <p>
+     * The handler is bound to the session of {@link RejectedRequestProxy} that throws the diagnostic on forwarding, so the client
+     * gets it in the error response. Request handlers are equal until bound, so the request is removed from the queue only after
+     * binding - otherwise the first unbound handler of the queue is removed instead.
+     */
+    private void reject(QueuedRequest request, String diagnostic) {
+        synchronized (request) {
+            if (request.matched) {
+                return;
+            }
+            request.rejected = true;
+        }
+        RequestHandler handler = request.handler;
+        Map<String, Object> requestedCapabilities = handler.getRequest().getDesiredCapabilities();
+        TestSession session = new TestSession(new TestSlot(getRejectedRequestProxy(), SeleniumProtocol.WebDriver, Map.of()),
+                requestedCapabilities, Clock.systemUTC());
+        session.put(REJECTION_DIAGNOSTIC, diagnostic);
+        handler.bindSession(session);
+        removeNewSessionRequest(handler);
+        LOGGER.warning(() -> String.format("Queued new session request is rejected: %s Capabilities: %s", diagnostic,
+                requestedCapabilities));
+    }
+
+    private void untrack(RequestHandler handler) {
+        synchronized (queued) {
+            queued.remove(handler.getRequest().getDesiredCapabilities());
+        }
+    }
+
+    private synchronized RejectedRequestProxy getRejectedRequestProxy() {
+        if (rejectedRequestProxy == null) {
+            GridNodeConfiguration config = new GridNodeConfiguration();
+            config.remoteHost = "http://rejected-request";
+            config.capabilities = new ArrayList<>();
+            rejectedRequestProxy = new RejectedRequestProxy(new RegistrationRequest(config), this);
+        }
+        return rejectedRequestProxy;
+    }
+
+    private static final class QueuedRequest {
+        private final RequestHandler handler;
+        private final String shard;
+        // read without the lock of the request by the check
+        private volatile boolean matched;
+        private boolean rejected;
+
+        private QueuedRequest(RequestHandler handler) {
+            this.handler = handler;
+            this.shard = ProfileShards.getShard(handler.getRequest().getDesiredCapabilities());
+        }
+    }
+
+    /**
+     * Node of the rejected requests, it is not registered. Fails forwarding of the new session with the rejection diagnostic.
+     */
+    private static final class RejectedRequestProxy extends BaseRemoteProxy implements CommandListener {
+
+        private RejectedRequestProxy(RegistrationRequest request, GridRegistry registry) {
+            super(request, registry);
+        }
+
+        @Override
+        public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+            throw new CapabilityNotPresentOnTheGridException(String.valueOf(session.get(REJECTION_DIAGNOSTIC)));
+        }
+
+        @Override
+        public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+            // the command is never forwarded
+        }
+    }
+}
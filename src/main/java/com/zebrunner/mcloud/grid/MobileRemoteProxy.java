@@ -15,20 +15,25 @@
  *******************************************************************************/
 package com.zebrunner.mcloud.grid;
 
+import com.zebrunner.mcloud.grid.artifacts.SessionArtifacts;
+import com.zebrunner.mcloud.grid.events.GridEventType;
+import com.zebrunner.mcloud.grid.events.GridEvents;
 import com.zebrunner.mcloud.grid.integration.client.MitmProxyClient;
 import com.zebrunner.mcloud.grid.integration.client.Path;
 import com.zebrunner.mcloud.grid.integration.client.STFClient;
-import com.zebrunner.mcloud.grid.models.stf.STFDevice;
+import com.zebrunner.mcloud.grid.integration.client.STFPreReservation;
+import com.zebrunner.mcloud.grid.jfr.CommandForwardEvent;
+import com.zebrunner.mcloud.grid.jfr.NewSessionPhaseEvent;
+import com.zebrunner.mcloud.grid.journal.HubJournal;
+import com.zebrunner.mcloud.grid.logging.GridLog;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
 import com.zebrunner.mcloud.grid.util.CapabilityUtils;
 import com.zebrunner.mcloud.grid.util.HttpClient.Response;
-import com.zebrunner.mcloud.grid.util.HttpClientApache;
 import com.zebrunner.mcloud.grid.validator.ProxyValidator;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.commons.lang3.math.NumberUtils;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.common.exception.GridException;
 import org.openqa.grid.internal.DefaultGridRegistry;
@@ -36,19 +41,28 @@ import org.openqa.grid.internal.GridRegistry;
 import org.openqa.grid.internal.TestSession;
 import org.openqa.grid.internal.TestSlot;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedResponse;
 import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.http.HttpClient;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.net.URL;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static com.zebrunner.mcloud.grid.validator.DeviceTypeValidator.ZEBRUNNER_DEVICE_TYPE_CAPABILITY;
 import static com.zebrunner.mcloud.grid.validator.ProxyValidator.MITM_TYPE_CAPABILITY;
@@ -65,13 +79,11 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
     //to operate with RequestedCapabilities where prefix is present
     private static final boolean CHECK_APPIUM_STATUS = Boolean.parseBoolean(System.getenv("CHECK_APPIUM_STATUS"));
     private static final String IS_MANUALLY_RESERVED = "IS_MANUALLY_RESERVED";
-    private static final LazyInitializer<Object> DISCONNECT_ALL_DEVICES = new LazyInitializer<>() {
-        @Override
-        protected Object initialize() throws ConcurrentException {
-            STFClient.disconnectAllDevices();
-            return true;
-        }
-    };
+    private static final String COMMAND_FORWARD_EVENT = "COMMAND_FORWARD_EVENT";
+    private static final String COMMAND_STARTED_AT = "COMMAND_STARTED_AT";
+    private static final String SESSION_START_REGISTERED = "SESSION_START_REGISTERED";
+    private static final String RELEASED_BY_TIMEOUT = "RELEASED_BY_TIMEOUT";
+    private static final String SESSION_STARTED_AT = "SESSION_STARTED_AT";
     private static final LazyInitializer<Boolean> INITIAL_GRID_CONFIGURATION_LOGS = new LazyInitializer<Boolean>() {
         @Override
         protected Boolean initialize() throws ConcurrentException {
@@ -83,27 +95,18 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
             return true;
         }
     };
-    public static final Map<String, Duration> DEVICE_IGNORE_AUTOMATION_TIMERS = new ConcurrentHashMap<>();
-
-    // adb/wda timeout
-    private static final Duration UNHEALTHY_MOBILE_TIMEOUT = Optional.ofNullable(System.getenv("UNHEALTHY_MOBILE_TIMEOUT"))
-            .filter(StringUtils::isNotBlank)
-            .map(Integer::parseInt)
-            .map(Duration::ofSeconds)
-            .orElse(Duration.ofMinutes(1));
-
-    private static final Duration INACTIVITY_RELEASE_TIMEOUT = Optional.ofNullable(System.getenv("INACTIVITY_RELEASE_TIMEOUT"))
-            .filter(StringUtils::isNotBlank)
-            .map(Integer::parseInt)
-            .map(Duration::ofSeconds)
-            .orElse(Duration.ofMinutes(1));
 
     private final String udid;
     private final String deviceName;
     private final String deviceType;
     private final Platform platform;
-    private final boolean isMitmSupported;
+    // Key - slot. Every slot could serve its own device (simulator, emulator)
+    private final Map<TestSlot, SlotState> slotStates;
     private final BiFunction<URL, String, Boolean> appiumCheck;
+    private volatile ValidationState validationState = ValidationState.NEW;
+    // Key - profile shard, value - true if the node could satisfy requests of the shard, see ProfileShards
+    private final Map<String, Boolean> shards = new ConcurrentHashMap<>();
+    private final long capabilityVersion = MatchCache.nextCapabilityVersion();
 
     public MobileRemoteProxy(RegistrationRequest request, GridRegistry registry) {
         super(request, registry);
@@ -112,18 +115,16 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
         } catch (Exception e) {
             LOGGER.warning(() -> String.format("Could not provide grid configuration logs. Error message: %s", e.getMessage()));
         }
-        try {
-            DISCONNECT_ALL_DEVICES.get();
-        } catch (Exception e) {
-            LOGGER.warning(() -> String.format("Could not disconnect STF devices. Error message: %s", e.getMessage()));
-        }
+        HubBootstrap.start();
         TestSlot slot = getTestSlots().stream()
-                .findAny()
+                .findFirst()
                 .orElseThrow(() -> new GridException("Node should have slot"));
-        udid = CapabilityUtils.getAppiumCapability(slot.getCapabilities(), "udid")
-                .orElseThrow(() -> new GridException(String.format("Appium node must have 'UDID' capability. Slot capabilities: %s",
-                        slot.getCapabilities())))
-                .toString();
+        Map<TestSlot, SlotState> states = new LinkedHashMap<>();
+        for (TestSlot testSlot : getTestSlots()) {
+            states.put(testSlot, new SlotState(testSlot));
+        }
+        slotStates = Collections.unmodifiableMap(states);
+        udid = slotStates.get(slot).udid;
         deviceName = CapabilityUtils.getAppiumCapability(slot.getCapabilities(), "deviceName")
                 .orElseThrow(() -> new GridException(String.format("Appium node must have 'UDID' capability. Slot capabilities: %s",
                         slot.getCapabilities())))
@@ -136,9 +137,7 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
             switch (platform) {
             case ANDROID:
                 appiumCheck = (remoteURL, sessionUUID) -> {
-                    Response<String> response = HttpClientApache.create()
-                            .withUri(Path.APPIUM_STATUS_ADB, remoteURL.toString())
-                            .get(new StringEntity("{\"exitCode\": 101}", ContentType.APPLICATION_JSON));
+                    Response<String> response = HostHealthMonitor.appiumStatus(remoteURL, Path.APPIUM_STATUS_ADB);
                     if (response.getStatus() != 200) {
                         LOGGER.warning(() ->
                                 String.format("[%s] Device is not ready for a session. /status-adb error: %s.",
@@ -150,9 +149,7 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
                 break;
             case IOS:
                 appiumCheck = (remoteURL, sessionUUID) -> {
-                    Response<String> response = HttpClientApache.create()
-                            .withUri(Path.APPIUM_STATUS_WDA, remoteURL.toString())
-                            .get(new StringEntity("{\"exitCode\": 101}", ContentType.APPLICATION_JSON));
+                    Response<String> response = HostHealthMonitor.appiumStatus(remoteURL, Path.APPIUM_STATUS_WDA);
                     if (response.getStatus() != 200) {
                         LOGGER.warning(() ->
                                 String.format("[NODE-%s] Device is not ready for a session. /status-wda error: %s.",
@@ -171,82 +168,314 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
             appiumCheck = (remoteURL, sessionUUID) -> true;
         }
 
-        Integer serverProxyPort = CapabilityUtils.getZebrunnerCapability(slot.getCapabilities(), SERVER_PROXY_PORT_CAPABILITY)
-                .map(String::valueOf)
-                .filter(NumberUtils::isParsable)
-                .map(Integer::parseInt)
-                .orElse(null);
-        Integer proxyPort = CapabilityUtils.getZebrunnerCapability(slot.getCapabilities(), PROXY_PORT_CAPABILITY)
-                .map(String::valueOf)
-                .filter(NumberUtils::isParsable)
-                .map(Integer::parseInt)
-                .orElse(null);
-        isMitmSupported = (serverProxyPort != null && serverProxyPort > 0 && proxyPort != null && proxyPort > 0);
+        GridStateVersion.increment();
+        GridEvents.publish(GridEventType.NODE_REGISTERED, udid, Map.of("deviceName", deviceName, "platform", platform));
+        // STF device check and MITM proxy initialization are done asynchronously
+        HubBootstrap.register(this);
+    }
 
-        if (STFClient.isSTFEnabled()) {
-            if (!STFClient.isDevicePresentInSTF(udid)) {
-                throw new GridException(String.format("Could not find device with udid '%s' in STF. Slot capabilities: %s",
-                        udid, slot.getCapabilities()));
+    /**
+     * Node is validated and could be used for sessions. Called on the bootstrap thread.
+     */
+    void accept() {
+        slotStates.forEach((slot, state) -> {
+            if (state.mitmSupported) {
+                MitmProxyClient.initProxy(List.of(slot));
             }
+        });
+        validationState = ValidationState.VALID;
+        GridStateVersion.increment();
+    }
+
+    /**
+     * Node could not be validated yet and will be rechecked later. Called on the bootstrap thread.
+     *
+     * @param reason reason
+     */
+    void pending(String reason) {
+        if (validationState != ValidationState.PENDING) {
+            LOGGER.warning(() -> String.format("[NODE-%s] Node validation is pending: %s", udid, reason));
+            validationState = ValidationState.PENDING;
+            GridStateVersion.increment();
         }
-        if (isMitmSupported) {
-            MitmProxyClient.initProxy(getTestSlots());
+    }
+
+    /**
+     * Node is not valid and should be removed from the registry. Called on the bootstrap thread.
+     *
+     * @param reason reason
+     */
+    void reject(String reason) {
+        validationState = ValidationState.REJECTED;
+        LOGGER.warning(() -> String.format("[NODE-%s] Node registration is rejected: %s", udid, reason));
+        getRegistry().removeIfPresent(this);
+    }
+
+    public ValidationState getValidationState() {
+        return validationState;
+    }
+
+    @Override
+    public void startPolling() {
+        super.startPolling();
+        CapabilityIndex.invalidate();
+        HostHealthMonitor.register(this);
+        if (WarmSessionPool.isEnabled()) {
+            WarmSessionPool.register(this);
+        }
+        if (STFPreReservation.isEnabled()) {
+            STFPreReservation.register(this);
         }
     }
 
+    /**
+     * Match results are cached per request fingerprint and node registration, see {@link MatchCache}
+     */
+    @Override
+    public boolean hasCapability(Map<String, Object> requestedCapability) {
+        if (!MatchCache.isEnabled() || !(getCapabilityHelper() instanceof MobileCapabilityMatcher)) {
+            return super.hasCapability(requestedCapability);
+        }
+        return MatchCache.matches(getId(), capabilityVersion, requestedCapability, () -> super.hasCapability(requestedCapability));
+    }
+
+    /**
+     * Node status is checked together with other nodes of the same host, see {@link HostHealthMonitor}
+     */
+    @Override
+    public boolean isAlive() {
+        return HostHealthMonitor.isAlive(this);
+    }
+
+    /**
+     * New session request of the session with the warm session is answered without the node, see {@link WarmSessionPool}
+     */
+    @Override
+    public HttpClient getHttpClient(URL url, int connectionTimeout, int readTimeout) {
+        HttpClient client = super.getHttpClient(url, connectionTimeout, readTimeout);
+        return WarmSessionPool.isEnabled() ? WarmSessionPool.wrap(client) : client;
+    }
+
+    @Override
+    public void teardown() {
+        super.teardown();
+        HostHealthMonitor.unregister(this);
+        AppAffinity.unregister(this);
+        CapabilityIndex.invalidate();
+        MatchCache.invalidate(getId());
+        WarmSessionPool.unregister(this);
+        STFPreReservation.unregister(this);
+        validationState = ValidationState.REMOVED;
+        GridStateVersion.increment();
+        GridEvents.publish(GridEventType.NODE_REMOVED, udid);
+    }
+
     public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
         super.beforeCommand(session, request, response);
-        LOGGER.finest(() ->String.format("[%s] before command: %s", udid, request.getRequestURI()));
+        String slotUdid = getUdid(session.getSlot());
+        CommandForwardEvent event = CommandForwardEvent.start(request.getMethod(), request.getRequestURI());
+        if (event.isEnabled()) {
+            session.put(COMMAND_FORWARD_EVENT, event);
+        }
+        if (HostLoad.isEnabled()) {
+            session.put(COMMAND_STARTED_AT, System.nanoTime());
+        }
+        if (WarmSessionPool.isEnabled() && request instanceof SeleniumBasedRequest &&
+                ((SeleniumBasedRequest) request).getRequestType() == RequestType.START_SESSION) {
+            WarmSessionPool.beforeNewSession(session);
+        }
+        if (request instanceof SeleniumBasedRequest && ((SeleniumBasedRequest) request).getRequestType() == RequestType.STOP_SESSION &&
+                SessionArtifacts.isRequested(session)) {
+            // artifacts should be downloaded before the appium session is finished
+            SessionArtifacts.collect(slotUdid, session);
+        }
+        LOGGER.finest(() ->String.format("[%s] before command: %s", slotUdid, request.getRequestURI()));
     }
 
     public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
         super.afterCommand(session, request, response);
-        LOGGER.finest(() ->String.format("[%s] after command: %s", udid, request.getRequestURI()));
+        String slotUdid = getUdid(session.getSlot());
+        Object event = session.get(COMMAND_FORWARD_EVENT);
+        if (event instanceof CommandForwardEvent) {
+            session.put(COMMAND_FORWARD_EVENT, null);
+            ((CommandForwardEvent) event).setStatus(response.getStatus());
+            ((CommandForwardEvent) event).complete(slotUdid, platform, response.getStatus() < 400 ? "SUCCESS" : "FAILED");
+        }
+        Object startedAt = session.get(COMMAND_STARTED_AT);
+        if (startedAt instanceof Long && request instanceof SeleniumBasedRequest &&
+                ((SeleniumBasedRequest) request).getRequestType() == RequestType.REGULAR) {
+            HostLoad.onCommand(getRemoteHost().getHost(), System.nanoTime() - (Long) startedAt);
+        }
+        if (request instanceof SeleniumBasedRequest && ((SeleniumBasedRequest) request).getRequestType() == RequestType.START_SESSION &&
+                response instanceof SeleniumBasedResponse && response.getStatus() == HttpServletResponse.SC_OK && DirectRouting.isRequested(session)) {
+            SeleniumBasedResponse seleniumResponse = (SeleniumBasedResponse) response;
+            try {
+                byte[] body = DirectRouting.decorateNewSessionResponse(session, seleniumResponse.getForwardedContentAsByteArray());
+                if (body != null) {
+                    seleniumResponse.setForwardedContent(body);
+                    response.setIntHeader("Content-Length", body.length);
+                }
+                GridLog.log(LOGGER, Level.INFO, slotUdid, session.getInternalKey(), "direct-routing",
+                        "[%s] Session is direct-routed to the node %s.", slotUdid, session.getSlot().getRemoteURL());
+            } catch (Exception e) {
+                GridLog.warning(LOGGER, slotUdid, "direct-routing", "[%s] Could not add direct routing capabilities. Error message: %s", slotUdid,
+                        e.getMessage());
+            }
+        }
+        if (request instanceof SeleniumBasedRequest && ((SeleniumBasedRequest) request).getRequestType() == RequestType.START_SESSION) {
+            WarmSessionPool.afterNewSession();
+            DeviceHealth.onSessionStart(slotUdid, response.getStatus() == HttpServletResponse.SC_OK);
+            session.put(SESSION_START_REGISTERED, true);
+            if (response.getStatus() == HttpServletResponse.SC_OK) {
+                session.put(SESSION_STARTED_AT, System.currentTimeMillis());
+                // external session id of the slot is known only after the response of the node, see ProxyInfo
+                GridStateVersion.increment();
+            }
+            if (AppAffinity.isEnabled() && response.getStatus() == HttpServletResponse.SC_OK) {
+                AppAffinity.onSessionStart(this, session.getRequestedCapabilities());
+            }
+        }
+        if (request instanceof SeleniumBasedRequest && ((SeleniumBasedRequest) request).getRequestType() == RequestType.START_SESSION &&
+                response.getStatus() == HttpServletResponse.SC_OK && session.getExternalKey() != null && SessionArtifacts.isRequested(session)) {
+            SessionArtifacts.startRecording(slotUdid, session);
+        }
+        LOGGER.finest(() ->String.format("[%s] after command: %s", slotUdid, request.getRequestURI()));
+    }
+
+    /**
+     * Nodes are ordered by the health of the devices of their free slots (see {@link DeviceHealth}) and by the load of their hosts
+     * (see {@link HostLoad}) from 0 to 99, the share of the busy slots of the node breaks ties
+     */
+    @Override
+    public float getResourceUsageInPercent() {
+        float healthWeight = DeviceHealth.getWeight();
+        float score = 99 * healthWeight * getHealthScore();
+        if (HostLoad.isEnabled()) {
+            score += (1 - healthWeight) * HostLoad.getScore(getRemoteHost().getHost());
+        }
+        return score + super.getResourceUsageInPercent() / 100;
+    }
+
+    private float getHealthScore() {
+        if (!DeviceHealth.isEnabled()) {
+            return 0;
+        }
+        // devices of the free slots serve the next session
+        List<TestSlot> slots = getTestSlots().stream()
+                .filter(slot -> slot.getSession() == null)
+                .collect(Collectors.toList());
+        return (float) (slots.isEmpty() ? getTestSlots() : slots).stream()
+                .mapToDouble(slot -> DeviceHealth.getScore(getUdid(slot)))
+                .average()
+                .orElse(0);
     }
 
     @Override
     public TestSession getNewSession(Map<String, Object> requestedCapability) {
+        if (getRegistry() instanceof MobileGridRegistry) {
+            // the shard of the queued request is computed once by the registry, the request could be rejected at the same time
+            return ((MobileGridRegistry) getRegistry()).getNewSession(this, requestedCapability, () -> newSession(requestedCapability));
+        }
+        return isSupported(ProfileShards.getShard(requestedCapability)) ? newSession(requestedCapability) : null;
+    }
+
+    /**
+     * @param shard profile shard, see {@link ProfileShards#getShard(Map)}
+     * @return true if the node could satisfy requests of the shard
+     */
+    boolean isSupported(String shard) {
+        return shards.computeIfAbsent(shard, s -> ProfileShards.isSupported(getTestSlots(), s));
+    }
 
+    private TestSession newSession(Map<String, Object> requestedCapability) {
+        // called on the matcher thread between sorting of the candidates
+        if (HostLoad.isEnabled()) {
+            HostLoad.refresh(getRegistry());
+        }
+        if (DeviceHealth.isEnabled()) {
+            DeviceHealth.refresh();
+        }
+        NewSessionPhaseEvent precheckEvent = NewSessionPhaseEvent.start("precheck");
         if (isDown()) {
-            LOGGER.warning(() -> String.format("Node is down: '[%s]-'%s'.", deviceName, udid));
+            GridLog.warning(LOGGER, udid, "precheck", "Node is down: '[%s]-'%s'.", deviceName, udid);
+            precheckEvent.complete(udid, platform, "DOWN");
             return null;
         }
 
         if (!hasCapability(requestedCapability)) {
+            precheckEvent.complete(udid, platform, "NOT_MATCHED");
             return null;
         }
 
-        if (getTotalUsed() >= 1) {
+        if (getTotalUsed() >= getMaxSessions()) {
+            precheckEvent.complete(udid, platform, "BUSY");
             return null;
         }
 
-        if (DEVICE_IGNORE_AUTOMATION_TIMERS.get(udid) != null) {
-            Duration timeout = DEVICE_IGNORE_AUTOMATION_TIMERS.get(udid);
-            if (Duration.ofMillis(System.currentTimeMillis()).compareTo(timeout) < 0) {
-                return null;
-            } else {
-                DEVICE_IGNORE_AUTOMATION_TIMERS.remove(udid);
-            }
+        if (slotStates.values().stream().allMatch(state -> DeviceQuarantine.isQuarantined(state.udid))) {
+            precheckEvent.complete(udid, platform, "QUARANTINED");
+            return null;
         }
 
+        if (!HubBootstrap.isReady()) {
+            precheckEvent.complete(udid, platform, "NOT_READY");
+            return null;
+        }
+
+        if (validationState != ValidationState.VALID) {
+            precheckEvent.complete(udid, platform, validationState.name());
+            return null;
+        }
+
+        if (AppAffinity.isEnabled() && !AppAffinity.accept(this, requestedCapability)) {
+            precheckEvent.complete(udid, platform, "APP_AFFINITY");
+            return null;
+        }
+
+        if (WarmSessionPool.isEnabled() && !WarmSessionPool.accept(this, requestedCapability)) {
+            precheckEvent.complete(udid, platform, "WARM_SESSION");
+            return null;
+        }
+        precheckEvent.complete(udid, platform, "PASSED");
+
         for (TestSlot testslot : getTestSlots()) {
+            String slotUdid = getUdid(testslot);
+            if (testslot.getSession() != null || DeviceQuarantine.isQuarantined(slotUdid)) {
+                continue;
+            }
+            NewSessionPhaseEvent slotEvent = NewSessionPhaseEvent.start("slot");
             TestSession session = testslot.getNewSession(requestedCapability);
             if (session == null) {
-                LOGGER.warning(() -> String.format("[%s] 'TestSession session = testslot.getNewSession(requestedCapability);' return null.", udid));
+                GridLog.warning(LOGGER, slotUdid, "slot", "[%s] 'TestSession session = testslot.getNewSession(requestedCapability);' return null.", slotUdid);
+                slotEvent.complete(slotUdid, platform, "FAILED");
+                continue;
+            }
+            if (WarmSessionPool.isEnabled() && !WarmSessionPool.accept(this, requestedCapability)) {
+                // warm session creation is started concurrently
+                testslot.doFinishRelease();
+                slotEvent.complete(slotUdid, platform, "WARM_SESSION");
                 return null;
             }
-            LOGGER.warning(() ->String.format("[%s] 'TestSession session = testslot.getNewSession(requestedCapability);' return SESSION.", udid));
+            GridLog.warning(LOGGER, slotUdid, "slot", "[%s] 'TestSession session = testslot.getNewSession(requestedCapability);' return SESSION.", slotUdid);
+            slotEvent.complete(slotUdid, platform, "SUCCESS");
 
             // additional check if device is ready for session with custom Appium's status verification
-            if (!appiumCheck.apply(testslot.getRemoteURL(), udid)) {
-                DEVICE_IGNORE_AUTOMATION_TIMERS.put(udid, Duration.ofMillis(System.currentTimeMillis()).plus(UNHEALTHY_MOBILE_TIMEOUT));
-                LOGGER.warning(() -> String.format("Node appium check failed: '[%s]-'%s'. Will be ignored %s seconds.",
-                        deviceName, udid, UNHEALTHY_MOBILE_TIMEOUT.toSeconds()));
+            NewSessionPhaseEvent appiumCheckEvent = NewSessionPhaseEvent.start("appium-check");
+            boolean appiumCheckPassed = appiumCheck.apply(testslot.getRemoteURL(), slotUdid);
+            if (CHECK_APPIUM_STATUS) {
+                DeviceHealth.onAppiumCheck(slotUdid, appiumCheckPassed);
+            }
+            if (!appiumCheckPassed) {
+                DeviceQuarantine.put(slotUdid, QuarantineTimeout.UNHEALTHY_MOBILE_TIMEOUT.get(), "APPIUM_CHECK_FAILED");
+                GridLog.warning(LOGGER, slotUdid, "appium-check", "Node appium check failed: '[%s]-'%s'. Will be ignored %s seconds.",
+                        deviceName, slotUdid, QuarantineTimeout.UNHEALTHY_MOBILE_TIMEOUT.get().toSeconds());
                 testslot.doFinishRelease();
+                appiumCheckEvent.complete(slotUdid, platform, "FAILED");
                 return null;
             }
+            appiumCheckEvent.complete(slotUdid, platform, "SUCCESS");
 
-            if (isMitmSupported) {
+            if (isMitmSupported(testslot)) {
                 // trigger proxy restart with specific capabilities
                 // capabilities already validated in ProxyValidator
                 Boolean isMitmEnable = CapabilityUtils.getZebrunnerCapability(requestedCapability, ProxyValidator.MITM_CAPABILITY)
@@ -254,9 +483,11 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
                         .map(Boolean::valueOf)
                         .orElse(false);
                 if (isMitmEnable) {
-                    if (!MitmProxyClient.isProxyInitialized(udid)) {
+                    NewSessionPhaseEvent mitmEvent = NewSessionPhaseEvent.start("mitm");
+                    if (!MitmProxyClient.isProxyInitialized(slotUdid)) {
                         testslot.doFinishRelease();
-                        LOGGER.warning(() -> String.format("[NODE-%s] Proxy enabled for session, but is not initialized.", udid));
+                        GridLog.warning(LOGGER, slotUdid, "mitm", "[NODE-%s] Proxy enabled for session, but is not initialized.", slotUdid);
+                        mitmEvent.complete(slotUdid, platform, "NOT_INITIALIZED");
                         return null;
                     }
                     String mitmArgs = CapabilityUtils.getZebrunnerCapability(requestedCapability, ProxyValidator.MITM_ARGS_CAPABILITY)
@@ -266,19 +497,24 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
                             .map(String::valueOf)
                             .orElse("simple");
 
-                    if (!MitmProxyClient.start(udid, mitmType, mitmArgs, udid)) {
+                    if (!MitmProxyClient.start(slotUdid, mitmType, mitmArgs, slotUdid)) {
                         testslot.doFinishRelease();
-                        LOGGER.warning(() -> String.format("[NODE-%s] Could not start proxy with args: %s.", udid, mitmArgs));
+                        GridLog.warning(LOGGER, slotUdid, "mitm", "[NODE-%s] Could not start proxy with args: %s.", slotUdid, mitmArgs);
+                        mitmEvent.complete(slotUdid, platform, "FAILED");
                         return null;
                     }
+                    mitmEvent.complete(slotUdid, platform, "SUCCESS");
                 }
             }
             if (STFClient.isSTFEnabled()) {
-                STFDevice device = STFClient.reserveSTFDevice(udid, requestedCapability, udid);
+                NewSessionPhaseEvent stfEvent = NewSessionPhaseEvent.start("stf-reserve");
+                STFDeviceRecord device = STFClient.reserveSTFDevice(slotUdid, requestedCapability, slotUdid);
                 if (device == null) {
                     testslot.doFinishRelease();
+                    stfEvent.complete(slotUdid, platform, "FAILED");
                     return null;
                 }
+                stfEvent.complete(slotUdid, platform, "SUCCESS");
                 session.put(IS_MANUALLY_RESERVED, false);
                 CapabilityUtils.getZebrunnerCapability(requestedCapability, "STF_TOKEN").ifPresent(token -> {
                     if (!StringUtils.equals(String.valueOf(token), STFClient.DEFAULT_STF_TOKEN)) {
@@ -287,11 +523,22 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
                 });
 
                 Map<String, Object> slotCapabilities = getSlotCapabilities(testslot, deviceType, device);
-                LOGGER.info(() ->
-                        String.format("[%s] slotCapabilities will be added to the session capabilities: %s.", udid, slotCapabilities));
+                GridLog.info(LOGGER, slotUdid, "stf-reserve", "[%s] slotCapabilities will be added to the session capabilities: %s.", slotUdid,
+                        slotCapabilities);
                 requestedCapability.put("zebrunner:slotCapabilities", slotCapabilities);
             }
-            LOGGER.warning(() -> String.format("[%s] Session will be launched on '%s'.", udid, deviceName));
+            if (WarmSessionPool.isEnabled()) {
+                WarmSessionPool.WarmSession warmSession = WarmSessionPool.take(this, requestedCapability);
+                if (warmSession != null) {
+                    session.put(WarmSessionPool.WARM_SESSION, warmSession);
+                    GridLog.log(LOGGER, Level.INFO, slotUdid, session.getInternalKey(), "warm-session", "[%s] Warm session %s will be used.", slotUdid,
+                            warmSession.getSessionId());
+                }
+            }
+            GridLog.log(LOGGER, Level.WARNING, slotUdid, session.getInternalKey(), "new-session", "[%s] Session will be launched on '%s'.", slotUdid, deviceName);
+            HubJournal.bound(slotUdid, session.getInternalKey());
+            GridStateVersion.increment();
+            GridEvents.publish(GridEventType.SESSION_STARTED, slotUdid, Map.of("sessionId", session.getInternalKey()));
             return session;
         }
         return null;
@@ -299,11 +546,12 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
 
     @Override
     public void beforeSession(TestSession session) {
-        LOGGER.info(() -> String.format("[%s] Before session.", udid));
+        String slotUdid = getUdid(session.getSlot());
+        GridLog.log(LOGGER, Level.INFO, slotUdid, session.getInternalKey(), "before-session", "[%s] Before session.", slotUdid);
         if (StringUtils.equalsIgnoreCase(deviceType, "tvos")) {
             //override platformName for the appium capabilities into tvOS
             LOGGER.info(() -> String.format("[%s] Detected 'tvOS' 'deviceType' capability, so 'platformName' will be overrided by 'tvOS'.",
-                    udid));
+                    slotUdid));
             session.getRequestedCapabilities()
                     .put(CapabilityType.PLATFORM_NAME, "tvOS");
         }
@@ -311,36 +559,58 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
 
     @Override
     public void afterSession(TestSession session) {
-        LOGGER.warning(() -> String.format("[%s] After session. Last command: '%s'", udid, session.get("lastCommand")));
+        String slotUdid = getUdid(session.getSlot());
+        GridLog.log(LOGGER, Level.WARNING, slotUdid, session.getInternalKey(), "after-session", "[%s] After session. Last command: '%s'", slotUdid,
+                session.get("lastCommand"));
         String sessionId = getExternalSessionId(session);
-        LOGGER.warning(() -> String.format("[%s] Session on [%s]  will be closed. Ext.id: [%s]", udid, deviceName, sessionId));
+        GridLog.log(LOGGER, Level.WARNING, slotUdid, session.getInternalKey(), "after-session", "[%s] Session on [%s]  will be closed. Ext.id: [%s]",
+                slotUdid, deviceName, sessionId);
         if (STFClient.isSTFEnabled()) {
-            STFClient.disconnectSTFDevice(udid, platform, (boolean) session.get(IS_MANUALLY_RESERVED), udid);
+            STFClient.disconnectSTFDevice(slotUdid, platform, (boolean) session.get(IS_MANUALLY_RESERVED), slotUdid);
         }
-        if (isMitmSupported) {
-            if (MitmProxyClient.isProxyInitialized(udid)) {
-                if (!MitmProxyClient.start(udid, "simple", null, udid)) {
-                    LOGGER.info(() -> String.format("[%s] Could not reset proxy.", udid));
+        if (isMitmSupported(session.getSlot())) {
+            if (MitmProxyClient.isProxyInitialized(slotUdid)) {
+                if (!MitmProxyClient.start(slotUdid, "simple", null, slotUdid)) {
+                    LOGGER.info(() -> String.format("[%s] Could not reset proxy.", slotUdid));
                 }
             }
         }
+        if (session.get(SESSION_START_REGISTERED) == null) {
+            // new session request failed before the response of the node
+            DeviceHealth.onSessionStart(slotUdid, false);
+        } else {
+            DeviceHealth.onSessionEnd(slotUdid, session.get(RELEASED_BY_TIMEOUT) != null);
+        }
+        if (session.get(SESSION_STARTED_AT) != null) {
+            QueueEstimator.onSessionEnd(session.getSlot().getCapabilities(),
+                    System.currentTimeMillis() - (long) session.get(SESSION_STARTED_AT));
+        }
+        HubJournal.unbound(slotUdid);
+        GridStateVersion.increment();
+        GridEvents.publish(GridEventType.SESSION_ENDED, slotUdid, Map.of("sessionId", session.getInternalKey(), "externalSessionId", sessionId));
     }
 
     // for 'as TIMED OUT due to client inactivity and will be released' exception
     @Override
     public void beforeRelease(TestSession session) {
         super.beforeRelease(session);
-        LOGGER.info(() -> String.format("[%s] Before release. Last command: '%s'", udid, session.get("lastCommand")));
-        LOGGER.warning(() -> String.format("[CRITICAL] [%s] [%s] (%s) Session [%s] will be released by timeout.",
-                udid,
+        String slotUdid = getUdid(session.getSlot());
+        GridLog.log(LOGGER, Level.INFO, slotUdid, session.getInternalKey(), "before-release", "[%s] Before release. Last command: '%s'", slotUdid,
+                session.get("lastCommand"));
+        GridLog.log(LOGGER, Level.WARNING, slotUdid, session.getInternalKey(), "before-release",
+                "[CRITICAL] [%s] [%s] (%s) Session [%s] will be released by timeout.",
+                slotUdid,
                 deviceName,
-                udid,
-                String.valueOf(getExternalSessionId(session)))
-        );
+                slotUdid,
+                String.valueOf(getExternalSessionId(session)));
+        session.put(RELEASED_BY_TIMEOUT, true);
+        if (SessionArtifacts.isRequested(session)) {
+            SessionArtifacts.collect(slotUdid, session);
+        }
         if(session.getExternalKey() == null) {
             LOGGER.warning(() ->
-                    String.format("[%s] Session ext id is null, so device will be ignored %s seconds.", udid, INACTIVITY_RELEASE_TIMEOUT.toSeconds()));
-            DEVICE_IGNORE_AUTOMATION_TIMERS.put(udid, Duration.ofMillis(System.currentTimeMillis()).plus(INACTIVITY_RELEASE_TIMEOUT));
+                    String.format("[%s] Session ext id is null, so device will be ignored %s seconds.", slotUdid, QuarantineTimeout.INACTIVITY_RELEASE_TIMEOUT.get().toSeconds()));
+            DeviceQuarantine.put(slotUdid, QuarantineTimeout.INACTIVITY_RELEASE_TIMEOUT.get(), "INACTIVITY_RELEASE");
 //            try {
 //                getTestSlots().stream()
 //                        .findAny()
@@ -351,18 +621,61 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
 //            }
         }
         if (STFClient.isSTFEnabled()) {
-            STFClient.disconnectSTFDevice(udid, platform, (boolean) session.get(IS_MANUALLY_RESERVED), udid);
+            STFClient.disconnectSTFDevice(slotUdid, platform, (boolean) session.get(IS_MANUALLY_RESERVED), slotUdid);
         }
     }
 
-    private static Map<String, Object> getSlotCapabilities(TestSlot slot, String deviceType, STFDevice stfDevice) {
+    public String getUdid() {
+        return udid;
+    }
+
+    /**
+     * @param slot slot of the proxy
+     * @return udid of the device served by the slot
+     */
+    public String getUdid(TestSlot slot) {
+        SlotState state = slotStates.get(slot);
+        return state != null ? state.udid : udid;
+    }
+
+    /**
+     * @return udids of the devices of all slots
+     */
+    public List<String> getUdids() {
+        return slotStates.values().stream()
+                .map(state -> state.udid)
+                .collect(Collectors.toList());
+    }
+
+    private boolean isMitmSupported(TestSlot slot) {
+        SlotState state = slotStates.get(slot);
+        return state != null && state.mitmSupported;
+    }
+
+    private int getMaxSessions() {
+        return Math.min(slotStates.size(), Math.max(1, getMaxNumberOfConcurrentTestSessions()));
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public Platform getPlatform() {
+        return platform;
+    }
+
+    private static Map<String, Object> getSlotCapabilities(TestSlot slot, String deviceType, STFDeviceRecord stfDevice) {
         Map<String, Object> slotCapabilities = new HashMap<>(slot.getCapabilities());
         if (deviceType != null && StringUtils.equalsIgnoreCase("tvos", deviceType)) {
             slotCapabilities.put(CapabilityType.PLATFORM_NAME, "tvOS");
         }
 
         if (stfDevice != null) {
-            String remoteURL = (String) stfDevice.getRemoteConnectUrl();
+            String remoteURL = stfDevice.getRemoteConnectUrl();
             slotCapabilities.put("remoteURL", remoteURL);
         }
         return slotCapabilities;
@@ -372,4 +685,38 @@ public class MobileRemoteProxy extends DefaultRemoteProxy {
         // external key if exists correlates with valid appium sessionId. Internal key is unique uuid value inside hub
         return session.getExternalKey() != null ? session.getExternalKey().getKey() : StringUtils.EMPTY;
     }
+
+    private static final class SlotState {
+        private final String udid;
+        private final boolean mitmSupported;
+
+        private SlotState(TestSlot slot) {
+            udid = CapabilityUtils.getAppiumCapability(slot.getCapabilities(), "udid")
+                    .orElseThrow(() -> new GridException(String.format("Appium node must have 'UDID' capability. Slot capabilities: %s",
+                            slot.getCapabilities())))
+                    .toString();
+            Integer serverProxyPort = CapabilityUtils.getZebrunnerCapability(slot.getCapabilities(), SERVER_PROXY_PORT_CAPABILITY)
+                    .map(String::valueOf)
+                    .filter(NumberUtils::isParsable)
+                    .map(Integer::parseInt)
+                    .orElse(null);
+            Integer proxyPort = CapabilityUtils.getZebrunnerCapability(slot.getCapabilities(), PROXY_PORT_CAPABILITY)
+                    .map(String::valueOf)
+                    .filter(NumberUtils::isParsable)
+                    .map(Integer::parseInt)
+                    .orElse(null);
+            mitmSupported = (serverProxyPort != null && serverProxyPort > 0 && proxyPort != null && proxyPort > 0);
+        }
+    }
+
+    public enum ValidationState {
+        // registered, waiting for validation
+        NEW,
+        // device is not found in STF yet, will be rechecked
+        PENDING,
+        VALID,
+        REJECTED,
+        // removed from the registry
+        REMOVED
+    }
 }
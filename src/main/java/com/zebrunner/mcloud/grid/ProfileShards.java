@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.grid.internal.TestSlot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Grouping of the new session requests by capability profile shard: platform name, device type and normalized platform version
+ * constraint.
+ * <p>
+ * The queue of the grid is scanned against every node after each release of the device. Node which could not satisfy the shard
+ * could not satisfy any request of the shard, so such requests are skipped by the node with one lookup instead of the full
+ * precheck and all validators. Shards supported by the node are computed once per registration, the shard of the queued request is
+ * computed once by {@link MobileGridRegistry}. The scan itself stays queue x nodes lookups: the queue is not split into per-shard
+ * sub-queues, see {@link MobileGridRegistry}.
+ */
+public final class ProfileShards {
+    private static final String ANY = "*";
+
+    private ProfileShards() {
+        //hide
+    }
+
+    /**
+     * @param requestedCapabilities requested capabilities
+     * @return shard of the request, for example {@code android/phone/13-14}
+     */
+    public static String getShard(Map<String, Object> requestedCapabilities) {
+        return String.join("/",
+                normalize(requestedCapabilities.get("platformName")),
+                normalize(CapabilityUtils.getZebrunnerCapability(requestedCapabilities, "deviceType").orElse(null)),
+                normalize(CapabilityUtils.getAppiumCapability(requestedCapabilities, "platformVersion").orElse(null)));
+    }
+
+    /**
+     * @param slots slots of the node
+     * @param shard shard, see {@link #getShard(Map)}
+     * @return true if at least one slot satisfies platform name, device type and platform version of the shard
+     */
+    public static boolean isSupported(List<TestSlot> slots, String shard) {
+        String[] values = shard.split("/", -1);
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put("platformName", toCapability(values[0]));
+        capabilities.put("zebrunner:deviceType", toCapability(values[1]));
+        capabilities.put("appium:platformVersion", toCapability(values[2]));
+        return slots.stream()
+                .anyMatch(slot -> MobileCapabilityMatcher.getRejectingValidator(slot.getCapabilities(), capabilities).isEmpty());
+    }
+
+    private static String normalize(Object value) {
+        String normalized = Optional.ofNullable(value)
+                .map(v -> v instanceof org.openqa.selenium.Platform ? ((org.openqa.selenium.Platform) v).name() : String.valueOf(v))
+                .map(v -> StringUtils.deleteWhitespace(v).replace("/", "").toLowerCase())
+                .orElse("");
+        return normalized.isEmpty() || "any".equals(normalized) ? ANY : normalized;
+    }
+
+    private static String toCapability(String value) {
+        return ANY.equals(value) ? null : value;
+    }
+}
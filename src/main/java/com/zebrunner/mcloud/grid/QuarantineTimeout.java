@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Default device quarantine timeouts. Initial values are taken from the env variables with the same names (in seconds)
+ * and can be changed at runtime. New value is used for the next quarantine.
+ */
+public enum QuarantineTimeout {
+    // adb/wda timeout
+    UNHEALTHY_MOBILE_TIMEOUT(Duration.ofMinutes(1)),
+    INACTIVITY_RELEASE_TIMEOUT(Duration.ofMinutes(1)),
+    STF_DEVICE_INVALID_RESPONSE_IGNORE_TIMEOUT(Duration.ofMinutes(10)),
+    STF_DEVICE_UNAUTHORIZED_IGNORE_TIMEOUT(Duration.ofMinutes(10)),
+    STF_DEVICE_UNHEALTHY_IGNORE_TIMEOUT(Duration.ofMinutes(1)),
+    STF_DEVICE_MANUALLY_RESERVED_TIMEOUT(Duration.ofMinutes(3)),
+    // appium host could not be reached
+    HOST_DOWN_TIMEOUT(Duration.ofMinutes(1));
+
+    private volatile Duration timeout;
+
+    QuarantineTimeout(Duration defaultTimeout) {
+        this.timeout = Optional.ofNullable(System.getenv(name()))
+                .filter(StringUtils::isNotBlank)
+                .map(Integer::parseInt)
+                .map(Duration::ofSeconds)
+                .orElse(defaultTimeout);
+    }
+
+    public Duration get() {
+        return timeout;
+    }
+
+    public void set(Duration timeout) {
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout could not be negative: " + timeout);
+        }
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
+import org.openqa.selenium.Capabilities;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimation of the wait time of the new session request.
+ * <p>
+ * Matching slots are taken from {@link CapabilityIndex}. Queue position is the number of queued requests competing for
+ * at least one of these slots. Session duration is the rolling mean of the last {@code WINDOW} sessions of every device group
+ * (capability profile of the slot, see {@link CapabilityUtils#getProfile(Map)}). The request waits until the requests ahead of it
+ * and itself minus the free slots are served at the rate of the matching slots. STF is not called.
+ */
+public final class QueueEstimator {
+    private static final int WINDOW = 50;
+    // Key - device group
+    private static final Map<String, Durations> DURATIONS = new ConcurrentHashMap<>();
+
+    private QueueEstimator() {
+        //hide
+    }
+
+    /**
+     * @param slotCapabilities capabilities of the slot of the finished session
+     * @param duration session duration in ms
+     */
+    public static void onSessionEnd(Map<String, Object> slotCapabilities, long duration) {
+        DURATIONS.computeIfAbsent(CapabilityUtils.getProfile(slotCapabilities), group -> new Durations())
+                .add(duration);
+    }
+
+    public static Estimate estimate(GridRegistry registry, Map<String, Object> requestedCapabilities) {
+        Estimate estimate = new Estimate();
+        List<TestSlot> slots = CapabilityIndex.getSlots(registry.getAllProxies(), requestedCapabilities);
+        // sessions per ms of the matching slots with known session duration
+        double rate = 0;
+        int measured = 0;
+        for (TestSlot slot : slots) {
+            RemoteProxy proxy = slot.getProxy();
+            String udid = proxy instanceof MobileRemoteProxy ?
+                    ((MobileRemoteProxy) proxy).getUdid(slot) :
+                    CapabilityUtils.getAppiumCapability(slot.getCapabilities(), "udid").map(String::valueOf).orElse(null);
+            if (udid != null && DeviceQuarantine.isQuarantined(udid)) {
+                estimate.quarantined++;
+                continue;
+            }
+            if ((proxy instanceof DefaultRemoteProxy && ((DefaultRemoteProxy) proxy).isDown())
+                    || (proxy instanceof MobileRemoteProxy
+                    && ((MobileRemoteProxy) proxy).getValidationState() != MobileRemoteProxy.ValidationState.VALID)) {
+                estimate.unavailable++;
+                continue;
+            }
+            if (slot.getSession() == null) {
+                estimate.free++;
+            } else {
+                estimate.busy++;
+            }
+            Durations durations = DURATIONS.get(CapabilityUtils.getProfile(slot.getCapabilities()));
+            if (durations != null && durations.mean > 0) {
+                rate += 1 / durations.mean;
+                measured++;
+            }
+        }
+
+        Set<TestSlot> matching = Collections.newSetFromMap(new IdentityHashMap<>());
+        matching.addAll(slots);
+        for (Capabilities queued : registry.getDesiredCapabilities()) {
+            estimate.queued++;
+            if (CapabilityIndex.getSlots(registry.getAllProxies(), queued.asMap()).stream().anyMatch(matching::contains)) {
+                estimate.position++;
+            }
+        }
+
+        if (measured > 0) {
+            estimate.sessionDuration = (long) (measured / rate);
+            // slots without statistics are expected to be as fast as the measured ones
+            rate = rate * (estimate.free + estimate.busy) / measured;
+        }
+        // the request itself and the requests ahead of it which do not get the free slots
+        long waiting = Math.max(0, estimate.position + 1 - estimate.free);
+        if (waiting == 0) {
+            estimate.eta = 0L;
+        } else if (rate > 0) {
+            // busy sessions are half done on average
+            estimate.eta = (long) ((waiting - 0.5) / rate);
+        }
+        return estimate;
+    }
+
+    static void clear() {
+        DURATIONS.clear();
+    }
+
+    private static final class Durations {
+        private final long[] values = new long[WINDOW];
+        private int next = 0;
+        private int count = 0;
+        private long sum = 0;
+        private volatile double mean = 0;
+
+        private synchronized void add(long duration) {
+            if (count == WINDOW) {
+                sum -= values[next];
+            } else {
+                count++;
+            }
+            values[next] = duration;
+            next = (next + 1) % WINDOW;
+            sum += duration;
+            mean = (double) sum / count;
+        }
+    }
+
+    public static final class Estimate {
+        public int free;
+        public int busy;
+        public int quarantined;
+        // down or not validated
+        public int unavailable;
+        public int queued;
+        public int position;
+        // mean session duration of the matching slots in ms, null if unknown
+        public Long sessionDuration;
+        // expected wait time in ms, null if unknown
+        public Long eta;
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.zebrunner.mcloud.grid.autoscaling.Autoscaler;
+import com.zebrunner.mcloud.grid.validator.Validator;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Check of the new session request against capabilities of all registered nodes.
+ * <p>
+ * Used when the hub runs with {@code throwOnCapabilityNotPresent}: a request that no node could ever match fails instead of
+ * waiting for {@code newSessionWaitTimeout}. Busy, down and quarantined nodes could serve the request later, so they are
+ * evaluated as well. Nodes whose device is not found in STF (pending validation) and rejected nodes are not. Requests which the
+ * {@link Autoscaler} could launch a device for are always satisfiable.
+ * Requests are checked by {@link MobileGridRegistry}.
+ */
+public final class SessionSatisfiability {
+    /**
+     * Interval of the check of the queued request
+     */
+    public static final Duration CHECK_INTERVAL = Duration.ofSeconds(5);
+
+    private SessionSatisfiability() {
+        //hide
+    }
+
+    public static boolean isEnabled(GridRegistry registry) {
+        return registry.getHub() != null && Boolean.TRUE.equals(registry.getHub().getConfiguration().throwOnCapabilityNotPresent);
+    }
+
+    /**
+     * @param registry registry
+     * @param requestedCapabilities requested capabilities
+     * @return diagnostic if the request could never be matched, empty otherwise
+     */
+    public static Optional<String> check(GridRegistry registry, Map<String, Object> requestedCapabilities) {
+        if (!HubBootstrap.isReady()) {
+            // nodes are not validated yet
+            return Optional.empty();
+        }
+        if (Autoscaler.isSupported(requestedCapabilities)) {
+            // devices of the profile are launched on demand
+            return Optional.empty();
+        }
+        return check(registry.getAllProxies(), requestedCapabilities);
+    }
+
+    static Optional<String> check(Iterable<RemoteProxy> proxies, Map<String, Object> requestedCapabilities) {
+        // Key - name of the validator, value - number of rejected slots
+        Map<String, Integer> rejected = new TreeMap<>();
+        List<String> pending = new ArrayList<>();
+        for (RemoteProxy proxy : proxies) {
+            if (!(proxy instanceof MobileRemoteProxy)) {
+                if (proxy.hasCapability(requestedCapabilities)) {
+                    return Optional.empty();
+                }
+                rejected.merge("capability matcher", 1, Integer::sum);
+                continue;
+            }
+            MobileRemoteProxy mobileProxy = (MobileRemoteProxy) proxy;
+            MobileRemoteProxy.ValidationState state = mobileProxy.getValidationState();
+            for (TestSlot slot : proxy.getTestSlots()) {
+                Optional<Validator> validator = MobileCapabilityMatcher.getRejectingValidator(slot.getCapabilities(), requestedCapabilities);
+                if (validator.isPresent()) {
+                    rejected.merge(validator.get().getClass().getSimpleName(), 1, Integer::sum);
+                } else if (state == MobileRemoteProxy.ValidationState.PENDING) {
+                    pending.add(mobileProxy.getUdid(slot));
+                } else if (state == MobileRemoteProxy.ValidationState.NEW || state == MobileRemoteProxy.ValidationState.VALID) {
+                    return Optional.empty();
+                } else {
+                    rejected.merge("node validation", 1, Integer::sum);
+                }
+            }
+        }
+        if (rejected.isEmpty() && pending.isEmpty()) {
+            return Optional.of("No nodes are registered.");
+        }
+        StringBuilder diagnostic = new StringBuilder("No registered node could match the request.");
+        if (!rejected.isEmpty()) {
+            diagnostic.append(" Rejected slots: ")
+                    .append(rejected.entrySet().stream()
+                            .map(entry -> String.format("%s - %d", entry.getKey(), entry.getValue()))
+                            .collect(Collectors.joining(", ")))
+                    .append('.');
+        }
+        if (!pending.isEmpty()) {
+            diagnostic.append(String.format(" Devices of the matching nodes are not found in STF: %s.", pending));
+        }
+        return Optional.of(diagnostic.toString());
+    }
+}
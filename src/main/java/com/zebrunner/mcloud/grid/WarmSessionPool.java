@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zebrunner.mcloud.grid.logging.GridLog;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpResponse;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.zebrunner.mcloud.grid.integration.client.Path.APPIUM_SESSION_ITEM_PATH;
+import static com.zebrunner.mcloud.grid.integration.client.Path.APPIUM_SESSION_PATH;
+
+/**
+ * Pre-created (warm) Appium sessions of the idle devices.
+ * <p>
+ * Opt-in: enabled if {@code WARM_SESSION_PROFILES} contains a json list of capability profiles, for example
+ * {@code [{"platformName": "ANDROID", "appium:automationName": "UiAutomator2"}]}. For every profile up to
+ * {@code WARM_SESSIONS_PER_PROFILE} (default 1) idle devices matching the profile get an Appium session created in advance.
+ * A new session request with the same capabilities as the profile (device capabilities like {@code udid} or {@code deviceName}
+ * and {@code zebrunner:} capabilities are not compared) gets the warm session of the device instead of creating a new one:
+ * the node response is replaced with the response of the warm session, so the session id of the hub is bound to the
+ * pre-created Appium session ({@code zebrunner:slotCapabilities} of the request are added to the capabilities of the response).
+ * Other requests release the warm session of the device first. Unused sessions are recreated
+ * every {@code WARM_SESSION_TTL} seconds (default 600).
+ */
+public final class WarmSessionPool {
+    private static final Logger LOGGER = Logger.getLogger(WarmSessionPool.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final List<Map<String, Object>> PROFILES = Optional.ofNullable(System.getenv("WARM_SESSION_PROFILES"))
+            .filter(StringUtils::isNotBlank)
+            .map(WarmSessionPool::parseProfiles)
+            .orElse(List.of());
+    private static final int SESSIONS_PER_PROFILE = Optional.ofNullable(System.getenv("WARM_SESSIONS_PER_PROFILE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(1);
+    private static final Duration TTL = Optional.ofNullable(System.getenv("WARM_SESSION_TTL"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(600));
+    private static final Duration CHECK_INTERVAL = Duration.ofSeconds(10);
+    private static final int CREATE_TIMEOUT = (int) Duration.ofMinutes(3).toMillis();
+    // capabilities matched by the device itself
+    private static final Set<String> DEVICE_CAPABILITIES = Set.of("udid", "deviceName", "platformVersion", "deviceType");
+    private static final Set<String> CASE_INSENSITIVE_CAPABILITIES = Set.of("platformName", "automationName");
+    public static final String WARM_SESSION = "WARM_SESSION";
+    private static final String SLOT_CAPABILITIES = "zebrunner:slotCapabilities";
+    // Key - proxy id
+    private static final Map<String, MobileRemoteProxy> PROXIES = new ConcurrentHashMap<>();
+    // Key - proxy id. Device with the session in the pool is not available for other sessions
+    private static final Map<String, WarmSession> SESSIONS = new ConcurrentHashMap<>();
+    // response of the warm session to be returned instead of the node response on the forwarding thread
+    private static final ThreadLocal<byte[]> HANDOUT = new ThreadLocal<>();
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+    private static final CloseableHttpClient CLIENT = HttpClients.custom()
+            .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(CREATE_TIMEOUT)
+                    .setConnectTimeout((int) Duration.ofSeconds(5).toMillis())
+                    .setSocketTimeout(CREATE_TIMEOUT)
+                    .build())
+            .setMaxConnTotal(256)
+            .setMaxConnPerRoute(16)
+            .disableAutomaticRetries()
+            .build();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "warm-session");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private WarmSessionPool() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return !PROFILES.isEmpty();
+    }
+
+    public static void register(MobileRemoteProxy proxy) {
+        PROXIES.put(proxy.getId(), proxy);
+        if (STARTED.compareAndSet(false, true)) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "warm-session-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(WarmSessionPool::maintain, CHECK_INTERVAL.toMillis(), CHECK_INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static void unregister(MobileRemoteProxy proxy) {
+        PROXIES.remove(proxy.getId());
+        // session that is being created is released by the creating thread
+        Optional.ofNullable(SESSIONS.remove(proxy.getId()))
+                .ifPresent(WarmSessionPool::release);
+    }
+
+    /**
+     * Check if the device could take the session. Should be called on the matcher thread before and after the slot of the device
+     * is taken. A warm session of the device that is not compatible with the requested capabilities is released.
+     *
+     * @param proxy device proxy
+     * @param requestedCapabilities requested capabilities
+     * @return false if the device is busy with the warm session
+     */
+    public static boolean accept(MobileRemoteProxy proxy, Map<String, Object> requestedCapabilities) {
+        WarmSession warmSession = SESSIONS.get(proxy.getId());
+        if (warmSession == null) {
+            return true;
+        }
+        if (warmSession.state != State.READY) {
+            return false;
+        }
+        if (isCompatible(warmSession.profile, requestedCapabilities)) {
+            return true;
+        }
+        release(warmSession);
+        return false;
+    }
+
+    /**
+     * Take the warm session of the device for the new session
+     *
+     * @param proxy device proxy
+     * @param requestedCapabilities requested capabilities
+     * @return warm session or null if the device has no compatible warm session
+     */
+    public static WarmSession take(MobileRemoteProxy proxy, Map<String, Object> requestedCapabilities) {
+        WarmSession warmSession = SESSIONS.get(proxy.getId());
+        if (warmSession != null && warmSession.state == State.READY && isCompatible(warmSession.profile, requestedCapabilities)
+                && SESSIONS.remove(proxy.getId(), warmSession)) {
+            return warmSession;
+        }
+        return null;
+    }
+
+    /**
+     * Prepare the new session request of the session to be answered with its warm session.
+     * Should be called before the request is forwarded to the node.
+     *
+     * @param session session
+     */
+    public static void beforeNewSession(TestSession session) {
+        Object warmSession = session.get(WARM_SESSION);
+        handout(warmSession instanceof WarmSession ? (WarmSession) warmSession : null, session.getRequestedCapabilities());
+    }
+
+    static void handout(WarmSession warmSession, Map<String, Object> requestedCapabilities) {
+        if (warmSession != null) {
+            HANDOUT.set(buildResponse(warmSession, requestedCapabilities));
+        } else {
+            HANDOUT.remove();
+        }
+    }
+
+    /**
+     * Add slot capabilities of the request to the capabilities of the warm session response
+     */
+    private static byte[] buildResponse(WarmSession warmSession, Map<String, Object> requestedCapabilities) {
+        Object slotCapabilities = requestedCapabilities.get(SLOT_CAPABILITIES);
+        if (slotCapabilities == null) {
+            return warmSession.response;
+        }
+        try {
+            JsonNode json = MAPPER.readTree(warmSession.response);
+            JsonNode value = json.path("value");
+            // W3C response contains capabilities in the value.capabilities, legacy response - in the value
+            JsonNode capabilities = value.has("capabilities") ? value.path("capabilities") : value;
+            if (!capabilities.isObject()) {
+                return warmSession.response;
+            }
+            ((ObjectNode) capabilities).set(SLOT_CAPABILITIES, MAPPER.valueToTree(slotCapabilities));
+            return MAPPER.writeValueAsBytes(json);
+        } catch (IOException e) {
+            GridLog.warning(LOGGER, warmSession.udid, "warm-session", "[%s] Could not add slot capabilities to the warm session %s response. Error: %s",
+                    warmSession.udid, warmSession.sessionId, e.getMessage());
+            return warmSession.response;
+        }
+    }
+
+    public static void afterNewSession() {
+        HANDOUT.remove();
+    }
+
+    /**
+     * Wrap http client of the node, so the new session request of the session with the warm session is not sent to the node
+     *
+     * @param client http client of the node
+     * @return http client
+     */
+    public static HttpClient wrap(HttpClient client) {
+        return request -> {
+            byte[] warmResponse = HANDOUT.get();
+            if (warmResponse != null && request.getMethod() == HttpMethod.POST
+                    && StringUtils.removeEnd(request.getUri(), "/").endsWith(APPIUM_SESSION_PATH.getRelativePath())) {
+                HANDOUT.remove();
+                HttpResponse response = new HttpResponse();
+                response.setStatus(200);
+                response.setHeader("Content-Type", ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8).toString());
+                response.setContent(warmResponse);
+                return response;
+            }
+            return client.execute(request);
+        };
+    }
+
+    static void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            SESSIONS.values().stream()
+                    .filter(warmSession -> warmSession.state == State.READY && now - warmSession.createdAt > TTL.toMillis())
+                    .forEach(WarmSessionPool::release);
+            for (int i = 0; i < PROFILES.size(); i++) {
+                int profile = i;
+                long count = SESSIONS.values().stream()
+                        .filter(warmSession -> warmSession.profileIndex == profile && warmSession.state != State.RELEASING)
+                        .count();
+                for (MobileRemoteProxy proxy : PROXIES.values()) {
+                    if (count >= SESSIONS_PER_PROFILE) {
+                        break;
+                    }
+                    if (isIdle(proxy) && proxy.hasCapability(PROFILES.get(profile)) && create(proxy, profile)) {
+                        count++;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not maintain warm sessions: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isIdle(MobileRemoteProxy proxy) {
+        // warm sessions are created only for the proxies with one device
+        return !SESSIONS.containsKey(proxy.getId())
+                && proxy.getTestSlots().size() == 1
+                && proxy.getTotalUsed() == 0
+                && !proxy.isDown()
+                && proxy.getValidationState() == MobileRemoteProxy.ValidationState.VALID
+                && !DeviceQuarantine.isQuarantined(proxy.getUdid());
+    }
+
+    private static boolean create(MobileRemoteProxy proxy, int profile) {
+        WarmSession warmSession = new WarmSession(proxy.getId(), proxy.getUdid(), proxy.getRemoteHost(), profile, PROFILES.get(profile));
+        if (SESSIONS.putIfAbsent(proxy.getId(), warmSession) != null) {
+            return false;
+        }
+        // the slot could be taken by the matcher before the device is marked, see MobileRemoteProxy#getNewSession
+        if (proxy.getTotalUsed() > 0) {
+            SESSIONS.remove(proxy.getId(), warmSession);
+            return false;
+        }
+        EXECUTOR.execute(() -> {
+            try {
+                start(warmSession);
+                warmSession.createdAt = System.currentTimeMillis();
+                warmSession.state = State.READY;
+                GridLog.info(LOGGER, warmSession.udid, "warm-session", "[%s] Warm session %s is created.", warmSession.udid,
+                        warmSession.sessionId);
+                if (SESSIONS.get(warmSession.proxyId) != warmSession) {
+                    // device is removed
+                    release(warmSession);
+                }
+            } catch (Exception e) {
+                SESSIONS.remove(warmSession.proxyId, warmSession);
+                GridLog.warning(LOGGER, warmSession.udid, "warm-session", "[%s] Could not create warm session. Error: %s",
+                        warmSession.udid, e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    static void start(WarmSession warmSession) throws IOException {
+        Map<String, Object> profile = warmSession.profile;
+        Map<String, Object> capabilities = new HashMap<>(profile);
+        capabilities.put("appium:udid", warmSession.udid);
+        if (CapabilityUtils.getAppiumCapability(profile, "newCommandTimeout").isEmpty()) {
+            // session should not be closed by Appium while it is in the pool
+            capabilities.put("appium:newCommandTimeout", TTL.plus(CHECK_INTERVAL.multipliedBy(2)).toSeconds());
+        }
+        HttpPost request = new HttpPost(APPIUM_SESSION_PATH.build(warmSession.remoteHost.toString()));
+        request.setEntity(new StringEntity(MAPPER.writeValueAsString(Map.of(
+                "capabilities", Map.of("alwaysMatch", capabilities, "firstMatch", List.of(Map.of())),
+                "desiredCapabilities", capabilities)), ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = CLIENT.execute(request)) {
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IOException("Unexpected status " + response.getStatusLine().getStatusCode());
+            }
+            JsonNode json = MAPPER.readTree(body);
+            String sessionId = Optional.ofNullable(json.path("value").path("sessionId").textValue())
+                    .orElse(json.path("sessionId").textValue());
+            if (sessionId == null) {
+                throw new IOException("Session id is not found in the response");
+            }
+            warmSession.sessionId = sessionId;
+            warmSession.response = body;
+        }
+    }
+
+    /**
+     * Delete the warm session. The device is available for new sessions when the session is deleted.
+     */
+    static void release(WarmSession warmSession) {
+        if (warmSession.state != State.READY) {
+            return;
+        }
+        warmSession.state = State.RELEASING;
+        EXECUTOR.execute(() -> {
+            try {
+                stop(warmSession);
+            } catch (Exception e) {
+                GridLog.warning(LOGGER, warmSession.udid, "warm-session", "[%s] Could not delete warm session %s. Error: %s",
+                        warmSession.udid, warmSession.sessionId, e.getMessage());
+            } finally {
+                SESSIONS.remove(warmSession.proxyId, warmSession);
+            }
+        });
+    }
+
+    static void stop(WarmSession warmSession) throws IOException {
+        HttpDelete request = new HttpDelete(APPIUM_SESSION_ITEM_PATH.build(warmSession.remoteHost.toString(), warmSession.sessionId));
+        try (CloseableHttpResponse response = CLIENT.execute(request)) {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
+    static boolean isCompatible(Map<String, Object> profile, Map<String, Object> requestedCapabilities) {
+        return normalize(profile).equals(normalize(requestedCapabilities));
+    }
+
+    private static Map<String, String> normalize(Map<String, Object> capabilities) {
+        Map<String, String> result = new HashMap<>();
+        capabilities.forEach((name, value) -> {
+            if (name.startsWith("zebrunner:") || value == null) {
+                return;
+            }
+            String key = StringUtils.removeStart(name, "appium:");
+            if (DEVICE_CAPABILITIES.contains(key)) {
+                return;
+            }
+            result.put(key, CASE_INSENSITIVE_CAPABILITIES.contains(key) ? String.valueOf(value).toLowerCase() : String.valueOf(value));
+        });
+        return result;
+    }
+
+    private static List<Map<String, Object>> parseProfiles(String json) {
+        try {
+            return MAPPER.readValue(json, new TypeReference<List<Map<String, Object>>>() {
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Invalid WARM_SESSION_PROFILES: " + e.getMessage(), e);
+            return List.of();
+        }
+    }
+
+    enum State {
+        CREATING,
+        READY,
+        RELEASING
+    }
+
+    public static final class WarmSession {
+        private final String proxyId;
+        private final String udid;
+        private final URL remoteHost;
+        private final int profileIndex;
+        private final Map<String, Object> profile;
+        private volatile long createdAt;
+        private volatile State state = State.CREATING;
+        private volatile String sessionId;
+        private volatile byte[] response;
+
+        WarmSession(String proxyId, String udid, URL remoteHost, int profileIndex, Map<String, Object> profile) {
+            this.proxyId = proxyId;
+            this.udid = udid;
+            this.remoteHost = remoteHost;
+            this.profileIndex = profileIndex;
+            this.profile = profile;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public String toString() {
+            return "WarmSession{udid=" + udid + ", sessionId=" + sessionId + ", state=" + state + '}';
+        }
+    }
+}
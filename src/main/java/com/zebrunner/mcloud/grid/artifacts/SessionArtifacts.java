@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.artifacts;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.zebrunner.mcloud.grid.logging.GridLog;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openqa.grid.internal.TestSession;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static com.zebrunner.mcloud.grid.integration.client.Path.APPIUM_GET_LOGS_PATH;
+import static com.zebrunner.mcloud.grid.integration.client.Path.APPIUM_GET_LOG_TYPES_PATH;
+import static com.zebrunner.mcloud.grid.integration.client.Path.APPIUM_START_RECORDING_SCREEN_PATH;
+import static com.zebrunner.mcloud.grid.integration.client.Path.APPIUM_STOP_RECORDING_SCREEN_PATH;
+
+/**
+ * Screen recording and device logs of the session.
+ * <p>
+ * Enabled for sessions requested with {@code zebrunner:artifacts=true} capability if {@code SESSION_ARTIFACTS_DIR} is set.
+ * Recording is started as soon as the Appium session is created. Before the Appium session is finished (client DELETE
+ * or release by timeout) the video and the logs are downloaded as is to the session directory on the download threads:
+ * the forwarding thread waits for the downloads at most {@code ARTIFACTS_HANDOFF_TIMEOUT}, then the session is finished
+ * and not downloaded data is lost. Downloaded data is decoded and compressed on the bounded worker pool. Files of the session
+ * {@code <SESSION_ARTIFACTS_DIR>/<sessionId>/}: {@code video.mp4}, {@code <logType>.log.gz}.
+ * <ul>
+ * <li>{@code ARTIFACTS_LOG_TYPES} - log types to collect (if supported by the driver), default {@code logcat,syslog}</li>
+ * <li>{@code ARTIFACTS_VIDEO_TIME_LIMIT} - max recording time in seconds, default 1800</li>
+ * <li>{@code ARTIFACTS_TIMEOUT} - Appium request timeout in seconds, default 60</li>
+ * <li>{@code ARTIFACTS_HANDOFF_TIMEOUT} - max time in seconds the session finish waits for the downloads, default 10</li>
+ * <li>{@code ARTIFACTS_WORKERS} - number of worker threads, default 2</li>
+ * <li>{@code ARTIFACTS_QUEUE_SIZE} - max number of waiting tasks, default 64 (artifact is skipped if the queue is full)</li>
+ * </ul>
+ */
+public final class SessionArtifacts {
+    private static final Logger LOGGER = Logger.getLogger(SessionArtifacts.class.getName());
+    public static final String ARTIFACTS_CAPABILITY = "artifacts";
+    private static final String ARTIFACTS_COLLECTED = "ARTIFACTS_COLLECTED";
+    private static final Path ARTIFACTS_DIR = Optional.ofNullable(System.getenv("SESSION_ARTIFACTS_DIR"))
+            .filter(StringUtils::isNotBlank)
+            .map(Paths::get)
+            .orElse(null);
+    private static final Set<String> LOG_TYPES = Optional.ofNullable(System.getenv("ARTIFACTS_LOG_TYPES"))
+            .filter(StringUtils::isNotBlank)
+            .map(types -> Arrays.stream(types.split(","))
+                    .map(String::trim)
+                    .filter(StringUtils::isNotBlank)
+                    .collect(Collectors.toSet()))
+            .orElse(Set.of("logcat", "syslog"));
+    private static final int VIDEO_TIME_LIMIT = Optional.ofNullable(System.getenv("ARTIFACTS_VIDEO_TIME_LIMIT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(1800);
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(Optional.ofNullable(System.getenv("ARTIFACTS_TIMEOUT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(60));
+    private static final long HANDOFF_TIMEOUT = TimeUnit.SECONDS.toMillis(Optional.ofNullable(System.getenv("ARTIFACTS_HANDOFF_TIMEOUT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(10));
+    private static final int WORKERS = Optional.ofNullable(System.getenv("ARTIFACTS_WORKERS"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(2);
+    private static final int QUEUE_SIZE = Optional.ofNullable(System.getenv("ARTIFACTS_QUEUE_SIZE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(64);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final CloseableHttpClient CLIENT = HttpClients.custom()
+            .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(1000)
+                    .setConnectTimeout(1000)
+                    .setSocketTimeout(TIMEOUT)
+                    .build())
+            .setMaxConnTotal(64)
+            .setMaxConnPerRoute(8)
+            .disableAutomaticRetries()
+            .build();
+    private static final ThreadPoolExecutor EXECUTOR;
+    private static final ExecutorService DOWNLOADS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "session-artifacts-download");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(WORKERS, WORKERS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "session-artifacts-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private SessionArtifacts() {
+        //hide
+    }
+
+    /**
+     * Check are artifacts requested for the session
+     *
+     * @param session session
+     * @return true if artifacts collection is enabled on the hub and requested by the session
+     */
+    public static boolean isRequested(TestSession session) {
+        return ARTIFACTS_DIR != null &&
+                CapabilityUtils.getZebrunnerCapability(session.getRequestedCapabilities(), ARTIFACTS_CAPABILITY)
+                        .map(String::valueOf)
+                        .map(Boolean::parseBoolean)
+                        .orElse(false);
+    }
+
+    /**
+     * Start screen recording of the created Appium session (asynchronously)
+     *
+     * @param udid udid of the device
+     * @param session session with external key
+     */
+    public static void startRecording(String udid, TestSession session) {
+        String sessionId = session.getExternalKey().getKey();
+        HttpPost request = new HttpPost(APPIUM_START_RECORDING_SCREEN_PATH.build(session.getSlot().getRemoteURL().toString(), sessionId));
+        request.setEntity(new StringEntity(String.format("{\"options\": {\"timeLimit\": \"%d\"}}", VIDEO_TIME_LIMIT),
+                ContentType.APPLICATION_JSON));
+        submit(udid, sessionId, null, () -> {
+            try (CloseableHttpResponse response = CLIENT.execute(request)) {
+                int status = response.getStatusLine().getStatusCode();
+                EntityUtils.consume(response.getEntity());
+                if (status != 200) {
+                    GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not start screen recording of session %s, status: %s",
+                            udid, sessionId, status);
+                }
+            }
+        });
+    }
+
+    /**
+     * Download artifacts of the session. Should be called before the Appium session is finished. Waits for the downloads
+     * at most {@code ARTIFACTS_HANDOFF_TIMEOUT}, downloaded data is processed asynchronously. Artifacts are collected only
+     * once per session.
+     *
+     * @param udid udid of the device
+     * @param session session
+     */
+    public static void collect(String udid, TestSession session) {
+        if (session.getExternalKey() == null || session.get(ARTIFACTS_COLLECTED) != null) {
+            return;
+        }
+        session.put(ARTIFACTS_COLLECTED, true);
+        String sessionId = session.getExternalKey().getKey();
+        String remoteURL = session.getSlot().getRemoteURL().toString();
+        Future<?> downloads;
+        try {
+            downloads = DOWNLOADS.submit(() -> downloadAll(udid, sessionId, remoteURL));
+        } catch (RejectedExecutionException e) {
+            GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not start download of artifacts of session %s.", udid, sessionId);
+            return;
+        }
+        try {
+            downloads.get(HANDOFF_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            GridLog.warning(LOGGER, udid, "artifacts", "[%s] Artifacts of session %s are not downloaded in %s ms, session is finished.",
+                    udid, sessionId, HANDOFF_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not collect artifacts of session %s. Error message: %s",
+                    udid, sessionId, e.getCause().getMessage());
+        }
+    }
+
+    private static void downloadAll(String udid, String sessionId, String remoteURL) {
+        Path dir = ARTIFACTS_DIR.resolve(sessionId);
+        try {
+            Files.createDirectories(dir);
+
+            HttpPost stopRecording = new HttpPost(APPIUM_STOP_RECORDING_SCREEN_PATH.build(remoteURL, sessionId));
+            stopRecording.setEntity(new StringEntity("{}", ContentType.APPLICATION_JSON));
+            Path video = dir.resolve(".video.json");
+            if (download(udid, stopRecording, video)) {
+                submit(udid, sessionId, video, () -> writeVideo(video, dir.resolve("video.mp4")));
+            }
+
+            for (String type : getLogTypes(udid, remoteURL, sessionId)) {
+                HttpPost getLogs = new HttpPost(APPIUM_GET_LOGS_PATH.build(remoteURL, sessionId));
+                getLogs.setEntity(new StringEntity(String.format("{\"type\": \"%s\"}", type), ContentType.APPLICATION_JSON));
+                Path log = dir.resolve("." + type + ".json");
+                if (download(udid, getLogs, log)) {
+                    submit(udid, sessionId, log, () -> writeLog(log, dir.resolve(type + ".log.gz")));
+                }
+            }
+        } catch (Exception e) {
+            GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not collect artifacts of session %s. Error message: %s",
+                    udid, sessionId, e.getMessage());
+        }
+    }
+
+    private static List<String> getLogTypes(String udid, String remoteURL, String sessionId) throws IOException {
+        List<String> types = new ArrayList<>();
+        try (CloseableHttpResponse response = CLIENT.execute(new HttpGet(APPIUM_GET_LOG_TYPES_PATH.build(remoteURL, sessionId)))) {
+            if (response.getStatusLine().getStatusCode() != 200) {
+                EntityUtils.consume(response.getEntity());
+                GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not get log types of session %s, status: %s",
+                        udid, sessionId, response.getStatusLine().getStatusCode());
+                return types;
+            }
+            try (JsonParser parser = JSON.createParser(response.getEntity().getContent())) {
+                if (moveToValue(parser) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        if (LOG_TYPES.contains(parser.getText())) {
+                            types.add(parser.getText());
+                        }
+                    }
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Write Appium response body to the file without reading it into memory
+     */
+    private static boolean download(String udid, HttpUriRequest request, Path target) throws IOException {
+        try (CloseableHttpResponse response = CLIENT.execute(request)) {
+            if (response.getStatusLine().getStatusCode() != 200) {
+                EntityUtils.consume(response.getEntity());
+                GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not download %s, status: %s", udid, request.getURI(),
+                        response.getStatusLine().getStatusCode());
+                return false;
+            }
+            try (InputStream in = response.getEntity().getContent();
+                    ReadableByteChannel source = Channels.newChannel(in);
+                    FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+                    position += transferred;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Decode base64 video of the stop recording response
+     *
+     * @param source stop recording response
+     * @param target video file
+     * @throws IOException if response could not be read or video could not be written
+     */
+    static void writeVideo(Path source, Path target) throws IOException {
+        try (JsonParser parser = JSON.createParser(source.toFile());
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(open(target)), BUFFER_SIZE)) {
+            if (!moveToValue(parser) || parser.currentToken() != JsonToken.VALUE_STRING) {
+                throw new IOException("Stop recording response does not contain video.");
+            }
+            parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, out);
+        }
+    }
+
+    /**
+     * Write entries of the get logs response as compressed text ({@code <timestamp> <level> <message>} per line)
+     *
+     * @param source get logs response
+     * @param target compressed log file
+     * @throws IOException if response could not be read or log could not be written
+     */
+    static void writeLog(Path source, Path target) throws IOException {
+        try (JsonParser parser = JSON.createParser(source.toFile());
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new GZIPOutputStream(Channels.newOutputStream(open(target)), BUFFER_SIZE), StandardCharsets.UTF_8))) {
+            if (!moveToValue(parser) || parser.currentToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Get logs response does not contain log entries.");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String timestamp = StringUtils.EMPTY;
+                String level = StringUtils.EMPTY;
+                String message = StringUtils.EMPTY;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (name) {
+                    case "timestamp":
+                        timestamp = parser.getValueAsString();
+                        break;
+                    case "level":
+                        level = parser.getValueAsString();
+                        break;
+                    case "message":
+                        message = parser.getValueAsString();
+                        break;
+                    default:
+                        parser.skipChildren();
+                    }
+                }
+                writer.write(timestamp);
+                writer.write(' ');
+                writer.write(level);
+                writer.write(' ');
+                writer.write(message);
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static FileChannel open(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Move parser to the value of the top level {@code value} field
+     */
+    private static boolean moveToValue(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("value".equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Run task on the worker pool. Downloaded file of the task is removed after the task or if the task is rejected.
+     */
+    private static void submit(String udid, String sessionId, Path downloaded, ArtifactTask task) {
+        try {
+            EXECUTOR.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    GridLog.warning(LOGGER, udid, "artifacts", "[%s] Could not process artifact of session %s. Error message: %s",
+                            udid, sessionId, e.getMessage());
+                } finally {
+                    delete(downloaded);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            GridLog.warning(LOGGER, udid, "artifacts", "[%s] Artifacts queue is full, artifact of session %s is skipped.", udid, sessionId);
+            delete(downloaded);
+        }
+    }
+
+    private static void delete(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warning(() -> String.format("Could not delete %s. Error message: %s", path, e.getMessage()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArtifactTask {
+        void run() throws IOException;
+    }
+}
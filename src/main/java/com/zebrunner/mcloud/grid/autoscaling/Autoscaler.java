@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.autoscaling;
+
+import com.zebrunner.mcloud.grid.DeviceQuarantine;
+import com.zebrunner.mcloud.grid.MobileRemoteProxy;
+import com.zebrunner.mcloud.grid.logging.GridLog;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.selenium.Capabilities;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Launch of the virtual devices for the capability profiles in demand.
+ * <p>
+ * Opt-in: enabled if {@code AUTOSCALER_PROVIDER} is the name of the {@link VirtualDeviceProvider} ({@code command} for
+ * {@link CommandDeviceProvider} or the name of the provider registered with {@link ServiceLoader}). Started by the hub registry,
+ * so profiles without registered nodes are scaled as well. Every {@code INTERVAL} the depth of the new session queue of every
+ * capability profile is compared with the free slots and the devices which are still warming up, and the missing devices are
+ * launched, up to {@code AUTOSCALER_MAX_DEVICES} (default 4) in total.
+ * Devices not registered in the hub during {@code AUTOSCALER_WARMUP_TIMEOUT} seconds (default 600) and devices without sessions
+ * for {@code AUTOSCALER_IDLE_TIMEOUT} seconds (default 300) are stopped.
+ */
+public final class Autoscaler {
+    private static final Logger LOGGER = Logger.getLogger(Autoscaler.class.getName());
+    private static final Optional<VirtualDeviceProvider> PROVIDER = Optional.ofNullable(System.getenv("AUTOSCALER_PROVIDER"))
+            .filter(StringUtils::isNotBlank)
+            .flatMap(Autoscaler::findProvider);
+    private static final int MAX_DEVICES = Optional.ofNullable(System.getenv("AUTOSCALER_MAX_DEVICES"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(4);
+    private static final Duration IDLE_TIMEOUT = Optional.ofNullable(System.getenv("AUTOSCALER_IDLE_TIMEOUT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(300));
+    private static final Duration WARMUP_TIMEOUT = Optional.ofNullable(System.getenv("AUTOSCALER_WARMUP_TIMEOUT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(600));
+    private static final Duration INTERVAL = Duration.ofSeconds(5);
+    // Key - launch id
+    private static final Map<String, VirtualDevice> DEVICES = new ConcurrentHashMap<>();
+    private static final ExecutorService LAUNCHER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "autoscaler-launcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+
+    private Autoscaler() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return PROVIDER.isPresent();
+    }
+
+    /**
+     * Requests of the profiles supported by the provider are satisfiable even without registered nodes: devices are launched on demand
+     *
+     * @param requestedCapabilities requested capabilities
+     * @return true if the provider could launch the device for the request
+     */
+    public static boolean isSupported(Map<String, Object> requestedCapabilities) {
+        return PROVIDER.filter(provider -> provider.supports(requestedCapabilities)).isPresent();
+    }
+
+    /**
+     * Starts scaling by the new session queue of the registry, called on the start of the hub registry
+     *
+     * @param registry registry
+     */
+    public static void start(GridRegistry registry) {
+        if (STARTED.compareAndSet(false, true)) {
+            LOGGER.info(() -> String.format("Autoscaling with '%s' provider is enabled.", PROVIDER.get().getName()));
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "autoscaler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> tick(PROVIDER.get(), LAUNCHER, registry), INTERVAL.toMillis(), INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static Optional<VirtualDeviceProvider> findProvider(String name) {
+        if (CommandDeviceProvider.NAME.equalsIgnoreCase(name)) {
+            return Optional.of(new CommandDeviceProvider());
+        }
+        for (VirtualDeviceProvider provider : ServiceLoader.load(VirtualDeviceProvider.class)) {
+            if (provider.getName().equalsIgnoreCase(name)) {
+                return Optional.of(provider);
+            }
+        }
+        LOGGER.warning(() -> String.format("Autoscaler provider '%s' is not found.", name));
+        return Optional.empty();
+    }
+
+    static void tick(VirtualDeviceProvider provider, Executor executor, GridRegistry registry) {
+        try {
+            Map<String, Integer> queue = new HashMap<>();
+            Map<String, Map<String, Object>> profiles = new HashMap<>();
+            for (Capabilities capabilities : registry.getDesiredCapabilities()) {
+                Map<String, Object> requestedCapabilities = capabilities.asMap();
+                String profile = CapabilityUtils.getProfile(requestedCapabilities);
+                queue.merge(profile, 1, Integer::sum);
+                profiles.putIfAbsent(profile, new HashMap<>(requestedCapabilities));
+            }
+            Map<String, Integer> free = new HashMap<>();
+            Map<String, Boolean> nodes = new HashMap<>();
+            for (RemoteProxy remoteProxy : registry.getAllProxies()) {
+                if (!(remoteProxy instanceof MobileRemoteProxy)) {
+                    continue;
+                }
+                MobileRemoteProxy proxy = (MobileRemoteProxy) remoteProxy;
+                boolean available = !proxy.isDown() && proxy.getValidationState() == MobileRemoteProxy.ValidationState.VALID;
+                for (TestSlot slot : proxy.getTestSlots()) {
+                    String udid = proxy.getUdid(slot);
+                    nodes.put(udid, slot.getSession() != null);
+                    if (available && slot.getSession() == null && !DeviceQuarantine.isQuarantined(udid)) {
+                        profiles.forEach((profile, capabilities) -> {
+                            if (proxy.hasCapability(capabilities)) {
+                                free.merge(profile, 1, Integer::sum);
+                            }
+                        });
+                    }
+                }
+            }
+            scale(provider, executor, queue, profiles, free, nodes, System.currentTimeMillis());
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not scale virtual devices: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param provider provider of the devices
+     * @param executor executor of launches and stops
+     * @param queue new session requests in the queue per profile
+     * @param profiles requested capabilities per profile
+     * @param free free slots matching the profile
+     * @param nodes registered devices, key - udid, value - true if the device has a session
+     * @param now current time
+     */
+    static void scale(VirtualDeviceProvider provider, Executor executor, Map<String, Integer> queue,
+            Map<String, Map<String, Object>> profiles, Map<String, Integer> free, Map<String, Boolean> nodes, long now) {
+        for (Map.Entry<String, VirtualDevice> entry : DEVICES.entrySet()) {
+            VirtualDevice device = entry.getValue();
+            String udid = device.udid;
+            if (udid != null && nodes.containsKey(udid)) {
+                if (device.registeredAt == 0) {
+                    device.registeredAt = now;
+                    GridLog.info(LOGGER, udid, "autoscaler", "[AUTOSCALER-%s] Device for '%s' is registered, warm-up time: %d ms.",
+                            udid, device.profile, now - device.launchedAt);
+                }
+                if (nodes.get(udid)) {
+                    device.idleSince = 0;
+                } else if (device.idleSince == 0) {
+                    device.idleSince = now;
+                } else if (now - device.idleSince > IDLE_TIMEOUT.toMillis()) {
+                    GridLog.info(LOGGER, udid, "autoscaler", "[AUTOSCALER-%s] Device is idle.", udid);
+                    stop(provider, executor, entry.getKey(), device);
+                }
+            } else if (device.registeredAt != 0) {
+                GridLog.info(LOGGER, udid, "autoscaler", "[AUTOSCALER-%s] Device is unregistered.", udid);
+                stop(provider, executor, entry.getKey(), device);
+            } else if (now - device.launchedAt > WARMUP_TIMEOUT.toMillis()) {
+                GridLog.warning(LOGGER, udid, "autoscaler", "[AUTOSCALER-%s] Device for '%s' is not registered in %d ms.",
+                        udid, device.profile, now - device.launchedAt);
+                stop(provider, executor, entry.getKey(), device);
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : queue.entrySet()) {
+            String profile = entry.getKey();
+            Map<String, Object> capabilities = profiles.get(profile);
+            if (capabilities == null || !provider.supports(capabilities)) {
+                continue;
+            }
+            long warming = DEVICES.values().stream()
+                    .filter(device -> device.registeredAt == 0 && device.profile.equals(profile))
+                    .count();
+            long required = Math.min(entry.getValue() - free.getOrDefault(profile, 0) - warming, MAX_DEVICES - DEVICES.size());
+            for (long i = 0; i < required; i++) {
+                launch(provider, executor, profile, capabilities, now);
+            }
+        }
+    }
+
+    private static void launch(VirtualDeviceProvider provider, Executor executor, String profile, Map<String, Object> capabilities,
+            long now) {
+        String id = UUID.randomUUID().toString();
+        VirtualDevice device = new VirtualDevice(profile, now);
+        DEVICES.put(id, device);
+        LOGGER.info(() -> String.format("[AUTOSCALER] Launching device for '%s'.", profile));
+        executor.execute(() -> {
+            try {
+                device.udid = provider.launch(capabilities);
+                GridLog.info(LOGGER, device.udid, "autoscaler", "[AUTOSCALER-%s] Device for '%s' is launched.", device.udid, profile);
+                if (!DEVICES.containsKey(id)) {
+                    // warm-up timeout expired during the launch
+                    stop(provider, Runnable::run, id, device);
+                }
+            } catch (Exception e) {
+                DEVICES.remove(id);
+                LOGGER.log(Level.WARNING, String.format("[AUTOSCALER] Could not launch device for '%s': %s", profile, e.getMessage()), e);
+            }
+        });
+    }
+
+    private static void stop(VirtualDeviceProvider provider, Executor executor, String id, VirtualDevice device) {
+        DEVICES.remove(id);
+        String udid = device.udid;
+        if (udid == null) {
+            // the launch is still in progress, the device is stopped after the launch
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                provider.stop(udid);
+                GridLog.info(LOGGER, udid, "autoscaler", "[AUTOSCALER-%s] Device is stopped.", udid);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, String.format("[AUTOSCALER-%s] Could not stop device: %s", udid, e.getMessage()), e);
+            }
+        });
+    }
+
+    static int getDevices() {
+        return DEVICES.size();
+    }
+
+    static void clear() {
+        DEVICES.clear();
+    }
+
+    private static final class VirtualDevice {
+        private final String profile;
+        private final long launchedAt;
+        private volatile String udid;
+        private volatile long registeredAt;
+        private volatile long idleSince;
+
+        private VirtualDevice(String profile, long launchedAt) {
+            this.profile = profile;
+            this.launchedAt = launchedAt;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.autoscaling;
+
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Provider running local commands (shell scripts) to launch and stop the devices.
+ * <p>
+ * {@code AUTOSCALER_LAUNCH_COMMAND} is run with {@code PLATFORM_NAME}, {@code PLATFORM_VERSION}, {@code DEVICE_NAME},
+ * {@code DEVICE_TYPE} and {@code AUTOSCALER_PROFILE} environment variables and should print the udid of the launched device
+ * as the last line of the output. {@code AUTOSCALER_STOP_COMMAND} is run with {@code DEVICE_UDID}. Commands are killed after
+ * {@code AUTOSCALER_COMMAND_TIMEOUT} seconds (default 120).
+ */
+public class CommandDeviceProvider implements VirtualDeviceProvider {
+    private static final Logger LOGGER = Logger.getLogger(CommandDeviceProvider.class.getName());
+    public static final String NAME = "command";
+
+    private final String launchCommand;
+    private final String stopCommand;
+    private final Duration timeout;
+
+    public CommandDeviceProvider() {
+        this(System.getenv("AUTOSCALER_LAUNCH_COMMAND"), System.getenv("AUTOSCALER_STOP_COMMAND"),
+                Optional.ofNullable(System.getenv("AUTOSCALER_COMMAND_TIMEOUT"))
+                        .filter(StringUtils::isNotBlank)
+                        .map(Long::parseLong)
+                        .map(Duration::ofSeconds)
+                        .orElse(Duration.ofSeconds(120)));
+    }
+
+    CommandDeviceProvider(String launchCommand, String stopCommand, Duration timeout) {
+        this.launchCommand = launchCommand;
+        this.stopCommand = stopCommand;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Map<String, Object> capabilities) {
+        return StringUtils.isNotBlank(launchCommand);
+    }
+
+    @Override
+    public String launch(Map<String, Object> capabilities) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder("sh", "-c", launchCommand);
+        Map<String, String> environment = builder.environment();
+        environment.put("AUTOSCALER_PROFILE", CapabilityUtils.getProfile(capabilities));
+        environment.put("PLATFORM_NAME", Optional.ofNullable(capabilities.get("platformName")).map(String::valueOf).orElse(""));
+        environment.put("PLATFORM_VERSION", CapabilityUtils.getAppiumCapability(capabilities, "platformVersion")
+                .map(String::valueOf).orElse(""));
+        environment.put("DEVICE_NAME", CapabilityUtils.getAppiumCapability(capabilities, "deviceName")
+                .map(String::valueOf).orElse(""));
+        environment.put("DEVICE_TYPE", CapabilityUtils.getZebrunnerCapability(capabilities, "deviceType")
+                .map(String::valueOf).orElse(""));
+        List<String> output = run(builder);
+        for (int i = output.size() - 1; i >= 0; i--) {
+            if (StringUtils.isNotBlank(output.get(i))) {
+                return output.get(i).trim();
+            }
+        }
+        throw new IOException("Launch command did not print udid of the device.");
+    }
+
+    @Override
+    public void stop(String udid) throws IOException {
+        if (StringUtils.isBlank(stopCommand)) {
+            LOGGER.warning(() -> String.format("[AUTOSCALER-%s] Stop command is not configured.", udid));
+            return;
+        }
+        ProcessBuilder builder = new ProcessBuilder("sh", "-c", stopCommand);
+        builder.environment().put("DEVICE_UDID", udid);
+        run(builder);
+    }
+
+    private List<String> run(ProcessBuilder builder) throws IOException {
+        // output goes to the file: background processes started by the command (emulators) could keep the pipe open
+        Path log = Files.createTempFile("autoscaler", ".log");
+        try {
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(log.toFile());
+            Process process = builder.start();
+            try {
+                if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException(String.format("Command '%s' is timed out.", builder.command().get(2)));
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Command is interrupted.", e);
+            }
+            List<String> output = Files.readAllLines(log, StandardCharsets.UTF_8);
+            if (process.exitValue() != 0) {
+                throw new IOException(String.format("Command '%s' is failed with exit code %d: %s", builder.command().get(2),
+                        process.exitValue(), String.join("\n", output)));
+            }
+            return output;
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.autoscaling;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Provider of the virtual devices (emulators, simulators) started on demand by {@link Autoscaler}.
+ * <p>
+ * Implementations are looked up by {@link #getName()} with {@link java.util.ServiceLoader}. A launched device is expected to
+ * register a node in the hub by itself, the node is matched to the device by udid.
+ */
+public interface VirtualDeviceProvider {
+
+    /**
+     * @return name of the provider, see {@code AUTOSCALER_PROVIDER}
+     */
+    String getName();
+
+    /**
+     * @param capabilities requested capabilities
+     * @return true if the provider can launch a device for the capabilities
+     */
+    boolean supports(Map<String, Object> capabilities);
+
+    /**
+     * Launch the device. Could take a while, called outside the matcher thread.
+     *
+     * @param capabilities requested capabilities
+     * @return udid of the launched device
+     * @throws IOException if the device could not be launched
+     */
+    String launch(Map<String, Object> capabilities) throws IOException;
+
+    /**
+     * Stop the device launched by the provider.
+     *
+     * @param udid device udid
+     * @throws IOException if the device could not be stopped
+     */
+    void stop(String udid) throws IOException;
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.events;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring buffer of grid state change events.
+ * <p>
+ * Publishing never blocks on subscribers: every subscriber keeps its own cursor (last received event id) and reads
+ * events with {@link #read(long, List)}. Subscriber that falls behind more than the buffer size loses its position
+ * and should resync.
+ */
+public final class GridEvents {
+    private static final int BUFFER_SIZE = Optional.ofNullable(System.getenv("GRID_EVENTS_BUFFER_SIZE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(1024);
+    private static final AtomicReferenceArray<GridStateEvent> BUFFER = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final Object MONITOR = new Object();
+
+    private GridEvents() {
+        //hide
+    }
+
+    public static void publish(GridEventType type, String udid) {
+        publish(type, udid, null);
+    }
+
+    public static void publish(GridEventType type, String udid, Map<String, Object> details) {
+        long id = SEQUENCE.incrementAndGet();
+        BUFFER.set(index(id), new GridStateEvent(id, type, udid, details));
+        synchronized (MONITOR) {
+            MONITOR.notifyAll();
+        }
+    }
+
+    /**
+     * Id of the last published event
+     *
+     * @return event id, 0 if there are no events
+     */
+    public static long getLastEventId() {
+        return SEQUENCE.get();
+    }
+
+    /**
+     * Read events published after the cursor
+     *
+     * @param cursor id of the last event received by subscriber
+     * @param events list to which new events will be added (in publishing order)
+     * @return false if the cursor is outside of the buffer (subscriber is too slow or event id is unknown), true otherwise
+     */
+    public static boolean read(long cursor, List<GridStateEvent> events) {
+        long last = SEQUENCE.get();
+        if (cursor > last || last - cursor > BUFFER_SIZE) {
+            return false;
+        }
+        for (long id = cursor + 1; id <= last; id++) {
+            GridStateEvent event = BUFFER.get(index(id));
+            if (event == null || event.getId() < id) {
+                // slot is not filled yet by the publisher, read it on the next iteration
+                break;
+            }
+            if (event.getId() != id) {
+                // slot was overwritten while reading
+                return false;
+            }
+            events.add(event);
+        }
+        return true;
+    }
+
+    /**
+     * Wait for events published after the cursor
+     *
+     * @param cursor  id of the last event received by subscriber
+     * @param timeout max time to wait in milliseconds
+     */
+    public static void await(long cursor, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (MONITOR) {
+            long remaining;
+            while (SEQUENCE.get() <= cursor && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                MONITOR.wait(remaining);
+            }
+        }
+    }
+
+    private static int index(long id) {
+        return (int) (id % BUFFER_SIZE);
+    }
+}
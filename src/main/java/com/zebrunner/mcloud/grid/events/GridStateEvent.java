@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.events;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Map;
+
+/**
+ * Immutable grid state change notification.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class GridStateEvent {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final long id;
+    private final GridEventType type;
+    private final String udid;
+    private final long timestamp;
+    private final Map<String, Object> details;
+    private volatile String json;
+
+    GridStateEvent(long id, GridEventType type, String udid, Map<String, Object> details) {
+        this.id = id;
+        this.type = type;
+        this.udid = udid;
+        this.timestamp = System.currentTimeMillis();
+        this.details = details;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public GridEventType getType() {
+        return type;
+    }
+
+    public String getUdid() {
+        return udid;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+
+    /**
+     * Serialized event. Serialization happens on the subscriber thread and only once per event.
+     *
+     * @return event as json
+     */
+    public String toJson() {
+        String result = json;
+        if (result == null) {
+            try {
+                result = MAPPER.writeValueAsString(this);
+            } catch (JsonProcessingException e) {
+                result = String.format("{\"id\":%s,\"type\":\"%s\"}", id, type);
+            }
+            json = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.forwarding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.openqa.grid.common.exception.ClientGoneException;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.listeners.CommandListener;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedResponse;
+import org.openqa.selenium.remote.ErrorCodes;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards WebDriver command to the node without buffering the response body.
+ * <p>
+ * Grid forwarding reads the whole request and response into memory, so every screenshot, page source or screen recording
+ * is kept in the hub heap (several times) until it is written to the client. This forwarder copies the node response
+ * to the client through a pooled buffer of fixed size, so heap used by the command does not depend on the payload size.
+ * Only error responses (small by nature) are read to detect that the session is lost on the node. The request body is
+ * already read by the grid to detect request type, so it is sent from that buffer without copying.
+ * <p>
+ * Configuration:
+ * <ul>
+ * <li>{@code STREAMING_BUFFER_SIZE} - copy buffer size in KB, default 64</li>
+ * <li>{@code STREAMING_BUFFER_POOL_SIZE} - max number of pooled buffers, default 128</li>
+ * </ul>
+ */
+public final class StreamingForwarder {
+    private static final int BUFFER_SIZE = Optional.ofNullable(System.getenv("STREAMING_BUFFER_SIZE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(64) * 1024;
+    private static final int BUFFER_POOL_SIZE = Optional.ofNullable(System.getenv("STREAMING_BUFFER_POOL_SIZE"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(128);
+    private static final int MAX_ERROR_BODY_SIZE = 1024 * 1024;
+    private static final Set<String> SKIPPED_REQUEST_HEADERS = Set.of("content-length", "transfer-encoding", "host", "connection");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final BufferPool BUFFERS = new BufferPool(BUFFER_SIZE, BUFFER_POOL_SIZE);
+    private static final CloseableHttpClient CLIENT;
+
+    static {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(1024);
+        connectionManager.setDefaultMaxPerRoute(32);
+        CLIENT = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                // body and its headers should be forwarded as is
+                .disableContentCompression()
+                .disableRedirectHandling()
+                .disableCookieManagement()
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    private StreamingForwarder() {
+        //hide
+    }
+
+    /**
+     * Forward command of the session to the node and stream node response to the client
+     *
+     * @param session session
+     * @param request client request
+     * @param response client response
+     * @throws IOException if node could not be reached; {@link ClientGoneException} if client could not be reached
+     */
+    public static void forward(TestSession session, SeleniumBasedRequest request, HttpServletResponse response) throws IOException {
+        RemoteProxy proxy = session.getSlot().getProxy();
+        // session should not time out while command is executed on the node
+        session.setIgnoreTimeout(true);
+        try {
+            if (proxy instanceof CommandListener) {
+                ((CommandListener) proxy).beforeCommand(session, request, response);
+            }
+            HttpUriRequest nodeRequest = buildNodeRequest(session, request);
+            try (CloseableHttpResponse nodeResponse = CLIENT.execute(nodeRequest)) {
+                int status = nodeResponse.getStatusLine().getStatusCode();
+                response.setStatus(status);
+                copyResponseHeaders(session, request, nodeResponse, response);
+
+                HttpEntity entity = nodeResponse.getEntity();
+                SeleniumBasedResponse wrappedResponse = new SeleniumBasedResponse(response);
+                if (status >= 400 && entity != null && entity.getContentLength() >= 0
+                        && entity.getContentLength() <= MAX_ERROR_BODY_SIZE) {
+                    byte[] body = EntityUtils.toByteArray(entity);
+                    if (isSessionLost(body)) {
+                        proxy.getRegistry().terminate(session, SessionTerminationReason.BROWSER_TIMEOUT);
+                    }
+                    wrappedResponse.setForwardedContent(body);
+                    entity = null;
+                }
+                if (proxy instanceof CommandListener) {
+                    ((CommandListener) proxy).afterCommand(session, request, wrappedResponse);
+                }
+
+                byte[] content = wrappedResponse.getForwardedContentAsByteArray();
+                if (content != null) {
+                    write(response, content);
+                } else if (entity != null) {
+                    stream(entity, response);
+                }
+            }
+        } finally {
+            session.setIgnoreTimeout(false);
+        }
+    }
+
+    private static HttpUriRequest buildNodeRequest(TestSession session, SeleniumBasedRequest request) throws IOException {
+        URL remoteURL = session.getSlot().getRemoteURL();
+        int browserTimeout = (int) TimeUnit.SECONDS.toMillis(Optional.ofNullable(session.getSlot().getProxy().getConfig().browserTimeout)
+                .orElse(0));
+
+        String uri = remoteURL + StringUtils.removeStart(request.getRequestURI(), getPathSpec(request));
+        if (request.getQueryString() != null) {
+            uri += "?" + request.getQueryString();
+        }
+        RequestBuilder builder = RequestBuilder.create(request.getMethod())
+                .setUri(new URL(remoteURL, uri).toExternalForm())
+                .setConfig(RequestConfig.custom()
+                        .setConnectTimeout(browserTimeout)
+                        .setSocketTimeout(browserTimeout)
+                        .build());
+        if (request.getContentLength() > 0) {
+            builder.setEntity(new InputStreamEntity(request.getInputStream(), request.getContentLength()));
+        }
+        for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+            String name = names.nextElement();
+            if (!SKIPPED_REQUEST_HEADERS.contains(name.toLowerCase())) {
+                builder.addHeader(name, request.getHeader(name));
+            }
+        }
+        return builder.build();
+    }
+
+    private static void copyResponseHeaders(TestSession session, SeleniumBasedRequest request,
+            CloseableHttpResponse nodeResponse, HttpServletResponse response) throws IOException {
+        URL remoteURL = session.getSlot().getRemoteURL();
+        for (Header header : nodeResponse.getAllHeaders()) {
+            String name = header.getName();
+            // body is re-chunked by the servlet container if node did not send its length
+            if ("Transfer-Encoding".equalsIgnoreCase(name) || "Connection".equalsIgnoreCase(name)) {
+                continue;
+            }
+            if ("Location".equalsIgnoreCase(name)) {
+                // the location should point to the hub
+                String path = new URL(remoteURL, header.getValue()).getPath().replace(remoteURL.getPath(), "");
+                response.setHeader(name, session.getSlot().getProxy().getRegistry().getHub()
+                        .getUrl(getPathSpec(request) + path).toString());
+            } else {
+                response.addHeader(name, header.getValue());
+            }
+        }
+    }
+
+    private static String getPathSpec(SeleniumBasedRequest request) {
+        return request.getContextPath() + request.getServletPath();
+    }
+
+    private static void stream(HttpEntity entity, HttpServletResponse response) throws IOException {
+        byte[] buffer = BUFFERS.acquire();
+        try {
+            // the stream is not closed here: closing of the node response releases the connection if the body was read
+            // to the end, or aborts it if the client gone, instead of reading the rest of the body
+            InputStream in = entity.getContent();
+            OutputStream out = getOutputStream(response);
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                try {
+                    out.write(buffer, 0, read);
+                } catch (IOException e) {
+                    throw new ClientGoneException(e);
+                }
+            }
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new ClientGoneException(e);
+            }
+        } finally {
+            BUFFERS.release(buffer);
+        }
+    }
+
+    private static void write(HttpServletResponse response, byte[] content) throws IOException {
+        response.setContentLength(content.length);
+        try {
+            OutputStream out = response.getOutputStream();
+            out.write(content);
+            out.flush();
+        } catch (IOException e) {
+            throw new ClientGoneException(e);
+        }
+    }
+
+    private static OutputStream getOutputStream(HttpServletResponse response) throws ClientGoneException {
+        try {
+            return response.getOutputStream();
+        } catch (IOException e) {
+            throw new ClientGoneException(e);
+        }
+    }
+
+    /**
+     * Check is the response of the node means that the session does not exist anymore
+     * (JSON Wire Protocol status or W3C error)
+     */
+    static boolean isSessionLost(byte[] body) {
+        try {
+            JsonNode json = MAPPER.readTree(body);
+            if (json == null || !json.isObject()) {
+                return false;
+            }
+            return json.path("status").asInt(ErrorCodes.SUCCESS) == ErrorCodes.NO_SUCH_SESSION
+                    || "invalid session id".equals(json.path("value").path("error").asText(null));
+        } catch (IOException e) {
+            // not a json
+            return false;
+        }
+    }
+
+    static BufferPool getBufferPool() {
+        return BUFFERS;
+    }
+}
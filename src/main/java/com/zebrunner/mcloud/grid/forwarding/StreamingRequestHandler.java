@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.forwarding;
+
+import com.zebrunner.mcloud.grid.MobileRemoteProxy;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Request handler that forwards commands of the mobile sessions via {@link StreamingForwarder}.
+ * New session requests and sessions of other proxies are forwarded by the grid as usual.
+ */
+public class StreamingRequestHandler extends RequestHandler {
+
+    public StreamingRequestHandler(SeleniumBasedRequest request, HttpServletResponse response, GridRegistry registry) {
+        super(request, response, registry);
+    }
+
+    @Override
+    protected void forwardRequest(TestSession session, RequestHandler handler) throws IOException {
+        if (session.getSlot().getProxy() instanceof MobileRemoteProxy) {
+            StreamingForwarder.forward(session, getRequest(), getResponse());
+        } else {
+            super.forwardRequest(session, handler);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.zebrunner.mcloud.grid.integration.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.jfr.MitmRestartEvent;
 import com.zebrunner.mcloud.grid.servlets.ProxyServlet;
 import com.zebrunner.mcloud.grid.util.CapabilityUtils;
 import com.zebrunner.mcloud.grid.util.HttpClient;
@@ -68,6 +69,7 @@ public final class MitmProxyClient {
             return false;
         }
 
+        MitmRestartEvent event = MitmRestartEvent.start(proxyType);
         String proxyArguments = StringUtils.isBlank(args) ? StringUtils.EMPTY : args;
         Map<String, String> proxy = Map.of("proxyType", proxyType, "proxyArgs", proxyArguments);
         boolean isStarted = false;
@@ -84,6 +86,7 @@ public final class MitmProxyClient {
         } catch (Exception e) {
             LOGGER.warning(() -> String.format("[NODE-%s]  Could not start proxy. Exception: %s, %s", sessionUUID, e.getMessage(), e));
         }
+        event.complete(deviceUUID, null, isStarted ? "STARTED" : "FAILED");
         return isStarted;
     }
 
@@ -15,10 +15,19 @@
  *******************************************************************************/
 package com.zebrunner.mcloud.grid.integration.client;
 
+import com.zebrunner.mcloud.grid.DeviceHealth;
+import com.zebrunner.mcloud.grid.DeviceQuarantine;
 import com.zebrunner.mcloud.grid.Platform;
-import com.zebrunner.mcloud.grid.models.stf.Devices;
+import com.zebrunner.mcloud.grid.QuarantineTimeout;
+import com.zebrunner.mcloud.grid.events.GridEventType;
+import com.zebrunner.mcloud.grid.events.GridEvents;
+import com.zebrunner.mcloud.grid.jfr.STFReleaseEvent;
+import com.zebrunner.mcloud.grid.jfr.STFReserveEvent;
+import com.zebrunner.mcloud.grid.journal.HubJournal;
+import com.zebrunner.mcloud.grid.logging.GridLog;
 import com.zebrunner.mcloud.grid.models.stf.RemoteConnectUserDevice;
-import com.zebrunner.mcloud.grid.models.stf.STFDevice;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceStatus;
 import com.zebrunner.mcloud.grid.models.stf.User;
 import com.zebrunner.mcloud.grid.util.CapabilityUtils;
 import com.zebrunner.mcloud.grid.util.HttpClient;
@@ -26,15 +35,18 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-import static com.zebrunner.mcloud.grid.MobileRemoteProxy.DEVICE_IGNORE_AUTOMATION_TIMERS;
-
 @SuppressWarnings("rawtypes")
 public final class STFClient {
     private static final Logger LOGGER = Logger.getLogger(STFClient.class.getName());
@@ -42,31 +54,9 @@ public final class STFClient {
     public static final String DEFAULT_STF_TOKEN = System.getenv("STF_TOKEN");
     // Max time is seconds for reserving devices in STF
     private static final String DEFAULT_STF_TIMEOUT = System.getenv("STF_TIMEOUT");
+    private static final int RECONCILE_PARALLELISM = 8;
     private static final boolean IS_STF_ENABLED = (!StringUtils.isEmpty(STF_URL) && !StringUtils.isEmpty(DEFAULT_STF_TOKEN));
 
-    private static final Duration INVALID_STF_RESPONSE_TIMEOUT = Optional.ofNullable(System.getenv("STF_DEVICE_INVALID_RESPONSE_IGNORE_TIMEOUT"))
-            .filter(StringUtils::isNotBlank)
-            .map(Integer::parseInt)
-            .map(Duration::ofSeconds)
-            .orElse(Duration.ofMinutes(10));
-    private static final Duration UNAUTHORIZED_TIMEOUT = Optional.ofNullable(System.getenv("STF_DEVICE_UNAUTHORIZED_IGNORE_TIMEOUT"))
-            .filter(StringUtils::isNotBlank)
-            .map(Integer::parseInt)
-            .map(Duration::ofSeconds)
-            .orElse(Duration.ofMinutes(10));
-
-    private static final Duration UNHEALTHY_TIMEOUT = Optional.ofNullable(System.getenv("STF_DEVICE_UNHEALTHY_IGNORE_TIMEOUT"))
-            .filter(StringUtils::isNotBlank)
-            .map(Integer::parseInt)
-            .map(Duration::ofSeconds)
-            .orElse(Duration.ofMinutes(1));
-
-    private static final Duration STF_DEVICE_MANUALLY_RESERVED_TIMEOUT = Optional.ofNullable(System.getenv("STF_DEVICE_MANUALLY_RESERVED_TIMEOUT"))
-            .filter(StringUtils::isNotBlank)
-            .map(Integer::parseInt)
-            .map(Duration::ofSeconds)
-            .orElse(Duration.ofMinutes(3));
-
     private STFClient() {
         //do nothing
     }
@@ -74,8 +64,28 @@ public final class STFClient {
     /**
      * Reserve STF device
      */
-    public static synchronized STFDevice reserveSTFDevice(String deviceUDID, Map<String, Object> requestedCapabilities, String sessionUUID) {
-        LOGGER.info(() -> String.format("[STF-%s] Reserve STF Device.", sessionUUID));
+    public static synchronized STFDeviceRecord reserveSTFDevice(String deviceUDID, Map<String, Object> requestedCapabilities, String sessionUUID) {
+        STFReserveEvent event = STFReserveEvent.start();
+        STFDeviceRecord preReserved = STFPreReservation.take(deviceUDID, requestedCapabilities);
+        if (preReserved != null) {
+            event.complete(deviceUDID, requestedCapabilities.get("platformName"), "PRERESERVED");
+            return preReserved;
+        }
+        STFDeviceRecord device = reserve(deviceUDID, requestedCapabilities, sessionUUID);
+        event.complete(deviceUDID, requestedCapabilities.get("platformName"), device != null ? "RESERVED" : "REJECTED");
+        if (device == null) {
+            GridEvents.publish(GridEventType.STF_RESERVATION_FAILED, deviceUDID);
+        } else {
+            HubJournal.reserved(deviceUDID, CapabilityUtils.getZebrunnerCapability(requestedCapabilities, "STF_TOKEN")
+                    .map(String::valueOf)
+                    .filter(token -> !StringUtils.equals(token, DEFAULT_STF_TOKEN))
+                    .isPresent());
+        }
+        return device;
+    }
+
+    private static STFDeviceRecord reserve(String deviceUDID, Map<String, Object> requestedCapabilities, String sessionUUID) {
+        GridLog.info(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Reserve STF Device.", sessionUUID);
 
         String stfToken = CapabilityUtils.getZebrunnerCapability(requestedCapabilities, "STF_TOKEN")
                 .map(String::valueOf)
@@ -90,61 +100,57 @@ public final class STFClient {
                 .get(User.class);
 
         if (user.getStatus() != 200) {
-            LOGGER.warning(() ->
-                    String.format("[STF-%s] Not authenticated at STF successfully! URL: '%s'; Token: '%s';", sessionUUID, STF_URL, stfToken));
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Not authenticated at STF successfully! URL: '%s'; Token: '%s';", sessionUUID, STF_URL, stfToken);
             return null;
         }
 
-        HttpClient.Response<Devices> devices = HttpClient.uri(Path.STF_DEVICES_PATH, STF_URL)
-                .withAuthorization(buildAuthToken(stfToken))
-                .get(Devices.class);
+        HttpClient.Response<Optional<STFDeviceRecord>> devices = findDevice(deviceUDID, stfToken);
 
         if (devices.getStatus() != 200) {
-            LOGGER.warning(() -> String.format("[STF-%s] Unable to get devices status. HTTP status: %s", sessionUUID, devices.getStatus()));
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Unable to get devices status. HTTP status: %s", sessionUUID, devices.getStatus());
             return null;
         }
 
-        Optional<STFDevice> optionalSTFDevice = devices.getObject().getDevices()
-                .stream().filter(device -> StringUtils.equals(device.getSerial(), deviceUDID))
-                .findFirst();
+        Optional<STFDeviceRecord> optionalSTFDevice = devices.getObject();
 
         if (optionalSTFDevice.isEmpty()) {
-            LOGGER.warning(() -> String.format("[STF-%s] Could not find STF device with udid: %s", sessionUUID, deviceUDID));
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Could not find STF device with udid: %s", sessionUUID, deviceUDID);
             return null;
         }
 
-        STFDevice stfDevice = optionalSTFDevice.get();
-        STFDevice finalStfDevice2 = stfDevice;
-        LOGGER.info(() -> String.format("[STF-%s] STF device info: %s", sessionUUID, finalStfDevice2));
+        STFDeviceRecord stfDevice = optionalSTFDevice.get();
+        DeviceHealth.onSTFDevice(deviceUDID, stfDevice);
+        STFDeviceRecord finalStfDevice2 = stfDevice;
+        GridLog.info(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] STF device info: %s", sessionUUID, finalStfDevice2);
 
-        if (stfDevice.getStatus() == null) {
-            DEVICE_IGNORE_AUTOMATION_TIMERS.put(deviceUDID, Duration.ofMillis(System.currentTimeMillis()).plus(INVALID_STF_RESPONSE_TIMEOUT));
-            LOGGER.warning(() -> String.format("[STF-%s] STF device status is null. It will be ignored: %s seconds.", sessionUUID,
-                    INVALID_STF_RESPONSE_TIMEOUT.toSeconds()));
+        if (stfDevice.getStatus() == STFDeviceStatus.MISSING) {
+            DeviceQuarantine.put(deviceUDID, QuarantineTimeout.STF_DEVICE_INVALID_RESPONSE_IGNORE_TIMEOUT.get(), "STF_STATUS_NULL");
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] STF device status is null. It will be ignored: %s seconds.", sessionUUID,
+                    QuarantineTimeout.STF_DEVICE_INVALID_RESPONSE_IGNORE_TIMEOUT.get().toSeconds());
             return null;
         }
 
-        if (stfDevice.getStatus().intValue() == 2) {
-            DEVICE_IGNORE_AUTOMATION_TIMERS.put(deviceUDID, Duration.ofMillis(System.currentTimeMillis()).plus(UNAUTHORIZED_TIMEOUT));
-            LOGGER.warning(() -> String.format("[STF-%s] STF device status 'UNAUTHORIZED'. It will be ignored: %s seconds.", sessionUUID,
-                    UNAUTHORIZED_TIMEOUT.toSeconds()));
+        if (stfDevice.getStatus() == STFDeviceStatus.UNAUTHORIZED) {
+            DeviceQuarantine.put(deviceUDID, QuarantineTimeout.STF_DEVICE_UNAUTHORIZED_IGNORE_TIMEOUT.get(), "STF_UNAUTHORIZED");
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] STF device status 'UNAUTHORIZED'. It will be ignored: %s seconds.", sessionUUID,
+                    QuarantineTimeout.STF_DEVICE_UNAUTHORIZED_IGNORE_TIMEOUT.get().toSeconds());
             return null;
         }
 
-        if (stfDevice.getStatus() == 7) {
-            DEVICE_IGNORE_AUTOMATION_TIMERS.put(deviceUDID, Duration.ofMillis(System.currentTimeMillis()).plus(UNHEALTHY_TIMEOUT));
-            LOGGER.warning(() -> String.format("[STF-%s] STF device status 'UNHEALTHY'. It will be ignored: %s seconds.", sessionUUID,
-                    UNHEALTHY_TIMEOUT.toSeconds()));
+        if (stfDevice.getStatus() == STFDeviceStatus.UNHEALTHY) {
+            DeviceQuarantine.put(deviceUDID, QuarantineTimeout.STF_DEVICE_UNHEALTHY_IGNORE_TIMEOUT.get(), "STF_UNHEALTHY");
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] STF device status 'UNHEALTHY'. It will be ignored: %s seconds.", sessionUUID,
+                    QuarantineTimeout.STF_DEVICE_UNHEALTHY_IGNORE_TIMEOUT.get().toSeconds());
             return null;
         }
 
-        if (stfDevice.getOwner() != null && StringUtils.equals(stfDevice.getOwner().getName(), user.getObject().getUser().getName()) &&
-                stfDevice.getPresent() &&
-                stfDevice.getReady()) {
-            STFDevice finalStfDevice1 = stfDevice;
-            LOGGER.warning(() -> String.format("[STF-%s] Device [%s] already reserved manually by the same user: %s.",
-                    sessionUUID, deviceUDID, finalStfDevice1.getOwner().getName()));
-        } else if (stfDevice.getOwner() == null && stfDevice.getPresent() && stfDevice.getReady()) {
+        if (stfDevice.getOwnerName() != null && StringUtils.equals(stfDevice.getOwnerName(), user.getObject().getUser().getName()) &&
+                stfDevice.isPresent() &&
+                stfDevice.isReady()) {
+            STFDeviceRecord finalStfDevice1 = stfDevice;
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Device [%s] already reserved manually by the same user: %s.",
+                    sessionUUID, deviceUDID, finalStfDevice1.getOwnerName());
+        } else if (stfDevice.getOwnerName() == null && stfDevice.isPresent() && stfDevice.isReady()) {
             Map<String, Object> entity = new HashMap<>();
             entity.put("serial", deviceUDID);
             entity.put("timeout", TimeUnit.SECONDS.toMillis(stfTimeout));
@@ -152,39 +158,39 @@ public final class STFClient {
                     .withAuthorization(buildAuthToken(stfToken))
                     .post(Void.class, entity);
             if (response.getStatus() != 200) {
-                LOGGER.warning(() -> String.format("[STF-%s] Could not reserve STF device with udid: %s. Status: %s. Response: %s",
-                        sessionUUID, deviceUDID, response.getStatus(), response.getObject()));
-                LOGGER.warning(() -> String.format("[STF-%s] Device [%s] will be ignored %s seconds.",
-                        sessionUUID, deviceUDID, INVALID_STF_RESPONSE_TIMEOUT));
-                DEVICE_IGNORE_AUTOMATION_TIMERS.put(deviceUDID, Duration.ofMillis(System.currentTimeMillis()).plus(INVALID_STF_RESPONSE_TIMEOUT));
+                GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Could not reserve STF device with udid: %s. Status: %s. Response: %s",
+                        sessionUUID, deviceUDID, response.getStatus(), response.getObject());
+                GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Device [%s] will be ignored %s seconds.",
+                        sessionUUID, deviceUDID, QuarantineTimeout.STF_DEVICE_INVALID_RESPONSE_IGNORE_TIMEOUT.get());
+                DeviceQuarantine.put(deviceUDID, QuarantineTimeout.STF_DEVICE_INVALID_RESPONSE_IGNORE_TIMEOUT.get(), "STF_RESERVE_FAILED");
                 if (response.getStatus() == 0) {
-                    LOGGER.warning(() -> String.format("[STF-%s] Device will be marked as unhealthy due to response status '0'.", sessionUUID));
+                    GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Device will be marked as unhealthy due to response status '0'.", sessionUUID);
                     entity.put("body", Map.of("status", "Unhealthy"));
                     HttpClient.Response r = HttpClient.uri(Path.STF_DEVICES_ITEM_PATH, STF_URL, deviceUDID)
                             .withAuthorization(buildAuthToken(stfToken))
                             .put(Void.class, entity);
                     if (r.getStatus() != 200) {
-                        LOGGER.warning(() -> String.format("[STF-%s] Could not mark device as unhealthy. Status: %s. Response: %s", sessionUUID,
-                                r.getStatus(), r.getObject()));
+                        GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Could not mark device as unhealthy. Status: %s. Response: %s", sessionUUID,
+                                r.getStatus(), r.getObject());
                     }
                 }
                 return null;
             }
-        } else if (stfDevice.getOwner() != null && !StringUtils.equals(stfDevice.getOwner().getName(), user.getObject().getUser().getName())){
-            STFDevice finalStfDevice1 = stfDevice;
-            DEVICE_IGNORE_AUTOMATION_TIMERS.put(deviceUDID, Duration.ofMillis(System.currentTimeMillis()).plus(STF_DEVICE_MANUALLY_RESERVED_TIMEOUT));
-            LOGGER.warning(() -> String.format("[STF-%s] Device [%s] reserved manually by user: %s. Will be ignored %s seconds.",
-                    sessionUUID, deviceUDID, finalStfDevice1.getOwner().getName(), STF_DEVICE_MANUALLY_RESERVED_TIMEOUT.toSeconds()));
+        } else if (stfDevice.getOwnerName() != null && !StringUtils.equals(stfDevice.getOwnerName(), user.getObject().getUser().getName())){
+            STFDeviceRecord finalStfDevice1 = stfDevice;
+            DeviceQuarantine.put(deviceUDID, QuarantineTimeout.STF_DEVICE_MANUALLY_RESERVED_TIMEOUT.get(), "STF_MANUALLY_RESERVED");
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Device [%s] reserved manually by user: %s. Will be ignored %s seconds.",
+                    sessionUUID, deviceUDID, finalStfDevice1.getOwnerName(), QuarantineTimeout.STF_DEVICE_MANUALLY_RESERVED_TIMEOUT.get().toSeconds());
             return null;
         } else {
-            DEVICE_IGNORE_AUTOMATION_TIMERS.put(deviceUDID, Duration.ofMillis(System.currentTimeMillis()).plus(UNHEALTHY_TIMEOUT));
-            LOGGER.warning(() -> String.format("[STF-%s] Device [%s] is not ready. Will be ignored %s seconds.",
-                    sessionUUID, deviceUDID, UNHEALTHY_TIMEOUT.toSeconds()));
+            DeviceQuarantine.put(deviceUDID, QuarantineTimeout.STF_DEVICE_UNHEALTHY_IGNORE_TIMEOUT.get(), "STF_NOT_READY");
+            GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Device [%s] is not ready. Will be ignored %s seconds.",
+                    sessionUUID, deviceUDID, QuarantineTimeout.STF_DEVICE_UNHEALTHY_IGNORE_TIMEOUT.get().toSeconds());
             return null;
         }
 
         if (Platform.ANDROID.equals(Platform.fromCapabilities(requestedCapabilities))) {
-            LOGGER.info(() -> String.format("[STF-%s] Additionally call 'remoteConnect'.", sessionUUID));
+            GridLog.info(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Additionally call 'remoteConnect'.", sessionUUID);
 
             HttpClient.Response<RemoteConnectUserDevice> remoteConnectUserDevice = HttpClient.uri(Path.STF_USER_DEVICES_REMOTE_CONNECT_PATH,
                             STF_URL, deviceUDID)
@@ -192,9 +198,8 @@ public final class STFClient {
                     .post(RemoteConnectUserDevice.class, null);
 
             if (remoteConnectUserDevice.getStatus() != 200) {
-                LOGGER.warning(
-                        () -> String.format("[STF-%s] Unsuccessful remoteConnect. Status: %s. Response: %s",
-                                sessionUUID, remoteConnectUserDevice.getStatus(), remoteConnectUserDevice.getObject()));
+                GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Unsuccessful remoteConnect. Status: %s. Response: %s",
+                                sessionUUID, remoteConnectUserDevice.getStatus(), remoteConnectUserDevice.getObject());
                 return null;
             }
         }
@@ -206,67 +211,70 @@ public final class STFClient {
                         .map(Boolean::parseBoolean)
                         .orElse(false)) {
             // get again device info
-            HttpClient.Response<Devices> _devices = HttpClient.uri(Path.STF_DEVICES_PATH, STF_URL)
-                    .withAuthorization(buildAuthToken(stfToken))
-                    .get(Devices.class);
+            HttpClient.Response<Optional<STFDeviceRecord>> _devices = findDevice(deviceUDID, stfToken);
 
             if (_devices.getStatus() != 200) {
-                LOGGER.warning(() -> String.format("[STF-%s] Unable to get devices status. HTTP status: %s", sessionUUID, _devices.getStatus()));
+                GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Unable to get devices status. HTTP status: %s", sessionUUID, _devices.getStatus());
                 return null;
             }
 
-            Optional<STFDevice> _optionalSTFDevice = _devices.getObject().getDevices()
-                    .stream()
-                    .filter(device -> StringUtils.equals(device.getSerial(), deviceUDID))
-                    .findFirst();
+            Optional<STFDeviceRecord> _optionalSTFDevice = _devices.getObject();
 
             if (_optionalSTFDevice.isEmpty()) {
-                LOGGER.warning(() -> String.format("[STF-%s] Could not find STF device with udid: %s", sessionUUID, deviceUDID));
+                GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Could not find STF device with udid: %s", sessionUUID, deviceUDID);
                 return null;
             }
-            STFDevice _stfDevice = _optionalSTFDevice.get();
+            STFDeviceRecord _stfDevice = _optionalSTFDevice.get();
             stfDevice = _stfDevice;
-            if (StringUtils.isBlank((String) _stfDevice.getRemoteConnectUrl())) {
-                LOGGER.warning(() -> String.format("[STF-%s] Detected 'true' enableAdb capability, but remoteURL is blank or empty.", sessionUUID));
+            if (StringUtils.isBlank(_stfDevice.getRemoteConnectUrl())) {
+                GridLog.warning(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Detected 'true' enableAdb capability, but remoteURL is blank or empty.", sessionUUID);
                 return null;
             } else {
-                LOGGER.info(() -> String.format("[STF-%s] Detected 'true' enableAdb capability, and remoteURL is present.", sessionUUID));
+                GridLog.info(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Detected 'true' enableAdb capability, and remoteURL is present.", sessionUUID);
             }
         }
-        STFDevice finalStfDevice = stfDevice;
-        LOGGER.info(
-                () -> String.format("[STF-%s] Device '%s' successfully reserved.", sessionUUID, finalStfDevice.getSerial()));
+        STFDeviceRecord finalStfDevice = stfDevice;
+        GridLog.info(LOGGER, deviceUDID, "stf-reserve", "[STF-%s] Device '%s' successfully reserved.", sessionUUID, finalStfDevice.getSerial());
         return stfDevice;
     }
 
     public static synchronized void disconnectSTFDevice(String udid, Platform platform, boolean isReservedManually, String sessionUUID) {
+        STFReleaseEvent event = STFReleaseEvent.start(isReservedManually);
+        boolean isReturned = disconnect(udid, platform, isReservedManually, sessionUUID);
+        if (isReturned || isReservedManually) {
+            HubJournal.released(udid);
+        }
+        event.complete(udid, platform, isReturned ? "RETURNED" : "NOT_RETURNED");
+    }
+
+    private static boolean disconnect(String udid, Platform platform, boolean isReservedManually, String sessionUUID) {
         // it seems like return and remote disconnect guarantee that device becomes free asap
         if (Platform.ANDROID.equals(platform)) {
-            LOGGER.info(() -> String.format("[STF-%s] Additionally disconnect 'remoteConnect'.", sessionUUID));
+            GridLog.info(LOGGER, udid, "stf-release", "[STF-%s] Additionally disconnect 'remoteConnect'.", sessionUUID);
             HttpClient.Response response = HttpClient.uri(Path.STF_USER_DEVICES_REMOTE_CONNECT_PATH, STF_URL, udid)
                     .withAuthorization(buildAuthToken(DEFAULT_STF_TOKEN))
                     .delete(Void.class);
             if (response.getStatus() != 200) {
-                LOGGER.warning(() -> String.format("[STF-%s] Could not disconnect 'remoteConnect'.", sessionUUID));
+                GridLog.warning(LOGGER, udid, "stf-release", "[STF-%s] Could not disconnect 'remoteConnect'.", sessionUUID);
             }
         }
 
         if (isReservedManually) {
-            LOGGER.info(() -> String.format("[STF-%s] Device '%s' will not be returned as it was reserved manually.",
-                    sessionUUID, udid));
-            return;
+            GridLog.info(LOGGER, udid, "stf-release", "[STF-%s] Device '%s' will not be returned as it was reserved manually.",
+                    sessionUUID, udid);
+            return false;
         }
-        LOGGER.info(() -> String.format("[STF-%s] Return STF Device.", sessionUUID));
+        GridLog.info(LOGGER, udid, "stf-release", "[STF-%s] Return STF Device.", sessionUUID);
 
         HttpClient.Response response = HttpClient.uri(Path.STF_USER_DEVICES_BY_ID_PATH, STF_URL, udid)
                 .withAuthorization(buildAuthToken(DEFAULT_STF_TOKEN))
                 .delete(Void.class);
         if (response.getStatus() != 200) {
-            LOGGER.warning(() -> String.format("[STF-%s] Could not return device to the STF. Status: %s", sessionUUID, response.getStatus()));
-        } else {
-            LOGGER.info(() -> String.format("[STF-%s] Device '%s' successfully returned to the STF.", sessionUUID, udid));
+            GridLog.warning(LOGGER, udid, "stf-release", "[STF-%s] Could not return device to the STF. Status: %s", sessionUUID, response.getStatus());
+            return false;
         }
-
+        GridLog.info(LOGGER, udid, "stf-release", "[STF-%s] Device '%s' successfully returned to the STF.", sessionUUID, udid);
+        return true;
     }
 
     public static void disconnectAllDevices() {
@@ -284,9 +292,7 @@ public final class STFClient {
             return;
         }
 
-        HttpClient.Response<Devices> devices = HttpClient.uri(Path.STF_DEVICES_PATH, STF_URL)
-                .withAuthorization(buildAuthToken(DEFAULT_STF_TOKEN))
-                .get(Devices.class);
+        HttpClient.Response<List<STFDeviceRecord>> devices = getDevices(DEFAULT_STF_TOKEN);
 
         if (devices.getStatus() != 200) {
             LOGGER.warning(() -> String.format("[STF] Unable to get devices status. HTTP status: %s", devices.getStatus()));
@@ -294,11 +300,9 @@ public final class STFClient {
         }
 
         devices.getObject()
-                .getDevices()
                 .stream()
-                .filter(d -> d.getOwner() != null)
-                .filter(d -> StringUtils.equals(d.getOwner().getName(), user.getObject().getUser().getName()))
-                .map(STFDevice::getSerial)
+                .filter(d -> StringUtils.equals(d.getOwnerName(), user.getObject().getUser().getName()))
+                .map(STFDeviceRecord::getSerial)
                 .filter(StringUtils::isNotBlank)
                 .collect(Collectors.toList())
                 .forEach(udid -> {
@@ -313,6 +317,78 @@ public final class STFClient {
                 });
     }
 
+    /**
+     * Return to the STF devices that were reserved by the hub for automation before restart.
+     * Devices of the hub user that are not in the list are kept reserved.
+     *
+     * @param reservedByHub udids of the devices reserved by the hub according to the journal
+     * @return udids of the devices that are not reserved by the hub user anymore
+     */
+    public static Set<String> reconcileDevices(Set<String> reservedByHub) {
+        if (!STFClient.isSTFEnabled() || reservedByHub.isEmpty()) {
+            return reservedByHub;
+        }
+        HttpClient.Response<User> user = HttpClient.uri(Path.STF_USER_PATH, STF_URL)
+                .withAuthorization(buildAuthToken(DEFAULT_STF_TOKEN))
+                .get(User.class);
+        if (user.getStatus() != 200) {
+            LOGGER.warning(() ->
+                    String.format("[STF] Not authenticated at STF successfully! URL: '%s'; Token: '%s';", STF_URL, DEFAULT_STF_TOKEN));
+            return Set.of();
+        }
+        HttpClient.Response<List<STFDeviceRecord>> devices = getDevices(DEFAULT_STF_TOKEN);
+        if (devices.getStatus() != 200) {
+            LOGGER.warning(() -> String.format("[STF] Unable to get devices status. HTTP status: %s", devices.getStatus()));
+            return Set.of();
+        }
+
+        Set<String> ownedByHub = devices.getObject()
+                .stream()
+                .filter(d -> d.getOwnerName() != null)
+                .filter(d -> StringUtils.equals(d.getOwnerName(), user.getObject().getUser().getName()))
+                .map(STFDeviceRecord::getSerial)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet());
+        Set<String> released = reservedByHub.stream()
+                .filter(udid -> !ownedByHub.contains(udid))
+                .collect(Collectors.toCollection(ConcurrentHashMap::newKeySet));
+        LOGGER.info(() -> String.format("[STF] %s device(s) reserved for automation before restart will be returned to the STF.",
+                reservedByHub.size() - released.size()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(RECONCILE_PARALLELISM);
+        try {
+            CompletableFuture.allOf(reservedByHub.stream()
+                    .filter(ownedByHub::contains)
+                    .map(udid -> CompletableFuture.runAsync(() -> {
+                        HttpClient.Response response = HttpClient.uri(Path.STF_USER_DEVICES_BY_ID_PATH, STF_URL, udid)
+                                .withAuthorization(buildAuthToken(DEFAULT_STF_TOKEN))
+                                .delete(Void.class);
+                        if (response.getStatus() != 200) {
+                            LOGGER.warning(() -> String.format("[STF] Could not return device '%s' to the STF. Status: %s", udid, response.getStatus()));
+                        } else {
+                            released.add(udid);
+                            LOGGER.warning(() -> String.format("[STF] Device '%s' successfully returned to the STF.", udid));
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdown();
+        }
+        return released;
+    }
+
+    private static HttpClient.Response<List<STFDeviceRecord>> getDevices(String stfToken) {
+        return HttpClient.uri(Path.STF_DEVICES_PATH, STF_URL)
+                .withAuthorization(buildAuthToken(stfToken))
+                .get(STFDevicesParser::parse);
+    }
+
+    private static HttpClient.Response<Optional<STFDeviceRecord>> findDevice(String serial, String stfToken) {
+        return HttpClient.uri(Path.STF_DEVICES_PATH, STF_URL)
+                .withAuthorization(buildAuthToken(stfToken))
+                .get(stream -> STFDevicesParser.find(stream, serial));
+    }
+
     private static String buildAuthToken(String authToken) {
         return "Bearer " + authToken;
     }
@@ -325,16 +401,26 @@ public final class STFClient {
         if (!isSTFEnabled()) {
             return true;
         }
-        HttpClient.Response<Devices> devices = HttpClient.uri(Path.STF_DEVICES_PATH, STF_URL)
-                .withAuthorization(buildAuthToken(DEFAULT_STF_TOKEN))
-                .get(Devices.class);
+        return getDeviceSerials()
+                .map(serials -> serials.contains(udid))
+                .orElse(false);
+    }
+
+    /**
+     * Get serials of all STF devices with one request
+     *
+     * @return {@link Optional} of device serials, empty if devices could not be obtained
+     */
+    public static Optional<Set<String>> getDeviceSerials() {
+        HttpClient.Response<List<STFDeviceRecord>> devices = getDevices(DEFAULT_STF_TOKEN);
         if (devices.getStatus() != 200) {
             LOGGER.warning(() -> String.format("[NODE REGISTRATION] Unable to get devices status. HTTP status: %s", devices.getStatus()));
-            return false;
+            return Optional.empty();
         }
-        return devices.getObject()
-                .getDevices()
+        return Optional.of(devices.getObject()
                 .stream()
-                .anyMatch(device -> StringUtils.equals(device.getSerial(), udid));
+                .map(STFDeviceRecord::getSerial)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet()));
     }
 }
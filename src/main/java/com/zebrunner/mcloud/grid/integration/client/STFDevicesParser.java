@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Streaming parser of the STF {@code /api/v1/devices} response.
+ * <p>
+ * Only fields of {@link STFDeviceRecord} are read, all other values (including nested objects) are skipped
+ * without materialization.
+ */
+public final class STFDevicesParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private STFDevicesParser() {
+        //hide
+    }
+
+    /**
+     * Parse all devices
+     *
+     * @param stream response body
+     * @return devices
+     * @throws IOException if response could not be parsed
+     */
+    public static List<STFDeviceRecord> parse(InputStream stream) throws IOException {
+        List<STFDeviceRecord> devices = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(stream)) {
+            if (moveToDevices(parser)) {
+                STFDeviceRecord device;
+                while ((device = nextDevice(parser)) != null) {
+                    devices.add(device);
+                }
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Find device by serial. Parsing stops as soon as the device is found.
+     *
+     * @param stream response body
+     * @param serial device serial
+     * @return {@link Optional} of device, empty if device is not found
+     * @throws IOException if response could not be parsed
+     */
+    public static Optional<STFDeviceRecord> find(InputStream stream, String serial) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(stream)) {
+            if (moveToDevices(parser)) {
+                STFDeviceRecord device;
+                while ((device = nextDevice(parser)) != null) {
+                    if (serial.equals(device.getSerial())) {
+                        return Optional.of(device);
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean moveToDevices(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("devices".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static STFDeviceRecord nextDevice(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        while (token != null && token != JsonToken.END_ARRAY && token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return null;
+        }
+        STFDeviceRecord.Builder device = STFDeviceRecord.builder();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+            case "serial":
+                device.serial(readString(parser, value));
+                break;
+            case "status":
+                device.status(value.isNumeric() ? parser.getValueAsInt() : STFDeviceStatus.MISSING.getCode());
+                break;
+            case "present":
+                device.present(value == JsonToken.VALUE_TRUE);
+                break;
+            case "ready":
+                device.ready(value == JsonToken.VALUE_TRUE);
+                break;
+            case "using":
+                device.using(value == JsonToken.VALUE_TRUE);
+                break;
+            case "remoteConnectUrl":
+                device.remoteConnectUrl(readString(parser, value));
+                break;
+            case "manufacturer":
+                device.manufacturer(readString(parser, value));
+                break;
+            case "model":
+                device.model(readString(parser, value));
+                break;
+            case "platform":
+                device.platform(readString(parser, value));
+                break;
+            case "version":
+                device.version(readString(parser, value));
+                break;
+            case "owner":
+                device.ownerName(value == JsonToken.START_OBJECT ? readOwnerName(parser) : null);
+                break;
+            case "battery":
+                if (value == JsonToken.START_OBJECT) {
+                    readBattery(parser, device);
+                }
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        return device.build();
+    }
+
+    private static String readString(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static void readBattery(JsonParser parser, STFDeviceRecord.Builder device) throws IOException {
+        float level = Float.NaN;
+        float scale = 100;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+            case "level":
+                level = readFloat(parser, value);
+                break;
+            case "scale":
+                scale = readFloat(parser, value);
+                break;
+            case "temp":
+                device.batteryTemperature(readFloat(parser, value));
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        device.batteryLevel(scale > 0 ? level * 100 / scale : Float.NaN);
+    }
+
+    /**
+     * Read number, STF sends some numbers as strings
+     */
+    private static float readFloat(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getFloatValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Float.parseFloat(parser.getText());
+            } catch (NumberFormatException e) {
+                return Float.NaN;
+            }
+        }
+        parser.skipChildren();
+        return Float.NaN;
+    }
+
+    private static String readOwnerName(JsonParser parser) throws IOException {
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                name = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import com.zebrunner.mcloud.grid.DeviceQuarantine;
+import com.zebrunner.mcloud.grid.MobileRemoteProxy;
+import com.zebrunner.mcloud.grid.Platform;
+import com.zebrunner.mcloud.grid.logging.GridLog;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.selenium.Capabilities;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reservation of the free STF devices ahead of the new session requests.
+ * <p>
+ * Opt-in: enabled if {@code STF_PRERESERVE_LIMIT} (max number of pre-reserved devices) is positive. Demand of every capability
+ * profile (platform, platform version, device name and type) is the depth of the new session queue for this profile, smoothed
+ * over time, so devices are still reserved for a while after the queue is empty. Free devices matching the profiles in demand are
+ * reserved in STF (including {@code remoteConnect} of Android devices) in the background, and a new session on such device uses the
+ * reservation without calls to STF. Reservations not used for {@code STF_PRERESERVE_TTL} seconds (default 120) are returned to STF.
+ * Requests with custom {@code STF_TOKEN} do not use reservations of the hub.
+ */
+public final class STFPreReservation {
+    private static final Logger LOGGER = Logger.getLogger(STFPreReservation.class.getName());
+    private static final int LIMIT = Optional.ofNullable(System.getenv("STF_PRERESERVE_LIMIT"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(0);
+    private static final Duration TTL = Optional.ofNullable(System.getenv("STF_PRERESERVE_TTL"))
+            .filter(StringUtils::isNotBlank)
+            .map(Long::parseLong)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofSeconds(120));
+    private static final Duration INTERVAL = Duration.ofSeconds(2);
+    // share of the demand left after every interval without requests
+    private static final double DEMAND_DECAY = 0.8;
+    private static final String SESSION_UUID = "PRERESERVE";
+    // Key - proxy id
+    private static final Map<String, MobileRemoteProxy> PROXIES = new ConcurrentHashMap<>();
+    // Key - udid
+    private static final Map<String, Reservation> RESERVATIONS = new ConcurrentHashMap<>();
+    // Key - profile. Accessed only by the predictor thread
+    private static final Map<String, Demand> DEMAND = new HashMap<>();
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+
+    private STFPreReservation() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return LIMIT > 0 && STFClient.isSTFEnabled();
+    }
+
+    public static void register(MobileRemoteProxy proxy) {
+        PROXIES.put(proxy.getId(), proxy);
+        if (STARTED.compareAndSet(false, true)) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "stf-prereserve");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(STFPreReservation::predict, INTERVAL.toMillis(), INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static void unregister(MobileRemoteProxy proxy) {
+        PROXIES.remove(proxy.getId());
+        Optional.ofNullable(RESERVATIONS.remove(proxy.getUdid()))
+                .ifPresent(STFPreReservation::release);
+    }
+
+    /**
+     * Take the reservation of the device for the new session. Should be called with the lock of {@link STFClient}.
+     *
+     * @param udid device udid
+     * @param requestedCapabilities requested capabilities
+     * @return reserved device or null if the device is not pre-reserved
+     */
+    static STFDeviceRecord take(String udid, Map<String, Object> requestedCapabilities) {
+        Reservation reservation = RESERVATIONS.remove(udid);
+        if (reservation == null) {
+            return null;
+        }
+        if (hasCustomToken(requestedCapabilities)) {
+            release(reservation);
+            return null;
+        }
+        GridLog.info(LOGGER, udid, "stf-reserve", "[STF-%s] Pre-reserved device is used.", udid);
+        return reservation.device;
+    }
+
+    static void predict() {
+        try {
+            long now = System.currentTimeMillis();
+            RESERVATIONS.values().stream()
+                    .filter(reservation -> now - reservation.reservedAt > TTL.toMillis())
+                    .forEach(reservation -> {
+                        if (RESERVATIONS.remove(reservation.udid, reservation)) {
+                            GridLog.info(LOGGER, reservation.udid, "stf-prereserve", "[STF-%s] Pre-reservation is not used and expired.",
+                                    reservation.udid);
+                            release(reservation);
+                        }
+                    });
+            Optional<GridRegistry> registry = PROXIES.values().stream()
+                    .findAny()
+                    .map(MobileRemoteProxy::getRegistry);
+            if (registry.isEmpty()) {
+                return;
+            }
+            Map<String, Integer> queue = new HashMap<>();
+            for (Capabilities capabilities : registry.get().getDesiredCapabilities()) {
+                Map<String, Object> requestedCapabilities = capabilities.asMap();
+                if (hasCustomToken(requestedCapabilities)) {
+                    continue;
+                }
+                String profile = CapabilityUtils.getProfile(requestedCapabilities);
+                queue.merge(profile, 1, Integer::sum);
+                DEMAND.computeIfAbsent(profile, key -> new Demand()).capabilities = new HashMap<>(requestedCapabilities);
+            }
+            DEMAND.entrySet().removeIf(entry -> entry.getValue().update(queue.getOrDefault(entry.getKey(), 0)));
+
+            for (Map.Entry<String, Demand> entry : DEMAND.entrySet()) {
+                long reserved = RESERVATIONS.values().stream()
+                        .filter(reservation -> reservation.profile.equals(entry.getKey()))
+                        .count();
+                long required = (long) Math.ceil(entry.getValue().value) - reserved;
+                for (MobileRemoteProxy proxy : PROXIES.values()) {
+                    if (required <= 0 || RESERVATIONS.size() >= LIMIT) {
+                        break;
+                    }
+                    if (isFree(proxy) && proxy.hasCapability(entry.getValue().capabilities)
+                            && reserve(proxy, entry.getKey(), entry.getValue().capabilities)) {
+                        required--;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not pre-reserve STF devices: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean reserve(MobileRemoteProxy proxy, String profile, Map<String, Object> requestedCapabilities) {
+        Map<String, Object> capabilities = new HashMap<>(requestedCapabilities);
+        if (Platform.ANDROID.equals(Platform.fromCapabilities(capabilities))) {
+            // remote connect url of the device will be known in advance
+            capabilities.put("zebrunner:enableAdb", true);
+        }
+        synchronized (STFClient.class) {
+            // the device could be taken by the matcher before the lock, see MobileRemoteProxy#getNewSession
+            if (!isFree(proxy)) {
+                return false;
+            }
+            STFDeviceRecord device = STFClient.reserveSTFDevice(proxy.getUdid(), capabilities, SESSION_UUID);
+            if (device == null) {
+                return false;
+            }
+            RESERVATIONS.put(proxy.getUdid(), new Reservation(proxy.getUdid(), profile, Platform.fromCapabilities(capabilities), device));
+            GridLog.info(LOGGER, proxy.getUdid(), "stf-prereserve", "[STF-%s] Device is pre-reserved for '%s'.", proxy.getUdid(), profile);
+            return true;
+        }
+    }
+
+    private static void release(Reservation reservation) {
+        STFClient.disconnectSTFDevice(reservation.udid, reservation.platform, false, SESSION_UUID);
+    }
+
+    private static boolean isFree(MobileRemoteProxy proxy) {
+        return !RESERVATIONS.containsKey(proxy.getUdid())
+                && proxy.getTestSlots().size() == 1
+                && proxy.getTotalUsed() == 0
+                && !proxy.isDown()
+                && proxy.getValidationState() == MobileRemoteProxy.ValidationState.VALID
+                && !DeviceQuarantine.isQuarantined(proxy.getUdid());
+    }
+
+    private static boolean hasCustomToken(Map<String, Object> requestedCapabilities) {
+        return CapabilityUtils.getZebrunnerCapability(requestedCapabilities, "STF_TOKEN")
+                .map(String::valueOf)
+                .filter(token -> !StringUtils.equals(token, STFClient.DEFAULT_STF_TOKEN))
+                .isPresent();
+    }
+
+    static final class Demand {
+        private double value;
+        private Map<String, Object> capabilities;
+
+        /**
+         * @return true if there is no demand anymore
+         */
+        boolean update(int queued) {
+            value = Math.max(queued, value * DEMAND_DECAY);
+            if (value < 0.5) {
+                value = 0;
+            }
+            return value == 0;
+        }
+
+        double get() {
+            return value;
+        }
+    }
+
+    private static final class Reservation {
+        private final String udid;
+        private final String profile;
+        private final Platform platform;
+        private final STFDeviceRecord device;
+        private final long reservedAt = System.currentTimeMillis();
+
+        private Reservation(String udid, String profile, Platform platform, STFDeviceRecord device) {
+            this.udid = udid;
+            this.profile = profile;
+            this.platform = platform;
+            this.device = device;
+        }
+    }
+}
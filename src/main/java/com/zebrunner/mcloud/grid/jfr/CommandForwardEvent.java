@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("com.zebrunner.mcloud.grid.CommandForward")
+@Label("Command Forward")
+@Description("Forwarding of the session command to the node")
+@Threshold("100 ms")
+public class CommandForwardEvent extends GridEvent {
+
+    @Label("Method")
+    String method;
+
+    @Label("URI")
+    String uri;
+
+    @Label("Status")
+    int status;
+
+    public static CommandForwardEvent start(String method, String uri) {
+        CommandForwardEvent event = new CommandForwardEvent();
+        event.method = method;
+        event.uri = uri;
+        event.begin();
+        return event;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+}
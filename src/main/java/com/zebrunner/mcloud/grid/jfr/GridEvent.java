@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base JFR event for the grid. Fields are populated only when the event is going to be committed,
+ * so there is no additional work when the recording is off. Stack traces are not recorded: the call sites are fixed.
+ */
+@Category({ "Zebrunner", "Grid" })
+@StackTrace(false)
+public abstract class GridEvent extends Event {
+
+    @Label("UDID")
+    String udid;
+
+    @Label("Platform")
+    String platform;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Finish event and commit it if it is enabled and passes the recording threshold.
+     *
+     * @param udid     device udid
+     * @param platform device platform
+     * @param outcome  result of the tracked operation
+     */
+    public void complete(String udid, Object platform, String outcome) {
+        if (shouldCommit()) {
+            this.udid = udid;
+            this.platform = platform == null ? null : String.valueOf(platform);
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+@Name("com.zebrunner.mcloud.grid.MatchCache")
+@Label("Match Cache")
+@Description("Statistics of the capability match cache since the hub start")
+@Category({ "Zebrunner", "Grid" })
+@Period("10 s")
+public class MatchCacheEvent extends Event {
+
+    @Label("Hits")
+    long hits;
+
+    @Label("Misses")
+    long misses;
+
+    @Label("Hit Ratio")
+    double hitRatio;
+
+    @Label("Size")
+    int size;
+
+    public static void emit(long hits, long misses, int size) {
+        MatchCacheEvent event = new MatchCacheEvent();
+        event.hits = hits;
+        event.misses = misses;
+        event.hitRatio = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        event.size = size;
+        event.commit();
+    }
+}
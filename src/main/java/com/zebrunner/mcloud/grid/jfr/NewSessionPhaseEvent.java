@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.zebrunner.mcloud.grid.NewSessionPhase")
+@Label("New Session Phase")
+@Description("Phase of the new session creation on the mobile proxy")
+public class NewSessionPhaseEvent extends GridEvent {
+
+    @Label("Phase")
+    String phase;
+
+    public static NewSessionPhaseEvent start(String phase) {
+        NewSessionPhaseEvent event = new NewSessionPhaseEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+}
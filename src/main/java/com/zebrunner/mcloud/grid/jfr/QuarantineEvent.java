@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.zebrunner.mcloud.grid.Quarantine")
+@Label("Quarantine")
+@Description("Device enters or exits the automation ignore list")
+public class QuarantineEvent extends GridEvent {
+    public static final String ENTER = "ENTER";
+    public static final String EXIT = "EXIT";
+
+    @Label("Reason")
+    String reason;
+
+    @Label("Timeout")
+    @Timespan(Timespan.SECONDS)
+    long timeout;
+
+    /**
+     * Commit instant event that device entered quarantine.
+     *
+     * @param udid    device udid
+     * @param reason  quarantine reason
+     * @param timeout quarantine duration in seconds
+     */
+    public static void enter(String udid, String reason, long timeout) {
+        QuarantineEvent event = new QuarantineEvent();
+        if (event.shouldCommit()) {
+            event.reason = reason;
+            event.timeout = timeout;
+            event.complete(udid, null, ENTER);
+        }
+    }
+
+    /**
+     * Commit instant event that device exited quarantine.
+     *
+     * @param udid   device udid
+     * @param reason exit reason
+     */
+    public static void exit(String udid, String reason) {
+        QuarantineEvent event = new QuarantineEvent();
+        if (event.shouldCommit()) {
+            event.reason = reason;
+            event.complete(udid, null, EXIT);
+        }
+    }
+}
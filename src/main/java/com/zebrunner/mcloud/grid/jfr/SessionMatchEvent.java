@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.zebrunner.mcloud.grid.SessionMatch")
+@Label("Session Match")
+@Description("Capability matching of the new session request against the node")
+@Enabled(false)
+public class SessionMatchEvent extends GridEvent {
+
+    @Label("Request Fingerprint")
+    String fingerprint;
+
+    /**
+     * Attach fingerprint of the requested capabilities to the event (capabilities themselves could contain tokens).
+     * Should be called only when {@link #shouldCommit()} is true.
+     *
+     * @param fingerprint fingerprint of the requested capabilities
+     */
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public static SessionMatchEvent start() {
+        SessionMatchEvent event = new SessionMatchEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.journal;
+
+import com.zebrunner.mcloud.grid.DeviceQuarantine;
+import com.zebrunner.mcloud.grid.integration.client.STFClient;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Durable journal of STF reservations, device quarantines and session-to-device bindings.
+ * <p>
+ * Enabled by {@code HUB_JOURNAL_PATH} env var. Every change is appended to the memory-mapped journal file, and the file
+ * is compacted to the current state every {@code HUB_JOURNAL_COMPACTION_INTERVAL} seconds or when it is 3/4 full.
+ * After hub restart the state is read back, quarantines are restored and only devices reserved by the hub
+ * for the lost sessions are returned to the STF (instead of all devices of the hub user).
+ */
+public final class HubJournal {
+    private static final Logger LOGGER = Logger.getLogger(HubJournal.class.getName());
+    private static final String JOURNAL_PATH = Optional.ofNullable(System.getenv("HUB_JOURNAL_PATH"))
+            .filter(StringUtils::isNotBlank)
+            .orElse(null);
+    private static final int JOURNAL_SIZE = Optional.ofNullable(System.getenv("HUB_JOURNAL_SIZE_MB"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(8) * 1024 * 1024;
+    private static final Duration COMPACTION_INTERVAL = Optional.ofNullable(System.getenv("HUB_JOURNAL_COMPACTION_INTERVAL"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .map(Duration::ofSeconds)
+            .orElse(Duration.ofMinutes(5));
+
+    static final String RESERVED = "R";
+    static final String RELEASED = "D";
+    static final String BOUND = "B";
+    static final String UNBOUND = "U";
+    static final String QUARANTINED = "Q";
+    static final String QUARANTINE_CLEARED = "C";
+
+    // Key - device udid, value - journaled state of the device
+    private static final Map<String, DeviceState> STATE = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    private static volatile JournalFile journal;
+
+    private HubJournal() {
+        //hide
+    }
+
+    public static boolean isEnabled() {
+        return JOURNAL_PATH != null;
+    }
+
+    /**
+     * Read journal, restore quarantines and reconcile reservations with the STF. Should be called once on hub start.
+     */
+    public static void recover() throws IOException {
+        synchronized (LOCK) {
+            if (!isEnabled() || journal != null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            JournalFile file = new JournalFile(Path.of(JOURNAL_PATH), JOURNAL_SIZE);
+            List<String> records = file.open();
+            records.forEach(HubJournal::apply);
+            journal = file;
+            LOGGER.info(() -> String.format("[JOURNAL] %s record(s) read, %s device(s) in the journal.", records.size(), STATE.size()));
+
+            STATE.values().forEach(state -> {
+                if (state.quarantineReason != null) {
+                    DeviceQuarantine.restore(state.udid, state.quarantineReason, Instant.ofEpochMilli(state.quarantineUntil));
+                }
+                if (state.sessionId != null) {
+                    LOGGER.warning(() -> String.format("[JOURNAL] [%s] Session [%s] was lost on hub restart.", state.udid, state.sessionId));
+                    state.sessionId = null;
+                }
+            });
+
+            // devices reserved by the hub for automation were reserved for sessions lost on restart
+            Set<String> reservedByHub = STATE.values()
+                    .stream()
+                    .filter(state -> state.reservedAt > 0 && !state.manual)
+                    .map(state -> state.udid)
+                    .collect(Collectors.toSet());
+            for (String udid : STFClient.reconcileDevices(reservedByHub)) {
+                STATE.computeIfPresent(udid, (key, state) -> {
+                    state.reservedAt = 0;
+                    return state.isEmpty() ? null : state;
+                });
+            }
+            STATE.values().removeIf(DeviceState::isEmpty);
+            compact();
+
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "hub-journal-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(HubJournal::compact, COMPACTION_INTERVAL.toSeconds(), COMPACTION_INTERVAL.toSeconds(),
+                    TimeUnit.SECONDS);
+            LOGGER.info(() -> String.format("[JOURNAL] Hub state recovered in %s ms.", System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Device reserved in the STF
+     *
+     * @param udid   device udid
+     * @param manual true if device was reserved with user STF token
+     */
+    public static void reserved(String udid, boolean manual) {
+        write(RESERVED, udid, String.valueOf(System.currentTimeMillis()), String.valueOf(manual));
+    }
+
+    /**
+     * Device returned to the STF
+     *
+     * @param udid device udid
+     */
+    public static void released(String udid) {
+        write(RELEASED, udid);
+    }
+
+    /**
+     * Session started on device
+     *
+     * @param udid      device udid
+     * @param sessionId session id
+     */
+    public static void bound(String udid, String sessionId) {
+        write(BOUND, udid, sessionId);
+    }
+
+    /**
+     * Session on device finished
+     *
+     * @param udid device udid
+     */
+    public static void unbound(String udid) {
+        write(UNBOUND, udid);
+    }
+
+    /**
+     * Device quarantined
+     *
+     * @param udid       device udid
+     * @param reason     quarantine reason
+     * @param expiration moment when quarantine expires
+     */
+    public static void quarantined(String udid, String reason, Instant expiration) {
+        write(QUARANTINED, udid, reason, String.valueOf(expiration.toEpochMilli()));
+    }
+
+    /**
+     * Device quarantine cleared or expired
+     *
+     * @param udid device udid
+     */
+    public static void quarantineCleared(String udid) {
+        write(QUARANTINE_CLEARED, udid);
+    }
+
+    /**
+     * Rewrite journal with the current state
+     */
+    public static void compact() {
+        synchronized (LOCK) {
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.rewrite(snapshot());
+            } catch (Exception e) {
+                LOGGER.warning(() -> String.format("[JOURNAL] Could not compact journal. Error message: %s", e.getMessage()));
+            }
+        }
+    }
+
+    private static void write(String type, String udid, String... values) {
+        if (journal == null) {
+            return;
+        }
+        StringBuilder record = new StringBuilder(type).append('\t').append(sanitize(udid));
+        for (String value : values) {
+            record.append('\t').append(sanitize(value));
+        }
+        synchronized (LOCK) {
+            if (journal == null) {
+                return;
+            }
+            String line = record.toString();
+            apply(line);
+            if (journal.getPosition() > journal.getCapacity() / 4 * 3) {
+                compact();
+                // compacted state already contains the record
+                return;
+            }
+            if (!journal.append(line)) {
+                compact();
+            }
+        }
+    }
+
+    static void apply(String record) {
+        String[] fields = StringUtils.splitPreserveAllTokens(record, '\t');
+        if (fields.length < 2) {
+            return;
+        }
+        String udid = fields[1];
+        DeviceState state = STATE.computeIfAbsent(udid, DeviceState::new);
+        switch (fields[0]) {
+        case RESERVED:
+            state.reservedAt = Long.parseLong(fields[2]);
+            state.manual = Boolean.parseBoolean(fields[3]);
+            break;
+        case RELEASED:
+            state.reservedAt = 0;
+            state.manual = false;
+            break;
+        case BOUND:
+            state.sessionId = fields[2];
+            break;
+        case UNBOUND:
+            state.sessionId = null;
+            break;
+        case QUARANTINED:
+            state.quarantineReason = fields[2];
+            state.quarantineUntil = Long.parseLong(fields[3]);
+            break;
+        case QUARANTINE_CLEARED:
+            state.quarantineReason = null;
+            state.quarantineUntil = 0;
+            break;
+        default:
+            LOGGER.warning(() -> String.format("[JOURNAL] Unknown record type: %s", fields[0]));
+        }
+        if (state.isEmpty()) {
+            STATE.remove(udid, state);
+        }
+    }
+
+    static List<String> snapshot() {
+        long now = System.currentTimeMillis();
+        List<String> records = new ArrayList<>();
+        for (DeviceState state : STATE.values()) {
+            if (state.reservedAt > 0) {
+                records.add(String.join("\t", RESERVED, state.udid, String.valueOf(state.reservedAt), String.valueOf(state.manual)));
+            }
+            if (state.sessionId != null) {
+                records.add(String.join("\t", BOUND, state.udid, state.sessionId));
+            }
+            if (state.quarantineReason != null && state.quarantineUntil > now) {
+                records.add(String.join("\t", QUARANTINED, state.udid, state.quarantineReason, String.valueOf(state.quarantineUntil)));
+            }
+        }
+        return records;
+    }
+
+    static Map<String, DeviceState> getState() {
+        return STATE;
+    }
+
+    private static String sanitize(String value) {
+        return StringUtils.replaceChars(String.valueOf(value), "\t\r\n", "   ");
+    }
+
+    static final class DeviceState {
+        private final String udid;
+        private long reservedAt;
+        private boolean manual;
+        private String sessionId;
+        private String quarantineReason;
+        private long quarantineUntil;
+
+        private DeviceState(String udid) {
+            this.udid = udid;
+        }
+
+        boolean isEmpty() {
+            return reservedAt == 0 && sessionId == null && quarantineReason == null;
+        }
+
+        long getReservedAt() {
+            return reservedAt;
+        }
+
+        boolean isManual() {
+            return manual;
+        }
+
+        String getSessionId() {
+            return sessionId;
+        }
+
+        String getQuarantineReason() {
+            return quarantineReason;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only memory-mapped file of text records.
+ * <p>
+ * Every record is stored as {@code <int length><UTF-8 bytes>}, zero length marks the end of the journal.
+ * Length is written after the record body, so partially written record is never read back.
+ */
+final class JournalFile implements Closeable {
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final Path path;
+    private final int capacity;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    JournalFile(Path path, int capacity) {
+        this.path = path;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Map journal file and read existing records
+     *
+     * @return records in the order they were written
+     * @throws IOException if the file could not be mapped
+     */
+    synchronized List<String> open() throws IOException {
+        map(path);
+        List<String> records = new ArrayList<>();
+        position = 0;
+        while (position + LENGTH_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + LENGTH_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.duplicate().position(position + LENGTH_SIZE).get(bytes);
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+            position += LENGTH_SIZE + length;
+        }
+        return records;
+    }
+
+    /**
+     * Append record to the journal
+     *
+     * @param record record
+     * @return true if record was written, false if there is no free space in the journal
+     */
+    synchronized boolean append(String record) {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        if (!write(buffer, position, bytes)) {
+            return false;
+        }
+        position += LENGTH_SIZE + bytes.length;
+        return true;
+    }
+
+    /**
+     * Replace journal content with records (compaction). New content is written to the temporary file
+     * which then atomically replaces the journal.
+     *
+     * @param records records
+     * @throws IOException if journal could not be replaced
+     */
+    synchronized void rewrite(Collection<String> records) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(tmp);
+        int newPosition = 0;
+        try (FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer tmpBuffer = tmpChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            for (String record : records) {
+                byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+                if (!write(tmpBuffer, newPosition, bytes)) {
+                    throw new IOException(String.format("Journal capacity %s bytes is not enough for the compacted state.", capacity));
+                }
+                newPosition += LENGTH_SIZE + bytes.length;
+            }
+            tmpBuffer.force();
+        }
+        close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(path);
+        position = newPosition;
+    }
+
+    synchronized int getPosition() {
+        return position;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void map(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+    }
+
+    private static boolean write(MappedByteBuffer target, int offset, byte[] bytes) {
+        int end = offset + LENGTH_SIZE + bytes.length;
+        if (end > target.capacity()) {
+            return false;
+        }
+        target.duplicate().position(offset + LENGTH_SIZE).put(bytes);
+        if (end + LENGTH_SIZE <= target.capacity()) {
+            target.putInt(end, 0);
+        }
+        target.putInt(offset, bytes.length);
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * Console handler that writes records on a background thread.
+ * <p>
+ * Records are kept in a bounded buffer, so logging thread never waits for the console. If the buffer is full,
+ * record is dropped and the amount of dropped records is reported later. Configuration (logging properties):
+ * <ul>
+ * <li>{@code com.zebrunner.mcloud.grid.logging.AsyncConsoleHandler.level} - default {@code INFO}</li>
+ * <li>{@code com.zebrunner.mcloud.grid.logging.AsyncConsoleHandler.capacity} - buffer size, default {@code 8192}</li>
+ * <li>{@code com.zebrunner.mcloud.grid.logging.AsyncConsoleHandler.filter} - filter class name</li>
+ * <li>{@code com.zebrunner.mcloud.grid.logging.AsyncConsoleHandler.formatter} - formatter class name,
+ * default {@link StructuredFormatter}</li>
+ * </ul>
+ */
+public class AsyncConsoleHandler extends Handler {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 256;
+
+    private final BlockingQueue<LogRecord> buffer;
+    private final Writer writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalDropped = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean closed = false;
+
+    public AsyncConsoleHandler() {
+        this(System.err);
+    }
+
+    protected AsyncConsoleHandler(OutputStream out) {
+        String prefix = getClass().getName();
+        LogManager manager = LogManager.getLogManager();
+        setLevel(parseLevel(manager.getProperty(prefix + ".level")));
+        setFormatter(newInstance(manager.getProperty(prefix + ".formatter"), Formatter.class, new StructuredFormatter()));
+        setFilter(newInstance(manager.getProperty(prefix + ".filter"), Filter.class, null));
+        String capacity = manager.getProperty(prefix + ".capacity");
+        buffer = new ArrayBlockingQueue<>(StringUtils.isNumeric(capacity) ? Integer.parseInt(capacity) : DEFAULT_CAPACITY);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        worker = new Thread(this::drain, "async-log-handler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (!buffer.offer(record)) {
+            dropped.incrementAndGet();
+            totalDropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (writer) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.FLUSH_FAILURE);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<LogRecord> records = new ArrayList<>();
+        buffer.drainTo(records);
+        write(records);
+        flush();
+    }
+
+    /**
+     * Amount of records dropped because the buffer was full
+     *
+     * @return dropped records count
+     */
+    public long getDropped() {
+        return totalDropped.get();
+    }
+
+    private void drain() {
+        List<LogRecord> records = new ArrayList<>(BATCH_SIZE);
+        while (!closed) {
+            try {
+                LogRecord record = buffer.poll(1, TimeUnit.SECONDS);
+                if (record == null) {
+                    continue;
+                }
+                records.add(record);
+                buffer.drainTo(records, BATCH_SIZE - 1);
+                write(records);
+                records.clear();
+                long droppedRecords = dropped.getAndSet(0);
+                if (droppedRecords > 0) {
+                    writeRaw(String.format("%s log record(s) were dropped because the log buffer is full.%n", droppedRecords));
+                }
+                if (buffer.isEmpty()) {
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+    }
+
+    private void write(List<LogRecord> records) {
+        for (LogRecord record : records) {
+            String message;
+            try {
+                message = getFormatter().format(record);
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                continue;
+            }
+            writeRaw(message);
+        }
+    }
+
+    private void writeRaw(String message) {
+        synchronized (writer) {
+            try {
+                writer.write(message);
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+
+    private static Level parseLevel(String level) {
+        try {
+            return StringUtils.isBlank(level) ? Level.INFO : Level.parse(level.trim());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    private static <T> T newInstance(String className, Class<T> type, T defaultValue) {
+        if (StringUtils.isBlank(className)) {
+            return defaultValue;
+        }
+        try {
+            return type.cast(ClassLoader.getSystemClassLoader()
+                    .loadClass(className.trim())
+                    .getDeclaredConstructor()
+                    .newInstance());
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Structured logging for the hub hot paths. Only the record and its parameters are allocated when the level is enabled,
+ * message formatting is deferred to the handler thread.
+ */
+public final class GridLog {
+
+    private GridLog() {
+        //hide
+    }
+
+    public static void info(Logger logger, String udid, String phase, String pattern, Object... parameters) {
+        log(logger, Level.INFO, udid, null, phase, pattern, parameters);
+    }
+
+    public static void warning(Logger logger, String udid, String phase, String pattern, Object... parameters) {
+        log(logger, Level.WARNING, udid, null, phase, pattern, parameters);
+    }
+
+    /**
+     * Log message with key/value fields
+     *
+     * @param logger     logger
+     * @param level      level
+     * @param udid       device udid
+     * @param sessionId  session id (could be null)
+     * @param phase      phase of the session lifecycle (could be null)
+     * @param pattern    message pattern for {@link String#format(String, Object...)}
+     * @param parameters message parameters
+     */
+    public static void log(Logger logger, Level level, String udid, String sessionId, String phase, String pattern, Object... parameters) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        StructuredLogRecord record = new StructuredLogRecord(level, pattern, parameters, udid, sessionId, phase);
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Filter;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * Configurable suppression and sampling of log records. Rules are matched case-insensitively against the
+ * message pattern, so the message itself is never formatted. Configuration (logging properties):
+ * <ul>
+ * <li>{@code com.zebrunner.mcloud.grid.logging.SamplingLogFilter.suppress} - {@code ;}-separated messages that
+ * should not be logged</li>
+ * <li>{@code com.zebrunner.mcloud.grid.logging.SamplingLogFilter.sample} - {@code ;}-separated {@code <message>=<N>}
+ * rules, only every N-th matching record is logged</li>
+ * </ul>
+ * Records with {@code SEVERE} level are always logged.
+ */
+public class SamplingLogFilter implements Filter {
+    private static final String DEFAULT_SUPPRESS = "timed out waiting for a node to become available";
+
+    private final List<String> suppressRules = new ArrayList<>();
+    private final List<SamplingRule> samplingRules = new ArrayList<>();
+
+    public SamplingLogFilter() {
+        this(LogManager.getLogManager().getProperty(SamplingLogFilter.class.getName() + ".suppress"),
+                LogManager.getLogManager().getProperty(SamplingLogFilter.class.getName() + ".sample"));
+    }
+
+    public SamplingLogFilter(String suppress, String sample) {
+        for (String rule : StringUtils.split(suppress == null ? DEFAULT_SUPPRESS : suppress, ';')) {
+            if (StringUtils.isNotBlank(rule)) {
+                suppressRules.add(rule.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        for (String rule : StringUtils.split(StringUtils.defaultString(sample), ';')) {
+            String message = StringUtils.substringBeforeLast(rule, "=").trim();
+            String rate = StringUtils.substringAfterLast(rule, "=").trim();
+            if (StringUtils.isNotBlank(message) && NumberUtils.isDigits(rate) && Integer.parseInt(rate) > 1) {
+                samplingRules.add(new SamplingRule(message.toLowerCase(Locale.ROOT), Integer.parseInt(rate)));
+            }
+        }
+    }
+
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        // pattern of the structured record is not formatted on the logging thread
+        String message = record instanceof StructuredLogRecord ? ((StructuredLogRecord) record).getPattern() : record.getMessage();
+        if (message == null || record.getLevel().intValue() >= Level.SEVERE.intValue()) {
+            return true;
+        }
+        for (String rule : suppressRules) {
+            if (StringUtils.containsIgnoreCase(message, rule)) {
+                return false;
+            }
+        }
+        for (SamplingRule rule : samplingRules) {
+            if (StringUtils.containsIgnoreCase(message, rule.message)) {
+                return rule.counter.getAndIncrement() % rule.rate == 0;
+            }
+        }
+        return true;
+    }
+
+    private static final class SamplingRule {
+        private final String message;
+        private final int rate;
+        private final AtomicLong counter = new AtomicLong();
+
+        private SamplingRule(String message, int rate) {
+            this.message = message;
+            this.rate = rate;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Single line formatter: {@code <time> <level> [<logger>] <message> udid=<udid> sessionId=<id> phase=<phase>}.
+ */
+public class StructuredFormatter extends Formatter {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME.withZone(ZoneId.systemDefault());
+
+    @Override
+    public String format(LogRecord record) {
+        StringBuilder sb = new StringBuilder(256);
+        TIME_FORMATTER.formatTo(Instant.ofEpochMilli(record.getMillis()), sb);
+        sb.append(' ')
+                .append(record.getLevel().getName())
+                .append(" [")
+                .append(getSimpleName(record.getLoggerName()))
+                .append("] ");
+        if (record instanceof StructuredLogRecord) {
+            StructuredLogRecord structuredRecord = (StructuredLogRecord) record;
+            sb.append(structuredRecord.formatMessage());
+            appendField(sb, "udid", structuredRecord.getUdid());
+            appendField(sb, "sessionId", structuredRecord.getSessionId());
+            appendField(sb, "phase", structuredRecord.getPhase());
+        } else {
+            sb.append(formatMessage(record));
+        }
+        sb.append(System.lineSeparator());
+        if (record.getThrown() != null) {
+            StringWriter sw = new StringWriter();
+            try (PrintWriter pw = new PrintWriter(sw)) {
+                record.getThrown().printStackTrace(pw);
+            }
+            sb.append(sw);
+        }
+        return sb.toString();
+    }
+
+    private static void appendField(StringBuilder sb, String name, String value) {
+        if (value != null) {
+            sb.append(' ').append(name).append('=').append(value);
+        }
+    }
+
+    private static String getSimpleName(String loggerName) {
+        if (loggerName == null) {
+            return "";
+        }
+        int index = loggerName.lastIndexOf('.');
+        return index < 0 ? loggerName : loggerName.substring(index + 1);
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Log record with grid specific key/value fields. Message is kept as {@link String#format(String, Object...)} pattern
+ * with parameters and is formatted on the first {@link #getMessage()} call, usually by the handler thread. After that
+ * parameters are cleared, so any {@link java.util.logging.Formatter} (not only {@link StructuredFormatter}) prints the
+ * formatted message.
+ */
+public class StructuredLogRecord extends LogRecord {
+    private static final long serialVersionUID = -3052441764412916419L;
+
+    private final String udid;
+    private final String sessionId;
+    private final String phase;
+    private final String pattern;
+    private boolean formatted = false;
+
+    public StructuredLogRecord(Level level, String pattern, Object[] parameters, String udid, String sessionId, String phase) {
+        super(level, pattern);
+        setParameters(parameters);
+        this.udid = udid;
+        this.sessionId = sessionId;
+        this.phase = phase;
+        this.pattern = pattern;
+    }
+
+    public String getUdid() {
+        return udid;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return message pattern, not formatted
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Format message of the record
+     *
+     * @return formatted message
+     */
+    public String formatMessage() {
+        return getMessage();
+    }
+
+    @Override
+    public synchronized String getMessage() {
+        if (!formatted) {
+            formatted = true;
+            Object[] parameters = getParameters();
+            if (parameters != null && parameters.length > 0) {
+                try {
+                    setMessage(String.format(pattern, parameters));
+                } catch (RuntimeException e) {
+                    // keep the pattern
+                }
+                // java.util.logging.Formatter applies MessageFormat to the message if the record has parameters
+                setParameters(null);
+            }
+        }
+        return super.getMessage();
+    }
+}
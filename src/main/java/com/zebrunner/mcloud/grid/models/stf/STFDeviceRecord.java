@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.models.stf;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact immutable projection of the STF device: only fields used by the hub, primitive flags, status as enum.
+ * Low-cardinality strings (manufacturer, model, platform, version, owner) are shared between records, so a refreshed
+ * device list does not keep own copies of them.
+ */
+public final class STFDeviceRecord {
+    // Key and value - the same string instance
+    private static final Map<String, String> STRINGS = new ConcurrentHashMap<>();
+
+    private final String serial;
+    private final STFDeviceStatus status;
+    private final boolean present;
+    private final boolean ready;
+    private final boolean using;
+    private final String ownerName;
+    private final String remoteConnectUrl;
+    private final String manufacturer;
+    private final String model;
+    private final String platform;
+    private final String version;
+    private final float batteryLevel;
+    private final float batteryTemperature;
+
+    private STFDeviceRecord(Builder builder) {
+        this.serial = builder.serial;
+        this.status = STFDeviceStatus.fromCode(builder.status);
+        this.present = builder.present;
+        this.ready = builder.ready;
+        this.using = builder.using;
+        this.ownerName = intern(builder.ownerName);
+        this.remoteConnectUrl = builder.remoteConnectUrl;
+        this.manufacturer = intern(builder.manufacturer);
+        this.model = intern(builder.model);
+        this.platform = intern(builder.platform);
+        this.version = intern(builder.version);
+        this.batteryLevel = builder.batteryLevel;
+        this.batteryTemperature = builder.batteryTemperature;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getSerial() {
+        return serial;
+    }
+
+    public STFDeviceStatus getStatus() {
+        return status;
+    }
+
+    public boolean isPresent() {
+        return present;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isUsing() {
+        return using;
+    }
+
+    /**
+     * @return name of the user that reserved the device, null if device is not reserved
+     */
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public String getRemoteConnectUrl() {
+        return remoteConnectUrl;
+    }
+
+    public String getManufacturer() {
+        return manufacturer;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return battery level in percents, {@link Float#NaN} if unknown
+     */
+    public float getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    /**
+     * @return battery temperature in Celsius, {@link Float#NaN} if unknown
+     */
+    public float getBatteryTemperature() {
+        return batteryTemperature;
+    }
+
+    private static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = STRINGS.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    @Override
+    public String toString() {
+        return "STFDeviceRecord{" +
+                "serial='" + serial + '\'' +
+                ", status=" + status +
+                ", present=" + present +
+                ", ready=" + ready +
+                ", using=" + using +
+                ", ownerName='" + ownerName + '\'' +
+                ", remoteConnectUrl='" + remoteConnectUrl + '\'' +
+                ", manufacturer='" + manufacturer + '\'' +
+                ", model='" + model + '\'' +
+                ", platform='" + platform + '\'' +
+                ", version='" + version + '\'' +
+                ", batteryLevel=" + batteryLevel +
+                ", batteryTemperature=" + batteryTemperature +
+                '}';
+    }
+
+    public static final class Builder {
+        private String serial;
+        private int status = STFDeviceStatus.MISSING.getCode();
+        private boolean present;
+        private boolean ready;
+        private boolean using;
+        private String ownerName;
+        private String remoteConnectUrl;
+        private String manufacturer;
+        private String model;
+        private String platform;
+        private String version;
+        private float batteryLevel = Float.NaN;
+        private float batteryTemperature = Float.NaN;
+
+        private Builder() {
+        }
+
+        public Builder serial(String serial) {
+            this.serial = serial;
+            return this;
+        }
+
+        public Builder status(int status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder present(boolean present) {
+            this.present = present;
+            return this;
+        }
+
+        public Builder ready(boolean ready) {
+            this.ready = ready;
+            return this;
+        }
+
+        public Builder using(boolean using) {
+            this.using = using;
+            return this;
+        }
+
+        public Builder ownerName(String ownerName) {
+            this.ownerName = ownerName;
+            return this;
+        }
+
+        public Builder remoteConnectUrl(String remoteConnectUrl) {
+            this.remoteConnectUrl = remoteConnectUrl;
+            return this;
+        }
+
+        public Builder manufacturer(String manufacturer) {
+            this.manufacturer = manufacturer;
+            return this;
+        }
+
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder platform(String platform) {
+            this.platform = platform;
+            return this;
+        }
+
+        public Builder version(String version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder batteryLevel(float batteryLevel) {
+            this.batteryLevel = batteryLevel;
+            return this;
+        }
+
+        public Builder batteryTemperature(float batteryTemperature) {
+            this.batteryTemperature = batteryTemperature;
+            return this;
+        }
+
+        public STFDeviceRecord build() {
+            return new STFDeviceRecord(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.models.stf;
+
+/**
+ * STF device status ({@code status} field of the STF device).
+ */
+public enum STFDeviceStatus {
+    // status is not present in the STF response
+    MISSING(-1),
+    // status code is not known by the hub
+    UNKNOWN(0),
+    OFFLINE(1),
+    UNAUTHORIZED(2),
+    ONLINE(3),
+    CONNECTING(4),
+    AUTHORIZING(5),
+    UNHEALTHY(7);
+
+    private static final STFDeviceStatus[] BY_CODE = new STFDeviceStatus[8];
+
+    static {
+        for (STFDeviceStatus status : values()) {
+            if (status.code > 0) {
+                BY_CODE[status.code] = status;
+            }
+        }
+    }
+
+    private final int code;
+
+    STFDeviceStatus(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static STFDeviceStatus fromCode(int code) {
+        if (code < 0) {
+            return MISSING;
+        }
+        STFDeviceStatus status = code < BY_CODE.length ? BY_CODE[code] : null;
+        return status != null ? status : UNKNOWN;
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.servlets;
+
+import com.zebrunner.mcloud.grid.events.GridEvents;
+import com.zebrunner.mcloud.grid.events.GridStateEvent;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.HttpStatus;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Server-sent events stream of the grid state changes.
+ * <p>
+ * URI example: https://&lt;domain&gt;/grid/admin/GridEventsServlet. Reconnect with {@code Last-Event-ID} header
+ * (or {@code lastEventId} query parameter) resumes the stream from the events buffer. If the requested position
+ * is no longer in the buffer, or the subscriber is too slow, {@code resync} event is sent and the stream continues
+ * from the latest event, so the client should reload full state (for example from {@link ProxyInfo}).
+ */
+public class GridEventsServlet extends RegistryBasedServlet {
+    private static final long serialVersionUID = -2715270133620584337L;
+    private static final Logger LOGGER = Logger.getLogger(GridEventsServlet.class.getName());
+    private static final long HEARTBEAT_INTERVAL = 15_000;
+    // every subscriber holds a jetty thread, so amount of subscribers is limited
+    private static final Semaphore SUBSCRIBERS = new Semaphore(Optional.ofNullable(System.getenv("GRID_EVENTS_MAX_SUBSCRIBERS"))
+            .filter(StringUtils::isNotBlank)
+            .map(Integer::parseInt)
+            .orElse(16));
+
+    public GridEventsServlet() {
+        this(null);
+    }
+
+    public GridEventsServlet(GridRegistry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!SUBSCRIBERS.tryAcquire()) {
+            response.sendError(HttpStatus.SC_SERVICE_UNAVAILABLE, "Too many subscribers.");
+            return;
+        }
+        try {
+            stream(request, response);
+        } finally {
+            SUBSCRIBERS.release();
+        }
+    }
+
+    private void stream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String lastEventId = Optional.ofNullable(request.getHeader("Last-Event-ID"))
+                .orElse(request.getParameter("lastEventId"));
+        long cursor = NumberUtils.isDigits(lastEventId) ? Long.parseLong(lastEventId) : GridEvents.getLastEventId();
+
+        response.setStatus(HttpStatus.SC_OK);
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+        PrintWriter writer = response.getWriter();
+        writer.write("retry: 3000\n\n");
+        writer.flush();
+
+        List<GridStateEvent> events = new ArrayList<>();
+        try {
+            while (!writer.checkError()) {
+                events.clear();
+                if (!GridEvents.read(cursor, events)) {
+                    long resyncCursor = GridEvents.getLastEventId();
+                    long lostCursor = cursor;
+                    LOGGER.info(() -> String.format("[EVENTS] Subscriber lost position %s, resync from %s.", lostCursor, resyncCursor));
+                    cursor = resyncCursor;
+                    writer.write("id: " + cursor + "\nevent: resync\ndata: {\"lastEventId\":" + cursor + "}\n\n");
+                } else if (events.isEmpty()) {
+                    GridEvents.await(cursor, HEARTBEAT_INTERVAL);
+                    if (GridEvents.getLastEventId() > cursor) {
+                        continue;
+                    }
+                    writer.write(": heartbeat\n\n");
+                } else {
+                    for (GridStateEvent event : events) {
+                        writer.write("id: " + event.getId() + "\nevent: " + event.getType() + "\ndata: " + event.toJson() + "\n\n");
+                        cursor = event.getId();
+                    }
+                }
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -16,29 +16,53 @@
 package com.zebrunner.mcloud.grid.servlets;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.GridRegistry;
 import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
 import org.openqa.grid.web.servlet.RegistryBasedServlet;
+import org.openqa.selenium.remote.CapabilityType;
 
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.DeviceQuarantine;
+import com.zebrunner.mcloud.grid.GridStateVersion;
+import com.zebrunner.mcloud.grid.MobileRemoteProxy;
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+
+import static com.zebrunner.mcloud.grid.validator.DeviceTypeValidator.ZEBRUNNER_DEVICE_TYPE_CAPABILITY;
 
 /**
  * Servlet that retrieves information about connected nodes.
+ * <p>
+ * Supported query parameters (all optional): {@code platform}, {@code deviceType}, {@code busy} ({@code true/false})
+ * and {@code quarantined} ({@code true/false}). Filters are evaluated per slot: node is returned with the slots that match
+ * all filters, {@code state.slots} contains udid, session and quarantine of every such slot. Response is generated directly to
+ * the output stream and marked with ETag, so unchanged polls with {@code If-None-Match} header return 304.
  * 
  * @author Alex Khursevich (alex@qaprosoft.com)
  */
 public class ProxyInfo extends RegistryBasedServlet {
 	private static final long serialVersionUID = 1224921425278259572L;
+	private static final Logger LOGGER = Logger.getLogger(ProxyInfo.class.getName());
 
 	private static final ObjectMapper mapper = new ObjectMapper();
 
@@ -62,23 +86,123 @@ public class ProxyInfo extends RegistryBasedServlet {
     }
 
     protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        List<RegistrationRequest> proxies = new ArrayList<>();
-        Iterator<RemoteProxy> itr = this.getRegistry().getAllProxies().iterator();
-        while(itr.hasNext()) {
-        		RemoteProxy proxy = itr.next();
-        		proxies.add(proxy.getOriginalRegistrationRequest());
+        String etag = buildETag();
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (StringUtils.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpStatus.SC_NOT_MODIFIED);
+            return;
         }
+
+        String platform = request.getParameter("platform");
+        String deviceType = request.getParameter("deviceType");
+        Boolean busy = toBoolean(request.getParameter("busy"));
+        Boolean quarantined = toBoolean(request.getParameter("quarantined"));
+
+        response.setStatus(HttpStatus.SC_OK);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        try {
-        		mapper.writeValue(response.getWriter(), proxies);
-        		response.setStatus(HttpStatus.SC_OK);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (RemoteProxy proxy : getRegistry().getAllProxies()) {
+                List<SlotState> slots = new ArrayList<>();
+                for (TestSlot slot : proxy.getTestSlots()) {
+                    Map<String, Object> capabilities = slot.getCapabilities();
+                    SlotState slotState = buildSlotState(slot);
+                    if ((platform != null && !StringUtils.equalsIgnoreCase(platform, String.valueOf(capabilities.get(CapabilityType.PLATFORM_NAME)))) ||
+                            (deviceType != null && !StringUtils.equalsIgnoreCase(deviceType,
+                                    CapabilityUtils.getZebrunnerCapability(capabilities, ZEBRUNNER_DEVICE_TYPE_CAPABILITY)
+                                            .map(String::valueOf)
+                                            .orElse(null))) ||
+                            (busy != null && busy != (slotState.sessionId != null)) ||
+                            (quarantined != null && quarantined != (slotState.quarantinedUntil != null))) {
+                        continue;
+                    }
+                    slots.add(slotState);
+                }
+                if (slots.isEmpty()) {
+                    continue;
+                }
+                mapper.writeValue(generator, new ProxyView(proxy.getOriginalRegistrationRequest(), buildState(proxy, slots)));
+            }
+            generator.writeEndArray();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not write proxy info.", e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * ETag depends on the grid state version and on the set of registered proxies (including their availability),
+     * so changes made by the selenium registry itself (registration, node down) are detected as well.
+     */
+    private String buildETag() {
+        long version = GridStateVersion.get();
+        long fingerprint = 0;
+        int size = 0;
+        for (RemoteProxy proxy : getRegistry().getAllProxies()) {
+            boolean isDown = proxy instanceof DefaultRemoteProxy && ((DefaultRemoteProxy) proxy).isDown();
+            fingerprint += 31L * proxy.getId().hashCode() + (isDown ? 1 : 0);
+            size++;
+        }
+        return String.format("\"%s-%s-%s\"", version, size, Long.toHexString(fingerprint));
+    }
+
+    private static ProxyState buildState(RemoteProxy proxy, List<SlotState> slots) {
+        ProxyState state = new ProxyState();
+        state.busy = proxy.isBusy();
+        state.down = proxy instanceof DefaultRemoteProxy && ((DefaultRemoteProxy) proxy).isDown();
+        state.validation = proxy instanceof MobileRemoteProxy ? ((MobileRemoteProxy) proxy).getValidationState().name() : null;
+        state.slots = slots;
+        return state;
+    }
+
+    private static SlotState buildSlotState(TestSlot slot) {
+        SlotState state = new SlotState();
+        state.udid = slot.getProxy() instanceof MobileRemoteProxy ? ((MobileRemoteProxy) slot.getProxy()).getUdid(slot) :
+                CapabilityUtils.getAppiumCapability(slot.getCapabilities(), "udid")
+                        .map(String::valueOf)
+                        .orElse(null);
+        state.quarantinedUntil = state.udid == null ? null : DeviceQuarantine.getExpiration(state.udid)
+                .map(Instant::toEpochMilli)
+                .orElse(null);
+        TestSession session = slot.getSession();
+        if (session != null) {
+            state.sessionId = session.getInternalKey();
+            state.externalSessionId = session.getExternalKey() != null ? session.getExternalKey().getKey() : null;
         }
-        catch (Exception e) {
-        		response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
-		}
-        finally {
-        		response.getWriter().close();
-		}
+        return state;
+    }
+
+    private static Boolean toBoolean(String value) {
+        return StringUtils.isBlank(value) ? null : Boolean.valueOf(value);
+    }
+
+    private static final class ProxyView {
+        @JsonUnwrapped
+        public final RegistrationRequest request;
+        public final ProxyState state;
+
+        private ProxyView(RegistrationRequest request, ProxyState state) {
+            this.request = request;
+            this.state = state;
+        }
+    }
+
+    private static final class ProxyState {
+        public boolean busy;
+        public boolean down;
+        public String validation;
+        public List<SlotState> slots;
+    }
+
+    private static final class SlotState {
+        public String udid;
+        public String sessionId;
+        public String externalSessionId;
+        public Long quarantinedUntil;
     }
-}
\ No newline at end of file
+}
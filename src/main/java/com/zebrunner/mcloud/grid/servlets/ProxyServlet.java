@@ -11,6 +11,7 @@ import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.zebrunner.mcloud.grid.jfr.PacServeEvent;
 import org.apache.http.HttpStatus;
 import org.openqa.grid.internal.GridRegistry;
 import org.openqa.grid.web.servlet.RegistryBasedServlet;
@@ -51,10 +52,12 @@ public class ProxyServlet extends RegistryBasedServlet {
     protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
         Matcher matcher = PAC_PATTERN.matcher(request.getRequestURI());
         if (matcher.find()) {
+            PacServeEvent event = PacServeEvent.start();
             String requestURI = request.getRequestURI();
             LOGGER.finest("Detected PAC request: " + requestURI);
             String deviceId = matcher.group("udid");
-            String pacConfiguration = CUSTOM_DEVICE_PAC_PROXY_CONFIGURATION.getOrDefault(deviceId, DEFAULT_PAC_CONFIGURATION);
+            String customPacConfiguration = CUSTOM_DEVICE_PAC_PROXY_CONFIGURATION.get(deviceId);
+            String pacConfiguration = customPacConfiguration != null ? customPacConfiguration : DEFAULT_PAC_CONFIGURATION;
             LOGGER.finest("PAC proxy configuration for the ' " + deviceId + "' device: \n" + pacConfiguration);
             response.setStatus(HttpStatus.SC_OK);
             response.setContentType("application/x-ns-proxy-autoconfig");
@@ -65,6 +68,8 @@ public class ProxyServlet extends RegistryBasedServlet {
                     .write(new String(pacConfiguration.getBytes(StandardCharsets.UTF_8)));
             response.getWriter()
                     .close();
+            event.setCustom(customPacConfiguration != null);
+            event.complete(deviceId, null, "SERVED");
         }
     }
 
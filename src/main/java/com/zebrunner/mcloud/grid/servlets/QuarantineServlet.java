@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.DeviceQuarantine;
+import com.zebrunner.mcloud.grid.QuarantineTimeout;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.HttpStatus;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Runtime management of device quarantines.
+ * <ul>
+ * <li>{@code GET .../QuarantineServlet} - list of active quarantines and default timeouts</li>
+ * <li>{@code POST .../QuarantineServlet/devices/<udid>?timeout=<seconds>&reason=<reason>} - quarantine device</li>
+ * <li>{@code PUT .../QuarantineServlet/devices/<udid>?timeout=<seconds>} - extend device quarantine</li>
+ * <li>{@code DELETE .../QuarantineServlet/devices/<udid>} - return device to automation</li>
+ * <li>{@code DELETE .../QuarantineServlet/devices} - return all devices to automation</li>
+ * <li>{@code PUT .../QuarantineServlet/timeouts/<name>?timeout=<seconds>} - change default timeout,
+ * for example {@code UNHEALTHY_MOBILE_TIMEOUT}</li>
+ * </ul>
+ */
+public class QuarantineServlet extends RegistryBasedServlet {
+    private static final long serialVersionUID = 6405416282640912513L;
+    private static final Logger LOGGER = Logger.getLogger(QuarantineServlet.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern DEVICES_PATTERN = Pattern.compile("devices(/(?<udid>[^/]+))?/?$");
+    private static final Pattern TIMEOUTS_PATTERN = Pattern.compile("timeouts/(?<name>[^/]+)/?$");
+    private static final String MANUAL_REASON = "MANUAL";
+
+    public QuarantineServlet() {
+        this(null);
+    }
+
+    public QuarantineServlet(GridRegistry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("devices", DeviceQuarantine.list()
+                .stream()
+                .map(QuarantineServlet::toMap)
+                .collect(Collectors.toList()));
+        Map<String, Long> timeouts = new LinkedHashMap<>();
+        for (QuarantineTimeout timeout : QuarantineTimeout.values()) {
+            timeouts.put(timeout.name(), timeout.get().toSeconds());
+        }
+        result.put("timeouts", timeouts);
+        write(response, HttpStatus.SC_OK, result);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Matcher matcher = DEVICES_PATTERN.matcher(request.getRequestURI());
+        if (!matcher.find() || matcher.group("udid") == null) {
+            response.sendError(HttpStatus.SC_NOT_FOUND);
+            return;
+        }
+        Duration timeout = getTimeout(request);
+        if (timeout == null) {
+            response.sendError(HttpStatus.SC_BAD_REQUEST, "'timeout' parameter (in seconds) is required.");
+            return;
+        }
+        String udid = matcher.group("udid");
+        String reason = StringUtils.defaultIfBlank(request.getParameter("reason"), MANUAL_REASON);
+        DeviceQuarantine.put(udid, timeout, reason);
+        LOGGER.warning(() -> String.format("[ADMIN] Device '%s' quarantined for %s seconds. Reason: %s", udid, timeout.toSeconds(), reason));
+        write(response, HttpStatus.SC_OK, DeviceQuarantine.list()
+                .stream()
+                .filter(entry -> StringUtils.equals(entry.getUdid(), udid))
+                .findFirst()
+                .map(QuarantineServlet::toMap)
+                .orElse(Map.of()));
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Duration timeout = getTimeout(request);
+        if (timeout == null) {
+            response.sendError(HttpStatus.SC_BAD_REQUEST, "'timeout' parameter (in seconds) is required.");
+            return;
+        }
+        Matcher timeoutsMatcher = TIMEOUTS_PATTERN.matcher(request.getRequestURI());
+        if (timeoutsMatcher.find()) {
+            String name = timeoutsMatcher.group("name");
+            if (!EnumUtils.isValidEnum(QuarantineTimeout.class, name)) {
+                response.sendError(HttpStatus.SC_NOT_FOUND, "Unknown timeout: " + name);
+                return;
+            }
+            QuarantineTimeout.valueOf(name).set(timeout);
+            LOGGER.warning(() -> String.format("[ADMIN] Default timeout '%s' changed to %s seconds.", name, timeout.toSeconds()));
+            write(response, HttpStatus.SC_OK, Map.of(name, timeout.toSeconds()));
+            return;
+        }
+        Matcher devicesMatcher = DEVICES_PATTERN.matcher(request.getRequestURI());
+        if (!devicesMatcher.find() || devicesMatcher.group("udid") == null) {
+            response.sendError(HttpStatus.SC_NOT_FOUND);
+            return;
+        }
+        String udid = devicesMatcher.group("udid");
+        DeviceQuarantine.Entry entry = DeviceQuarantine.extend(udid, timeout, MANUAL_REASON);
+        LOGGER.warning(() -> String.format("[ADMIN] Device '%s' quarantine extended till %s.", udid, entry.getExpiration()));
+        write(response, HttpStatus.SC_OK, toMap(entry));
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Matcher matcher = DEVICES_PATTERN.matcher(request.getRequestURI());
+        if (!matcher.find()) {
+            response.sendError(HttpStatus.SC_NOT_FOUND);
+            return;
+        }
+        String udid = matcher.group("udid");
+        if (udid == null) {
+            int released = DeviceQuarantine.clearAll(MANUAL_REASON);
+            LOGGER.warning(() -> String.format("[ADMIN] %s device(s) returned to automation.", released));
+            write(response, HttpStatus.SC_OK, Map.of("released", released));
+            return;
+        }
+        boolean released = DeviceQuarantine.clear(udid, MANUAL_REASON);
+        LOGGER.warning(() -> String.format("[ADMIN] Device '%s' returned to automation.", udid));
+        write(response, HttpStatus.SC_OK, Map.of("released", released ? 1 : 0));
+    }
+
+    private static Duration getTimeout(HttpServletRequest request) {
+        String timeout = request.getParameter("timeout");
+        return NumberUtils.isDigits(timeout) ? Duration.ofSeconds(Long.parseLong(timeout)) : null;
+    }
+
+    private static Map<String, Object> toMap(DeviceQuarantine.Entry entry) {
+        return Map.of("udid", entry.getUdid(),
+                "reason", entry.getReason(),
+                "until", entry.getExpiration().toEpochMilli());
+    }
+
+    private static void write(HttpServletResponse response, int status, Object body) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        MAPPER.writeValue(response.getWriter(), body);
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.servlets;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.QueueEstimator;
+import org.apache.http.HttpStatus;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Wait time estimation of the new session request, see {@link QueueEstimator}.
+ * <ul>
+ * <li>{@code GET .../QueueEstimateServlet?platformName=ANDROID&appium:platformVersion=13} - estimation for capabilities
+ * passed as query parameters</li>
+ * <li>{@code POST .../QueueEstimateServlet} - estimation for capabilities passed as json object</li>
+ * </ul>
+ * Response contains the number of matching devices ({@code free}, {@code busy}, {@code quarantined}, {@code unavailable}),
+ * {@code queued} requests, {@code position} of the request in the queue, mean {@code sessionDuration} and {@code eta} in ms.
+ */
+public class QueueEstimateServlet extends RegistryBasedServlet {
+    private static final long serialVersionUID = -2918460276465139023L;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public QueueEstimateServlet() {
+        this(null);
+    }
+
+    public QueueEstimateServlet(GridRegistry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Object> capabilities = new HashMap<>();
+        request.getParameterMap().forEach((name, values) -> capabilities.put(name, values[0]));
+        write(response, HttpStatus.SC_OK, QueueEstimator.estimate(getRegistry(), capabilities));
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Object> capabilities;
+        try {
+            capabilities = MAPPER.readValue(request.getInputStream(), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException e) {
+            response.sendError(HttpStatus.SC_BAD_REQUEST, "Capabilities should be a json object.");
+            return;
+        }
+        write(response, HttpStatus.SC_OK, QueueEstimator.estimate(getRegistry(), capabilities));
+    }
+
+    private static void write(HttpServletResponse response, int status, Object body) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        MAPPER.writeValue(response.getWriter(), body);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.DirectRouting;
+import org.apache.http.HttpStatus;
+import org.openqa.grid.common.SeleniumProtocol;
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lease of the direct-routed session (see {@link DirectRouting}).
+ * <ul>
+ * <li>{@code GET .../SessionLeaseServlet/<sessionId>} - lease state</li>
+ * <li>{@code PUT .../SessionLeaseServlet/<sessionId>} - renew lease (resets session inactivity time)</li>
+ * <li>{@code DELETE .../SessionLeaseServlet/<sessionId>} - finish session on the hub (node session should be already deleted by the client)</li>
+ * </ul>
+ */
+public class SessionLeaseServlet extends RegistryBasedServlet {
+    private static final long serialVersionUID = -2405287641093842510L;
+    private static final Logger LOGGER = Logger.getLogger(SessionLeaseServlet.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern SESSION_PATTERN = Pattern.compile("SessionLeaseServlet/(?<sessionId>[^/]+)/?$");
+
+    public SessionLeaseServlet() {
+        this(null);
+    }
+
+    public SessionLeaseServlet(GridRegistry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        TestSession session = getSession(request, response);
+        if (session != null) {
+            write(response, session);
+        }
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        TestSession session = getSession(request, response);
+        if (session != null) {
+            // updates last activity of the session
+            session.setIgnoreTimeout(false);
+            write(response, session);
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        TestSession session = getSession(request, response);
+        if (session != null) {
+            LOGGER.info(() -> String.format("[%s] Direct-routed session will be finished by the client.", session.getExternalKey().getKey()));
+            getRegistry().terminate(session, SessionTerminationReason.CLIENT_STOPPED_SESSION);
+            response.setStatus(HttpStatus.SC_NO_CONTENT);
+        }
+    }
+
+    private TestSession getSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Matcher matcher = SESSION_PATTERN.matcher(request.getRequestURI());
+        if (!matcher.find()) {
+            response.sendError(HttpStatus.SC_NOT_FOUND);
+            return null;
+        }
+        TestSession session = getRegistry().getSession(new ExternalSessionKey(matcher.group("sessionId")));
+        if (session == null || session.getSlot().getProtocol() != SeleniumProtocol.WebDriver) {
+            response.sendError(HttpStatus.SC_NOT_FOUND, "Session not found.");
+            return null;
+        }
+        if (!DirectRouting.isRequested(session)) {
+            response.sendError(HttpStatus.SC_CONFLICT, "Session is not direct-routed.");
+            return null;
+        }
+        return session;
+    }
+
+    private void write(HttpServletResponse response, TestSession session) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessionId", session.getExternalKey().getKey());
+        result.put("inactivityTime", session.getInactivityTime());
+        result.put("leaseTimeout", session.getSlot().getProxy().getTimeOut() / 1000);
+        response.setStatus(HttpStatus.SC_OK);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        MAPPER.writeValue(response.getOutputStream(), result);
+    }
+}
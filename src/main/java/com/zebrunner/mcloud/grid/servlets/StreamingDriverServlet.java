@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zebrunner.mcloud.grid.forwarding.StreamingForwarder;
+import com.zebrunner.mcloud.grid.forwarding.StreamingRequestHandler;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.web.servlet.DriverServlet;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+import org.openqa.selenium.remote.ErrorCodes;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * WebDriver endpoint of the hub that forwards commands of mobile sessions via {@link StreamingForwarder}.
+ * <ul>
+ * <li>{@code .../StreamingDriverServlet/session/...} - the same as {@code /wd/hub/session/...}, so the client should use
+ * {@code http://<hub>/grid/admin/StreamingDriverServlet} as the hub url</li>
+ * </ul>
+ */
+public class StreamingDriverServlet extends DriverServlet {
+    private static final long serialVersionUID = 4786013472431855061L;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public StreamingDriverServlet() {
+        this(null);
+    }
+
+    public StreamingDriverServlet(GridRegistry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        RequestHandler handler = null;
+        try {
+            // request factory of the grid accepts only /wd/hub servlet path
+            handler = new StreamingRequestHandler(new WebDriverRequest(request, getRegistry()), response, getRegistry());
+            handler.process();
+        } catch (Throwable e) {
+            if (response.isCommitted()) {
+                throw new IOException(e);
+            }
+            writeError(response, handler, e);
+        }
+    }
+
+    /**
+     * Error in the format of the grid driver servlet (both JSON Wire Protocol and W3C)
+     */
+    private static void writeError(HttpServletResponse response, RequestHandler handler, Throwable e) throws IOException {
+        response.reset();
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+        ExternalSessionKey sessionKey = handler != null ? handler.getServerSession() : null;
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("error", "unknown error");
+        value.put("message", e.getMessage());
+        value.put("class", e.getClass().getCanonicalName());
+        value.put("stacktrace", ExceptionUtils.getStackTrace(e));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessionId", sessionKey != null ? sessionKey.getKey() : null);
+        result.put("status", ErrorCodes.UNHANDLED_ERROR);
+        result.put("value", value);
+
+        byte[] body = MAPPER.writeValueAsString(result).getBytes(StandardCharsets.UTF_8);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        response.flushBuffer();
+    }
+}
@@ -34,4 +34,18 @@ public final class CapabilityUtils {
         return Optional.ofNullable(value);
     }
 
+    /**
+     * Capability profile of the request: platform, platform version, device name and device type
+     *
+     * @param capabilities requested capabilities
+     * @return profile key, for example {@code android/13//phone}
+     */
+    public static String getProfile(Map<String, Object> capabilities) {
+        return String.join("/",
+                Optional.ofNullable(capabilities.get("platformName")).map(String::valueOf).orElse("").toLowerCase(),
+                getAppiumCapability(capabilities, "platformVersion").map(String::valueOf).orElse(""),
+                getAppiumCapability(capabilities, "deviceName").map(String::valueOf).orElse(""),
+                getZebrunnerCapability(capabilities, "deviceType").map(String::valueOf).orElse("").toLowerCase());
+    }
+
 }
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package com.zebrunner.mcloud.grid.util;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -87,6 +89,32 @@ public class HttpClient {
             return execute(responseClass, builder -> builder.get(ClientResponse.class));
         }
 
+        /**
+         * Execute GET request and read response body (status 200) with the reader instead of the object mapper.
+         * Status stays 0 if the request or the read fails.
+         */
+        public <R> Response<R> get(EntityReader<R> reader) {
+            Response<R> rs = new Response<>();
+            try {
+                ClientResponse response = builder.get(ClientResponse.class);
+                try {
+                    if (response.getStatus() == 200) {
+                        try (InputStream stream = response.getEntityInputStream()) {
+                            rs.setObject(reader.read(stream));
+                        }
+                    }
+                    // status is set only if the body is read, so the failed read is not taken for the successful response
+                    rs.setStatus(response.getStatus());
+                } finally {
+                    response.close();
+                }
+            } catch (Exception e) {
+                String message = errorMessage == null ? e.getMessage() : e.getMessage() + ". " + errorMessage;
+                LOGGER.log(Level.SEVERE, message, e);
+            }
+            return rs;
+        }
+
         public <R> Response<R> post(Class<R> responseClass, Object requestEntity) {
             return execute(responseClass, builder -> builder.post(ClientResponse.class, requestEntity));
         }
@@ -150,6 +178,11 @@ public class HttpClient {
 
     }
 
+    @FunctionalInterface
+    public interface EntityReader<R> {
+        R read(InputStream stream) throws IOException;
+    }
+
     public static class Response<T> {
 
         private int status;
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AppAffinityTest {
+
+    @Test
+    public void testGetApp() {
+        Assert.assertEquals(AppAffinity.getApp(Map.of("appium:app", "https://builds/app.apk", "zebrunner:appHash", "f00d")), "appHash:f00d");
+        Assert.assertEquals(AppAffinity.getApp(Map.of("appium:app", "https://builds/app.apk", "appium:appPackage", "com.app")),
+                "app:https://builds/app.apk");
+        Assert.assertEquals(AppAffinity.getApp(Map.of("bundleId", "com.app")), "bundleId:com.app");
+        Assert.assertNull(AppAffinity.getApp(Map.of("platformName", "ANDROID")));
+    }
+
+    @Test
+    public void testEviction() {
+        AppAffinity.clear();
+        for (int i = 0; i < 6; i++) {
+            AppAffinity.add("device", "app:" + i);
+        }
+        Assert.assertTrue(AppAffinity.getHolders("app:0").isEmpty());
+        Assert.assertEquals(AppAffinity.getHolders("app:5"), Set.of("device"));
+
+        for (int i = 0; i < 1001; i++) {
+            AppAffinity.add("device-" + i, "build:" + i);
+        }
+        Assert.assertTrue(AppAffinity.getHolders("app:1").isEmpty());
+        Assert.assertEquals(AppAffinity.getHolders("build:1000"), Set.of("device-1000"));
+        AppAffinity.clear();
+    }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DeviceHealthTest {
+
+    @Test
+    public void testFlakyDeviceScore() {
+        DeviceHealth.clear();
+        for (int i = 0; i < 30; i++) {
+            DeviceHealth.onAppiumCheck("healthy", true);
+            DeviceHealth.onAppiumCheck("flaky", i % 3 != 0);
+            DeviceHealth.onSessionStart("healthy", true);
+            DeviceHealth.onSessionStart("flaky", i % 3 != 0);
+        }
+        DeviceHealth.refresh();
+
+        Assert.assertEquals(DeviceHealth.getScore("healthy"), 0f);
+        Assert.assertEquals(DeviceHealth.getScore("unknown"), 0f);
+        Assert.assertTrue(DeviceHealth.getScore("flaky") > 0.1f);
+        Assert.assertTrue(DeviceHealth.getScore("flaky") < 1f);
+        DeviceHealth.clear();
+    }
+
+    @Test
+    public void testBatteryPenalty() {
+        Assert.assertEquals(DeviceHealth.batteryPenalty(Float.NaN, Float.NaN), 0f);
+        Assert.assertEquals(DeviceHealth.batteryPenalty(100f, 27.5f), 0f);
+        Assert.assertEquals(DeviceHealth.batteryPenalty(10f, 27.5f), 0.5f, 0.001f);
+        Assert.assertEquals(DeviceHealth.batteryPenalty(100f, 60f), 1f, 0.001f);
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DeviceQuarantineTest {
+
+    @Test
+    public void testPutAndClear() {
+        DeviceQuarantine.put("quarantine-1", Duration.ofMinutes(1), "TEST");
+        Assert.assertTrue(DeviceQuarantine.isQuarantined("quarantine-1"));
+        Assert.assertTrue(DeviceQuarantine.list().stream().anyMatch(e -> e.getUdid().equals("quarantine-1")));
+
+        Assert.assertTrue(DeviceQuarantine.clear("quarantine-1", "TEST"));
+        Assert.assertFalse(DeviceQuarantine.isQuarantined("quarantine-1"));
+        Assert.assertFalse(DeviceQuarantine.clear("quarantine-1", "TEST"));
+    }
+
+    @Test
+    public void testExpiration() {
+        DeviceQuarantine.put("quarantine-2", Duration.ZERO, "TEST");
+        Assert.assertFalse(DeviceQuarantine.isQuarantined("quarantine-2"));
+        Assert.assertTrue(DeviceQuarantine.getExpiration("quarantine-2").isEmpty());
+    }
+
+    @Test
+    public void testSweepChangesStateVersion() throws InterruptedException {
+        DeviceQuarantine.put("quarantine-5", Duration.ofMillis(50), "TEST");
+        long version = GridStateVersion.get();
+        Thread.sleep(100);
+        DeviceQuarantine.sweep();
+        Assert.assertTrue(GridStateVersion.get() > version);
+    }
+
+    @Test
+    public void testExtend() {
+        DeviceQuarantine.put("quarantine-3", Duration.ofMinutes(1), "TEST");
+        Instant expiration = DeviceQuarantine.getExpiration("quarantine-3").orElseThrow();
+        DeviceQuarantine.Entry entry = DeviceQuarantine.extend("quarantine-3", Duration.ofMinutes(5), "MANUAL");
+        Assert.assertEquals(entry.getExpiration(), expiration.plus(Duration.ofMinutes(5)));
+        Assert.assertEquals(entry.getReason(), "TEST");
+
+        DeviceQuarantine.Entry newEntry = DeviceQuarantine.extend("quarantine-4", Duration.ofMinutes(5), "MANUAL");
+        Assert.assertEquals(newEntry.getReason(), "MANUAL");
+        Assert.assertTrue(DeviceQuarantine.isQuarantined("quarantine-4"));
+        DeviceQuarantine.clearAll("TEST");
+        Assert.assertFalse(DeviceQuarantine.isQuarantined("quarantine-3"));
+        Assert.assertFalse(DeviceQuarantine.isQuarantined("quarantine-4"));
+    }
+
+    @Test
+    public void testRuntimeTimeout() {
+        Duration initial = QuarantineTimeout.UNHEALTHY_MOBILE_TIMEOUT.get();
+        try {
+            QuarantineTimeout.UNHEALTHY_MOBILE_TIMEOUT.set(Duration.ofSeconds(5));
+            Assert.assertEquals(QuarantineTimeout.UNHEALTHY_MOBILE_TIMEOUT.get(), Duration.ofSeconds(5));
+        } finally {
+            QuarantineTimeout.UNHEALTHY_MOBILE_TIMEOUT.set(initial);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HostHealthMonitorTest {
+
+    @Test
+    public void testHostDown() throws Exception {
+        HttpServer healthy = start(0, 200);
+        HttpServer broken = start(0, 500);
+        URL healthyUrl = new URL("http://localhost:" + healthy.getAddress().getPort());
+        URL brokenUrl = new URL("http://localhost:" + broken.getAddress().getPort());
+        HostHealthMonitor.register("healthy", List.of("host-health-1"), healthyUrl);
+        HostHealthMonitor.register("broken", List.of("host-health-2"), brokenUrl);
+
+        URL[] deadUrls = new URL[3];
+        for (int i = 0; i < deadUrls.length; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                deadUrls[i] = new URL("http://127.0.0.1:" + socket.getLocalPort());
+            }
+            HostHealthMonitor.register("dead-" + i, List.of("host-health-dead-" + i, "host-health-dead-" + i + "-2"), deadUrls[i]);
+        }
+
+        try {
+            HostHealthMonitor.check("localhost");
+            HostHealthMonitor.check("127.0.0.1");
+            Assert.assertTrue(HostHealthMonitor.isHostAlive(healthyUrl));
+            Assert.assertTrue(HostHealthMonitor.isAlive(healthyUrl, "healthy"));
+            Assert.assertFalse(HostHealthMonitor.isAlive(brokenUrl, "broken"));
+            Assert.assertFalse(DeviceQuarantine.isQuarantined("host-health-2"));
+
+            Assert.assertFalse(HostHealthMonitor.isHostAlive(deadUrls[0]));
+            for (int i = 0; i < deadUrls.length; i++) {
+                Assert.assertFalse(HostHealthMonitor.isAlive(deadUrls[i], "dead-" + i));
+                Assert.assertTrue(DeviceQuarantine.isQuarantined("host-health-dead-" + i));
+                Assert.assertTrue(DeviceQuarantine.isQuarantined("host-health-dead-" + i + "-2"));
+            }
+
+            HttpServer recovered = start(deadUrls[0].getPort(), 200);
+            try {
+                HostHealthMonitor.check("127.0.0.1");
+                Assert.assertTrue(HostHealthMonitor.isHostAlive(deadUrls[0]));
+                Assert.assertTrue(HostHealthMonitor.isAlive(deadUrls[0], "dead-0"));
+                Assert.assertFalse(HostHealthMonitor.isAlive(deadUrls[1], "dead-1"));
+                for (int i = 0; i < deadUrls.length; i++) {
+                    Assert.assertFalse(DeviceQuarantine.isQuarantined("host-health-dead-" + i));
+                    Assert.assertFalse(DeviceQuarantine.isQuarantined("host-health-dead-" + i + "-2"));
+                }
+            } finally {
+                recovered.stop(0);
+            }
+        } finally {
+            healthy.stop(0);
+            broken.stop(0);
+        }
+    }
+
+    private static HttpServer start(int port, int status) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/wd/hub/status", exchange -> {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+}
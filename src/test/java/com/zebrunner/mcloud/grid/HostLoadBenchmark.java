@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.ProxySet;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
+import org.openqa.selenium.MutableCapabilities;
+
+/**
+ * Scheduling overhead of the host load selection: sorting of the candidates (done by the grid for every new session
+ * request) with the default ordering and with the host load ordering, and recalculation of the host scores.
+ * Run with: {@code java -cp <test-classpath> com.zebrunner.mcloud.grid.HostLoadBenchmark [devices] [devicesPerHost] [iterations]}
+ */
+public class HostLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int perHost = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        // proxies are not added to the registry, so it is not used
+        GridRegistry registry = (GridRegistry) Proxy.newProxyInstance(HostLoadBenchmark.class.getClassLoader(),
+                new Class<?>[] { GridRegistry.class }, (instance, method, arguments) -> null);
+
+        ProxySet defaultOrdering = new ProxySet(false);
+        ProxySet hostLoadOrdering = new ProxySet(false);
+        List<RemoteProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            RegistrationRequest request = request(i, perHost);
+            DefaultRemoteProxy proxy = new DefaultRemoteProxy(request, registry);
+            HostLoadProxy hostLoadProxy = new HostLoadProxy(request, registry);
+            // hosts have different load: from every 2nd to every 6th device of the host is busy
+            int host = i / perHost;
+            if (i % (host % 5 + 2) == 0) {
+                Map<String, Object> capabilities = new HashMap<>(Map.of("browserName", "test"));
+                proxy.getTestSlots().get(0).getNewSession(capabilities);
+                hostLoadProxy.getTestSlots().get(0).getNewSession(capabilities);
+            }
+            if (i % perHost == 0) {
+                HostLoad.onCommand("host-" + host, (host % 7) * 200_000_000L);
+            }
+            defaultOrdering.add(proxy);
+            hostLoadOrdering.add(hostLoadProxy);
+            proxies.add(hostLoadProxy);
+        }
+        HostLoad.update(proxies);
+        System.out.printf("Devices: %s, hosts: %s, busy: %s%n", count, (count + perHost - 1) / perHost, defaultOrdering.getBusyProxies().size());
+
+        for (int round = 0; round < 2; round++) {
+            // first round is warm up
+            boolean print = round == 1;
+            measure("default ordering", iterations, print, () -> defaultOrdering.getSorted().size());
+            measure("host load ordering", iterations, print, () -> hostLoadOrdering.getSorted().size());
+            measure("host scores update", iterations, print, () -> {
+                HostLoad.update(proxies);
+                return 1;
+            });
+        }
+        System.out.printf("First candidate: default %s, host load %s%n", defaultOrdering.getSorted().get(0).getRemoteHost(),
+                hostLoadOrdering.getSorted().get(0).getRemoteHost());
+    }
+
+    private static RegistrationRequest request(int i, int perHost) {
+        GridNodeConfiguration config = new GridNodeConfiguration();
+        config.remoteHost = String.format("http://host-%d:%d", i / perHost, 4723 + i % perHost);
+        MutableCapabilities capabilities = new MutableCapabilities();
+        capabilities.setCapability("browserName", "test");
+        config.capabilities = new ArrayList<>(List.of(capabilities));
+        return new RegistrationRequest(config);
+    }
+
+    private static void measure(String name, int iterations, boolean print, Task task) throws Exception {
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long result = 0;
+        long allocatedBefore = mxBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = mxBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (print) {
+            System.out.printf("%-25s %10.3f ms/op %12d bytes/op (%s)%n", name, elapsed / 1_000_000.0 / iterations,
+                    allocated / iterations, result / iterations);
+        }
+    }
+
+    /**
+     * The same candidate ordering as {@link MobileRemoteProxy#getResourceUsageInPercent()}
+     */
+    private static class HostLoadProxy extends DefaultRemoteProxy {
+
+        HostLoadProxy(RegistrationRequest request, GridRegistry registry) {
+            super(request, registry);
+        }
+
+        @Override
+        public float getResourceUsageInPercent() {
+            return HostLoad.getScore(getRemoteHost().getHost()) + super.getResourceUsageInPercent() / 100;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        int run() throws Exception;
+    }
+}
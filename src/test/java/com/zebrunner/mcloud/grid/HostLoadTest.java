@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HostLoadTest {
+
+    @Test
+    public void testCompute() {
+        Map<String, Float> scores = HostLoad.compute(
+                Map.of("idle", new int[] { 0, 10 }, "busy", new int[] { 8, 10 }, "slow", new int[] { 0, 10 }, "empty", new int[] { 0, 0 }),
+                Map.of("slow", 5000d, "idle", 100d));
+
+        Assert.assertTrue(scores.get("idle") < scores.get("slow"));
+        Assert.assertTrue(scores.get("slow") < scores.get("busy"));
+        Assert.assertEquals(scores.get("empty").floatValue(), 0f);
+        scores.values().forEach(score -> Assert.assertTrue(score >= 0 && score < 100));
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cost of the matching cycle of the hub: every queued request is matched against every node, with the validators of
+ * {@link MobileCapabilityMatcher} and with {@link MatchCache}. Requests and nodes do not change between cycles.
+ * Run with: {@code java -cp <test-classpath> com.zebrunner.mcloud.grid.MatchCacheBenchmark [queue] [nodes] [cycles]}
+ */
+public class MatchCacheBenchmark {
+
+    public static void main(String[] args) {
+        int queue = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int cycles = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        MobileCapabilityMatcher matcher = new MobileCapabilityMatcher();
+
+        List<Map<String, Object>> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> node = new HashMap<>();
+            node.put("platformName", i % 3 == 0 ? "IOS" : "ANDROID");
+            node.put("appium:platformVersion", String.valueOf(11 + i % 4));
+            node.put("appium:deviceName", "device-" + i % 10);
+            node.put("appium:udid", "udid-" + i);
+            node.put("zebrunner:deviceType", i % 5 == 0 ? "tablet" : "phone");
+            nodes.add(node);
+        }
+        List<Map<String, Object>> requests = new ArrayList<>();
+        for (int i = 0; i < queue; i++) {
+            Map<String, Object> request = new HashMap<>();
+            request.put("platformName", i % 4 == 0 ? "ANDROID" : "IOS");
+            request.put("appium:platformVersion", i % 2 == 0 ? "12-14" : "11+");
+            request.put("zebrunner:deviceType", "phone");
+            if (i % 10 == 0) {
+                request.put("appium:udid", "udid-" + i % count);
+            }
+            request.put("appium:app", "app-" + i);
+            requests.add(request);
+        }
+        System.out.printf("Queue: %s, nodes: %s, cycles: %s%n", queue, count, cycles);
+
+        for (int round = 0; round < 2; round++) {
+            // first round is warm up
+            boolean print = round == 1;
+            MatchCache.clear();
+            measure("validators", print, cycles, () -> cycle(requests, nodes, (i, request) -> matcher.matches(nodes.get(i), request)));
+            measure("match cache", print, cycles, () -> cycle(requests, nodes, (i, request) ->
+                    MatchCache.matches("node-" + i, i, request, () -> matcher.matches(nodes.get(i), request))));
+            if (print) {
+                System.out.printf("match cache hit ratio: %.4f (hits: %s, misses: %s)%n",
+                        (double) MatchCache.getHits() / (MatchCache.getHits() + MatchCache.getMisses()), MatchCache.getHits(),
+                        MatchCache.getMisses());
+            }
+        }
+    }
+
+    private static int cycle(List<Map<String, Object>> requests, List<Map<String, Object>> nodes, Match match) {
+        int matches = 0;
+        for (Map<String, Object> request : requests) {
+            for (int i = 0; i < nodes.size(); i++) {
+                if (match.matches(i, request)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static void measure(String name, boolean print, int cycles, Cycle cycle) {
+        int matches = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < cycles; i++) {
+            matches += cycle.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (print) {
+            System.out.printf("%-12s %8.3f ms per cycle (%s matches)%n", name, elapsed / 1_000_000.0 / cycles, matches / cycles);
+        }
+    }
+
+    private interface Match {
+        boolean matches(int node, Map<String, Object> request);
+    }
+
+    private interface Cycle {
+        int run();
+    }
+}
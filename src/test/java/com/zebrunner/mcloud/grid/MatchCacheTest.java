@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MatchCacheTest {
+
+    @Test
+    public void testCache() {
+        MatchCache.clear();
+        AtomicInteger calls = new AtomicInteger();
+        long version = MatchCache.nextCapabilityVersion();
+        Map<String, Object> android = new HashMap<>(Map.of("platformName", "ANDROID", "appium:platformVersion", "13"));
+
+        Assert.assertTrue(MatchCache.matches("node-1", version, android, () -> calls.incrementAndGet() > 0));
+        // capabilities not checked by the validators do not change the fingerprint
+        android.put("appium:app", "app.apk");
+        android.put("zebrunner:profileShard", "android/*/13");
+        Assert.assertTrue(MatchCache.matches("node-1", version, android, () -> calls.incrementAndGet() > 0));
+        Assert.assertEquals(calls.get(), 1);
+        Assert.assertFalse(MatchCache.matches("node-1", version, Map.of("platformName", "IOS"), () -> calls.incrementAndGet() < 0));
+        Assert.assertEquals(MatchCache.getHits(), 1);
+        Assert.assertEquals(MatchCache.getMisses(), 2);
+
+        // re-registration of the node
+        long newVersion = MatchCache.nextCapabilityVersion();
+        Assert.assertFalse(MatchCache.matches("node-1", newVersion, android, () -> calls.incrementAndGet() < 0));
+        Assert.assertEquals(calls.get(), 3);
+
+        MatchCache.invalidate("node-1");
+        Assert.assertEquals(MatchCache.size(), 0);
+        Assert.assertTrue(MatchCache.matches("node-1", newVersion, android, () -> calls.incrementAndGet() > 0));
+        Assert.assertEquals(calls.get(), 4);
+    }
+}
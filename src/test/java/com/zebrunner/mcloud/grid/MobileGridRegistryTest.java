@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openqa.grid.common.exception.GridException;
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.utils.configuration.GridHubConfiguration;
+import org.openqa.grid.web.Hub;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MobileGridRegistryTest {
+
+    @Test
+    public void testQueuedRequestRejection() throws Exception {
+        GridHubConfiguration config = new GridHubConfiguration();
+        config.registry = MobileGridRegistry.class.getName();
+        config.throwOnCapabilityNotPresent = true;
+        config.newSessionWaitTimeout = (int) Duration.ofMinutes(1).toMillis();
+        config.capabilityMatcher = new MobileCapabilityMatcher();
+        MobileGridRegistry registry = (MobileGridRegistry) new Hub(config).getRegistry();
+        // node is not started by the registry (no polling), so it is not torn down on stop
+        MobileRemoteProxy proxy = TestProxies.proxy(registry, TestProxies.capabilities("registry-1", "ANDROID"));
+        registry.getAllProxies().add(proxy);
+        try {
+            TestProxies.awaitValid(proxy);
+            TestSession busy = proxy.getNewSession(new HashMap<>(Map.of("appium:udid", "registry-1")));
+            Assert.assertNotNull(busy);
+
+            AtomicReference<GridException> error = new AtomicReference<>();
+            Thread client = new Thread(() -> {
+                try {
+                    new RequestHandler(new NewSessionRequest(registry, new HashMap<>(Map.of("appium:udid", "registry-1"))),
+                            response(), registry).process();
+                } catch (GridException e) {
+                    error.set(e);
+                }
+            });
+            client.start();
+            long deadline = System.currentTimeMillis() + Duration.ofSeconds(10).toMillis();
+            while (registry.getNewSessionRequestCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(registry.getNewSessionRequestCount(), 1);
+
+            // the node still could serve the request after the session
+            registry.checkQueued();
+            Assert.assertEquals(registry.getNewSessionRequestCount(), 1);
+
+            proxy.pending("TEST");
+            registry.checkQueued();
+            client.join(Duration.ofSeconds(10).toMillis());
+            Assert.assertFalse(client.isAlive());
+            Assert.assertNotNull(error.get());
+            Assert.assertTrue(error.get().getMessage().contains("not found in STF: [registry-1]"), error.get().getMessage());
+            Assert.assertEquals(registry.getNewSessionRequestCount(), 0);
+            Assert.assertTrue(registry.getActiveSessions().isEmpty());
+            busy.getSlot().doFinishRelease();
+        } finally {
+            registry.getAllProxies().remove(proxy);
+            registry.stop();
+        }
+    }
+
+    private static HttpServletResponse response() {
+        return (HttpServletResponse) Proxy.newProxyInstance(MobileGridRegistryTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, (instance, method, args) -> null);
+    }
+
+    private static final class NewSessionRequest extends SeleniumBasedRequest {
+
+        private NewSessionRequest(MobileGridRegistry registry, Map<String, Object> requestedCapabilities) {
+            super((HttpServletRequest) Proxy.newProxyInstance(MobileGridRegistryTest.class.getClassLoader(),
+                    new Class<?>[] { HttpServletRequest.class }, (instance, method, args) -> null),
+                    registry, RequestType.START_SESSION, requestedCapabilities);
+        }
+
+        @Override
+        public RequestType extractRequestType() {
+            return RequestType.START_SESSION;
+        }
+
+        @Override
+        public ExternalSessionKey extractSession() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Object> extractDesiredCapability() {
+            return getDesiredCapabilities();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.MutableCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MobileRemoteProxyTest {
+
+    @Test
+    public void testMultipleSlots() throws Exception {
+        MobileRemoteProxy proxy = TestProxies.proxy(TestProxies.registry(), "http://simulators:4723", 3,
+                List.of(capabilities("multi-slot-1"), capabilities("multi-slot-2")));
+        Assert.assertEquals(proxy.getUdid(), "multi-slot-1");
+        Assert.assertEquals(proxy.getUdids(), List.of("multi-slot-1", "multi-slot-2"));
+
+        TestProxies.awaitValid(proxy);
+
+        TestSession first = proxy.getNewSession(new HashMap<>(Map.of("platformName", "IOS")));
+        TestSession second = proxy.getNewSession(new HashMap<>(Map.of("platformName", "IOS")));
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertEquals(proxy.getUdid(first.getSlot()), "multi-slot-1");
+        Assert.assertEquals(proxy.getUdid(second.getSlot()), "multi-slot-2");
+        Assert.assertNull(proxy.getNewSession(new HashMap<>(Map.of("platformName", "IOS"))));
+
+        DeviceQuarantine.put("multi-slot-1", Duration.ofMinutes(1), "TEST");
+        try {
+            first.getSlot().doFinishRelease();
+            Assert.assertNull(proxy.getNewSession(new HashMap<>(Map.of("platformName", "IOS"))));
+            second.getSlot().doFinishRelease();
+            TestSession third = proxy.getNewSession(new HashMap<>(Map.of("platformName", "IOS")));
+            Assert.assertNotNull(third);
+            Assert.assertEquals(proxy.getUdid(third.getSlot()), "multi-slot-2");
+        } finally {
+            DeviceQuarantine.clear("multi-slot-1", "TEST");
+        }
+    }
+
+    @Test
+    public void testResourceUsage() throws Exception {
+        DeviceHealth.clear();
+        for (int i = 0; i < 30; i++) {
+            DeviceHealth.onSessionStart("usage-flaky", i % 3 != 0);
+        }
+        DeviceHealth.refresh();
+        try {
+            MobileRemoteProxy multiSlot = TestProxies.proxy(TestProxies.registry(), "http://usage-simulators:4723", 2,
+                    List.of(capabilities("usage-healthy-1"), capabilities("usage-flaky")));
+            MobileRemoteProxy healthy = TestProxies.proxy(TestProxies.registry(), "http://usage-simulators-2:4723", 1,
+                    List.of(capabilities("usage-healthy-2")));
+            TestProxies.awaitValid(multiSlot, healthy);
+
+            // every slot device of the idle node is scored
+            float idle = multiSlot.getResourceUsageInPercent();
+            Assert.assertTrue(idle > healthy.getResourceUsageInPercent());
+
+            TestSession session = multiSlot.getNewSession(new HashMap<>(Map.of("platformName", "IOS")));
+            Assert.assertNotNull(session);
+            Assert.assertEquals(multiSlot.getUdid(session.getSlot()), "usage-healthy-1");
+            // only the flaky device is free, the busy slot does not make the node look fully loaded
+            float partlyBusy = multiSlot.getResourceUsageInPercent();
+            Assert.assertTrue(partlyBusy > idle);
+            Assert.assertTrue(partlyBusy < 100);
+            session.getSlot().doFinishRelease();
+        } finally {
+            DeviceHealth.clear();
+        }
+    }
+
+    private static MutableCapabilities capabilities(String udid) {
+        MutableCapabilities capabilities = TestProxies.capabilities(udid, "IOS");
+        capabilities.setCapability("appium:deviceName", "iPhone 14");
+        return capabilities;
+    }
+}
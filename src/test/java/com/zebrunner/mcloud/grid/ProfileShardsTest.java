@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.selenium.MutableCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ProfileShardsTest {
+
+    @Test
+    public void testShard() {
+        // requested capabilities are not modified
+        Map<String, Object> capabilities = Map.of("platformName", "Android", "appium:platformVersion", " 12 - 14",
+                "zebrunner:deviceType", "Phone", "appium:udid", "shard-1");
+        Assert.assertEquals(ProfileShards.getShard(capabilities), "android/phone/12-14");
+        Assert.assertEquals(ProfileShards.getShard(Map.of("platformName", "IOS", "platformVersion", "ANY")), "ios/*/*");
+        Assert.assertEquals(ProfileShards.getShard(Map.of()), "*/*/*");
+    }
+
+    @Test
+    public void testSupported() {
+        List<TestSlot> slots = proxy("shard-android-13", "ANDROID", "13").getTestSlots();
+        Assert.assertTrue(ProfileShards.isSupported(slots, "android/phone/12-14"));
+        Assert.assertTrue(ProfileShards.isSupported(slots, "*/*/*"));
+        Assert.assertTrue(ProfileShards.isSupported(slots, "android/*/13+"));
+        Assert.assertFalse(ProfileShards.isSupported(slots, "ios/phone/*"));
+        Assert.assertFalse(ProfileShards.isSupported(slots, "android/tablet/*"));
+        Assert.assertFalse(ProfileShards.isSupported(slots, "android/phone/14"));
+    }
+
+    private static MobileRemoteProxy proxy(String udid, String platformName, String platformVersion) {
+        MutableCapabilities capabilities = TestProxies.capabilities(udid, platformName);
+        capabilities.setCapability("appium:platformVersion", platformVersion);
+        capabilities.setCapability("zebrunner:deviceType", "Phone");
+        return TestProxies.proxy(TestProxies.registry(), capabilities);
+    }
+}
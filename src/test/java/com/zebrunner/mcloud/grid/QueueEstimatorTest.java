@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.ProxySet;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class QueueEstimatorTest {
+
+    @Test
+    public void testEstimate() throws Exception {
+        ProxySet proxies = new ProxySet(false);
+        List<DesiredCapabilities> queue = new ArrayList<>();
+        GridRegistry registry = TestProxies.registry(proxies, queue);
+        MobileRemoteProxy android1 = TestProxies.proxy(registry, TestProxies.capabilities("estimate-android-1", "ANDROID"));
+        MobileRemoteProxy android2 = TestProxies.proxy(registry, TestProxies.capabilities("estimate-android-2", "ANDROID"));
+        proxies.add(android1);
+        proxies.add(android2);
+        proxies.add(TestProxies.proxy(registry, TestProxies.capabilities("estimate-ios-1", "IOS")));
+        CapabilityIndex.invalidate();
+        QueueEstimator.clear();
+        TestProxies.awaitValid(android1, android2);
+
+        Map<String, Object> android = Map.of("platformName", "ANDROID");
+        QueueEstimator.Estimate estimate = QueueEstimator.estimate(registry, android);
+        Assert.assertEquals(estimate.free, 2);
+        Assert.assertEquals(estimate.eta, Long.valueOf(0));
+        Assert.assertNull(estimate.sessionDuration);
+
+        QueueEstimator.onSessionEnd(android1.getTestSlots().get(0).getCapabilities(), 50_000);
+        QueueEstimator.onSessionEnd(android1.getTestSlots().get(0).getCapabilities(), 70_000);
+        queue.add(new DesiredCapabilities(android));
+        queue.add(new DesiredCapabilities(Map.of("platformName", "IOS")));
+        queue.add(new DesiredCapabilities(android));
+        DeviceQuarantine.put("estimate-android-2", Duration.ofMinutes(1), "TEST");
+        try {
+            estimate = QueueEstimator.estimate(registry, android);
+            Assert.assertEquals(estimate.free, 1);
+            Assert.assertEquals(estimate.quarantined, 1);
+            Assert.assertEquals(estimate.queued, 3);
+            Assert.assertEquals(estimate.position, 2);
+            Assert.assertEquals(estimate.sessionDuration, Long.valueOf(60_000));
+            // 2 requests after the free slot are served by the device with 60 seconds sessions
+            Assert.assertEquals(estimate.eta, Long.valueOf(90_000));
+
+            TestSession session = android1.getNewSession(new HashMap<>(android));
+            Assert.assertNotNull(session);
+            estimate = QueueEstimator.estimate(registry, android);
+            Assert.assertEquals(estimate.free, 0);
+            Assert.assertEquals(estimate.busy, 1);
+            Assert.assertEquals(estimate.eta, Long.valueOf(150_000));
+            session.getSlot().doFinishRelease();
+        } finally {
+            DeviceQuarantine.clear("estimate-android-2", "TEST");
+        }
+    }
+}
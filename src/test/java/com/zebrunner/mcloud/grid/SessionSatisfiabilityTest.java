@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.selenium.MutableCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SessionSatisfiabilityTest {
+
+    @Test
+    public void testCheck() throws Exception {
+        MobileRemoteProxy proxy = proxy("satisfiability-1", "13");
+        List<RemoteProxy> proxies = List.of(proxy);
+
+        Assert.assertTrue(SessionSatisfiability.check(proxies, Map.of("platformName", "ANDROID", "appium:platformVersion", "12-14"))
+                .isEmpty());
+        Assert.assertEquals(SessionSatisfiability.check(List.of(), Map.of("platformName", "ANDROID")),
+                Optional.of("No nodes are registered."));
+
+        Optional<String> diagnostic = SessionSatisfiability.check(proxies, Map.of("platformName", "ANDROID", "appium:platformVersion", "13.x"));
+        Assert.assertTrue(diagnostic.orElseThrow().contains("PlatformVersionValidator - 1"), diagnostic.get());
+        diagnostic = SessionSatisfiability.check(proxies, Map.of("platformName", "ANDROID", "appium:udid", "unknown"));
+        Assert.assertTrue(diagnostic.orElseThrow().contains("UDIDValidator - 1"), diagnostic.get());
+
+        // quarantined device could serve the request later
+        DeviceQuarantine.put("satisfiability-1", Duration.ofMinutes(1), "TEST");
+        try {
+            Assert.assertTrue(SessionSatisfiability.check(proxies, Map.of("appium:udid", "satisfiability-1")).isEmpty());
+        } finally {
+            DeviceQuarantine.clear("satisfiability-1", "TEST");
+        }
+
+        TestProxies.awaitValid(proxy);
+        proxy.pending("TEST");
+        diagnostic = SessionSatisfiability.check(proxies, Map.of("appium:udid", "satisfiability-1"));
+        Assert.assertTrue(diagnostic.orElseThrow().contains("not found in STF: [satisfiability-1]"), diagnostic.get());
+    }
+
+    private static MobileRemoteProxy proxy(String udid, String platformVersion) {
+        MutableCapabilities capabilities = TestProxies.capabilities(udid, "ANDROID");
+        capabilities.setCapability("appium:platformVersion", platformVersion);
+        return TestProxies.proxy(TestProxies.registry(), capabilities);
+    }
+}
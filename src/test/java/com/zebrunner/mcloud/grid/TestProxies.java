@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.ProxySet;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+import org.openqa.selenium.MutableCapabilities;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.Assert;
+
+/**
+ * Nodes of the tests: {@link MobileRemoteProxy} registered in the stub registry without the hub
+ */
+final class TestProxies {
+
+    private TestProxies() {
+        //hide
+    }
+
+    /**
+     * @return registry without nodes and queued requests
+     */
+    static GridRegistry registry() {
+        return registry(new ProxySet(false), List.of());
+    }
+
+    /**
+     * @param proxies nodes returned by the registry
+     * @param queue requested capabilities of the queued requests
+     * @return registry, other methods return null
+     */
+    static GridRegistry registry(ProxySet proxies, List<DesiredCapabilities> queue) {
+        return (GridRegistry) Proxy.newProxyInstance(TestProxies.class.getClassLoader(),
+                new Class<?>[] { GridRegistry.class },
+                (instance, method, arguments) -> {
+                    switch (method.getName()) {
+                    case "getAllProxies":
+                        return proxies;
+                    case "getDesiredCapabilities":
+                        return queue;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * @param udid udid (and device name) of the device
+     * @param platformName platform name
+     * @return capabilities of the slot with one instance
+     */
+    static MutableCapabilities capabilities(String udid, String platformName) {
+        MutableCapabilities capabilities = new MutableCapabilities();
+        capabilities.setCapability("platformName", platformName);
+        capabilities.setCapability("appium:udid", udid);
+        capabilities.setCapability("appium:deviceName", udid);
+        capabilities.setCapability("maxInstances", 1);
+        return capabilities;
+    }
+
+    /**
+     * @param registry registry
+     * @param capabilities capabilities of the single slot, the node url is {@code http://<udid>:4723}
+     * @return node
+     */
+    static MobileRemoteProxy proxy(GridRegistry registry, MutableCapabilities capabilities) {
+        return proxy(registry, "http://" + capabilities.getCapability("appium:udid") + ":4723", 1, List.of(capabilities));
+    }
+
+    /**
+     * @param registry registry
+     * @param remoteHost url of the node
+     * @param maxSession max number of sessions of the node
+     * @param capabilities capabilities of the slots
+     * @return node
+     */
+    static MobileRemoteProxy proxy(GridRegistry registry, String remoteHost, int maxSession, List<MutableCapabilities> capabilities) {
+        GridNodeConfiguration config = new GridNodeConfiguration();
+        config.remoteHost = remoteHost;
+        config.maxSession = maxSession;
+        config.capabilities = new ArrayList<>(capabilities);
+        return new MobileRemoteProxy(new RegistrationRequest(config), registry);
+    }
+
+    /**
+     * Wait (at most 10 seconds) until the hub bootstrap is finished and the nodes are validated
+     *
+     * @param proxies nodes
+     * @throws InterruptedException if interrupted while waiting
+     * @throws AssertionError if the nodes are not validated in time
+     */
+    static void awaitValid(MobileRemoteProxy... proxies) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Duration.ofSeconds(10).toMillis();
+        while (!isValid(proxies)) {
+            if (System.currentTimeMillis() >= deadline) {
+                Assert.fail("Nodes are not validated in 10 seconds.");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static boolean isValid(MobileRemoteProxy... proxies) {
+        if (!HubBootstrap.isReady()) {
+            return false;
+        }
+        for (MobileRemoteProxy proxy : proxies) {
+            if (proxy.getValidationState() != MobileRemoteProxy.ValidationState.VALID) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
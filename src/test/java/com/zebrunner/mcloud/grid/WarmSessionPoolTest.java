@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid;
+
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+public class WarmSessionPoolTest {
+
+    private static final Map<String, Object> PROFILE = Map.of("platformName", "ANDROID", "appium:automationName", "UiAutomator2");
+
+    @Test
+    public void testCompatible() {
+        Assert.assertTrue(WarmSessionPool.isCompatible(PROFILE,
+                Map.of("platformName", "Android", "automationName", "uiautomator2", "appium:udid", "emulator-5554",
+                        "zebrunner:slotCapabilities", Map.of())));
+        Assert.assertFalse(WarmSessionPool.isCompatible(PROFILE, Map.of("platformName", "Android")));
+        Assert.assertFalse(WarmSessionPool.isCompatible(PROFILE,
+                Map.of("platformName", "Android", "appium:automationName", "UiAutomator2", "appium:app", "https://builds/app.apk")));
+    }
+
+    @Test
+    public void testHandout() throws Exception {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        HttpServer appium = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        appium.createContext("/wd/hub/session", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                    + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = "POST".equals(exchange.getRequestMethod())
+                    ? "{\"value\": {\"sessionId\": \"warm-1\", \"capabilities\": {\"platformName\": \"Android\"}}}".getBytes(StandardCharsets.UTF_8)
+                    : "{\"value\": null}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        appium.start();
+        try {
+            URL remoteHost = new URL("http://localhost:" + appium.getAddress().getPort() + "/wd/hub");
+            WarmSessionPool.WarmSession warmSession = new WarmSessionPool.WarmSession("proxy", "emulator-5554", remoteHost, 0, PROFILE);
+            WarmSessionPool.start(warmSession);
+            Assert.assertEquals(warmSession.getSessionId(), "warm-1");
+            Assert.assertEquals(requests.size(), 1);
+            Assert.assertTrue(requests.get(0).contains("\"appium:udid\":\"emulator-5554\""));
+            Assert.assertTrue(requests.get(0).contains("\"appium:newCommandTimeout\""));
+
+            AtomicInteger forwarded = new AtomicInteger();
+            HttpClient client = WarmSessionPool.wrap(request -> {
+                forwarded.incrementAndGet();
+                return new HttpResponse();
+            });
+            WarmSessionPool.handout(warmSession, Map.of("zebrunner:slotCapabilities", Map.of("udid", "emulator-5554", "port", 4723)));
+            HttpResponse response = client.execute(new HttpRequest(HttpMethod.POST, remoteHost + "/session"));
+            Assert.assertEquals(response.getStatus(), 200);
+            JsonNode capabilities = new ObjectMapper().readTree(response.getContentString()).path("value").path("capabilities");
+            Assert.assertEquals(capabilities.path("platformName").textValue(), "Android");
+            Assert.assertEquals(capabilities.path("zebrunner:slotCapabilities").path("udid").textValue(), "emulator-5554");
+            Assert.assertEquals(capabilities.path("zebrunner:slotCapabilities").path("port").intValue(), 4723);
+            Assert.assertTrue(response.getContentString().contains("warm-1"));
+            Assert.assertEquals(forwarded.get(), 0);
+
+            client.execute(new HttpRequest(HttpMethod.POST, remoteHost + "/session"));
+            Assert.assertEquals(forwarded.get(), 1);
+
+            WarmSessionPool.stop(warmSession);
+            Assert.assertEquals(requests.size(), 2);
+            Assert.assertTrue(requests.get(1).startsWith("DELETE /wd/hub/session/warm-1"));
+        } finally {
+            appium.stop(0);
+        }
+    }
+}
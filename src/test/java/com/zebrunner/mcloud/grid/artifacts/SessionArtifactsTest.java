@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.artifacts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SessionArtifactsTest {
+
+    @Test
+    public void testWriteVideo() throws Exception {
+        byte[] video = new byte[300_000];
+        new Random(42).nextBytes(video);
+        Path dir = Files.createTempDirectory("artifacts");
+        Path source = dir.resolve(".video.json");
+        Files.writeString(source, "{\"sessionId\": \"s1\", \"meta\": {\"a\": [1, 2]}, \"value\": \""
+                + Base64.getEncoder().encodeToString(video) + "\"}");
+
+        SessionArtifacts.writeVideo(source, dir.resolve("video.mp4"));
+        Assert.assertEquals(Files.readAllBytes(dir.resolve("video.mp4")), video);
+    }
+
+    @Test
+    public void testWriteLog() throws Exception {
+        Path dir = Files.createTempDirectory("artifacts");
+        Path source = dir.resolve(".logcat.json");
+        Files.writeString(source, "{\"value\": ["
+                + "{\"timestamp\": 1700000000000, \"level\": \"ALL\", \"message\": \"first\"},"
+                + "{\"level\": \"ALL\", \"message\": \"second\", \"extra\": {\"x\": 1}, \"timestamp\": 1700000000001}"
+                + "]}");
+
+        SessionArtifacts.writeLog(source, dir.resolve("logcat.log.gz"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(dir.resolve("logcat.log.gz")))) {
+            in.transferTo(out);
+        }
+        Assert.assertEquals(out.toString(StandardCharsets.UTF_8), "1700000000000 ALL first\n1700000000001 ALL second\n");
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.autoscaling;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.ProxySet;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AutoscalerTest {
+    private static final String ANDROID = "android/13//phone";
+    private static final String IOS = "ios/16//phone";
+    private static final Map<String, Map<String, Object>> PROFILES = Map.of(
+            ANDROID, Map.of("platformName", "Android", "appium:platformVersion", "13", "zebrunner:deviceType", "phone"),
+            IOS, Map.of("platformName", "iOS", "appium:platformVersion", "16", "zebrunner:deviceType", "phone"));
+
+    private StubDeviceProvider provider;
+
+    @BeforeMethod
+    public void setUp() {
+        Autoscaler.clear();
+        provider = new StubDeviceProvider();
+    }
+
+    @Test
+    public void testLaunchForQueue() {
+        Autoscaler.scale(provider, Runnable::run, Map.of(ANDROID, 3, IOS, 2), PROFILES, Map.of(ANDROID, 1), Map.of(), 0);
+        // ios is not supported by the provider
+        Assert.assertEquals(provider.launched, List.of("emulator-1", "emulator-2"));
+
+        // devices are still warming up
+        Autoscaler.scale(provider, Runnable::run, Map.of(ANDROID, 3), PROFILES, Map.of(ANDROID, 1), Map.of(), 1000);
+        Assert.assertEquals(provider.launched.size(), 2);
+        Assert.assertEquals(Autoscaler.getDevices(), 2);
+    }
+
+    @Test
+    public void testLaunchWithoutNodes() {
+        GridRegistry registry = registry(List.of(new DesiredCapabilities(PROFILES.get(ANDROID)), new DesiredCapabilities(PROFILES.get(IOS))));
+        Autoscaler.tick(provider, Runnable::run, registry);
+        Assert.assertEquals(provider.launched, List.of("emulator-1"));
+    }
+
+    @Test
+    public void testMaxDevices() {
+        Autoscaler.scale(provider, Runnable::run, Map.of(ANDROID, 100), PROFILES, Map.of(), Map.of(), 0);
+        Assert.assertEquals(provider.launched.size(), 4);
+    }
+
+    @Test
+    public void testIdleStop() {
+        Autoscaler.scale(provider, Runnable::run, Map.of(ANDROID, 1), PROFILES, Map.of(), Map.of(), 0);
+        Assert.assertEquals(provider.launched, List.of("emulator-1"));
+
+        long idleTimeout = Duration.ofSeconds(300).toMillis();
+        Autoscaler.scale(provider, Runnable::run, Map.of(), PROFILES, Map.of(), Map.of("emulator-1", true), 1000);
+        Autoscaler.scale(provider, Runnable::run, Map.of(), PROFILES, Map.of(), Map.of("emulator-1", false), 2000);
+        Autoscaler.scale(provider, Runnable::run, Map.of(), PROFILES, Map.of(), Map.of("emulator-1", false), 2000 + idleTimeout);
+        Assert.assertTrue(provider.stopped.isEmpty());
+        // session resets the idle time
+        Autoscaler.scale(provider, Runnable::run, Map.of(), PROFILES, Map.of(), Map.of("emulator-1", true), 3000 + idleTimeout);
+        Autoscaler.scale(provider, Runnable::run, Map.of(), PROFILES, Map.of(), Map.of("emulator-1", false), 4000 + idleTimeout);
+        Autoscaler.scale(provider, Runnable::run, Map.of(), PROFILES, Map.of(), Map.of("emulator-1", false), 5000 + 2 * idleTimeout);
+        Assert.assertEquals(provider.stopped, List.of("emulator-1"));
+        Assert.assertEquals(Autoscaler.getDevices(), 0);
+    }
+
+    @Test
+    public void testWarmupTimeout() {
+        Autoscaler.scale(provider, Runnable::run, Map.of(ANDROID, 1), PROFILES, Map.of(), Map.of(), 0);
+        long warmupTimeout = Duration.ofSeconds(600).toMillis();
+        Autoscaler.scale(provider, Runnable::run, Map.of(ANDROID, 1), PROFILES, Map.of(), Map.of(), warmupTimeout + 1);
+        // the device is stopped and the new one is launched for the same request
+        Assert.assertEquals(provider.stopped, List.of("emulator-1"));
+        Assert.assertEquals(provider.launched, List.of("emulator-1", "emulator-2"));
+    }
+
+    @Test
+    public void testProvider() {
+        Assert.assertTrue(Autoscaler.findProvider("stub").orElseThrow() instanceof StubDeviceProvider);
+        Assert.assertTrue(Autoscaler.findProvider("command").orElseThrow() instanceof CommandDeviceProvider);
+        Assert.assertTrue(Autoscaler.findProvider("unknown").isEmpty());
+    }
+
+    @Test
+    public void testCommandProvider() throws Exception {
+        CommandDeviceProvider command = new CommandDeviceProvider("echo starting $PLATFORM_NAME; echo emulator-$PLATFORM_VERSION",
+                "test \"$DEVICE_UDID\" = emulator-13", Duration.ofSeconds(10));
+        Assert.assertEquals(command.launch(PROFILES.get(ANDROID)), "emulator-13");
+        command.stop("emulator-13");
+        Assert.assertThrows(IOException.class, () -> command.stop("emulator-14"));
+    }
+
+    private static GridRegistry registry(List<DesiredCapabilities> queue) {
+        ProxySet proxies = new ProxySet(false);
+        return (GridRegistry) Proxy.newProxyInstance(AutoscalerTest.class.getClassLoader(), new Class<?>[] { GridRegistry.class },
+                (instance, method, arguments) -> {
+                    switch (method.getName()) {
+                    case "getAllProxies":
+                        return proxies;
+                    case "getDesiredCapabilities":
+                        return queue;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.autoscaling;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Provider of the tests, "launches" devices with udids emulator-1, emulator-2...
+ */
+public class StubDeviceProvider implements VirtualDeviceProvider {
+    final List<String> launched = new CopyOnWriteArrayList<>();
+    final List<String> stopped = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public boolean supports(Map<String, Object> capabilities) {
+        return "android".equalsIgnoreCase(String.valueOf(capabilities.get("platformName")));
+    }
+
+    @Override
+    public String launch(Map<String, Object> capabilities) {
+        String udid = "emulator-" + (launched.size() + 1);
+        launched.add(udid);
+        return udid;
+    }
+
+    @Override
+    public void stop(String udid) {
+        stopped.add(udid);
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class GridEventsTest {
+
+    @Test
+    public void testReadFromCursor() {
+        long cursor = GridEvents.getLastEventId();
+        GridEvents.publish(GridEventType.NODE_REGISTERED, "udid1");
+        GridEvents.publish(GridEventType.SESSION_STARTED, "udid1");
+
+        List<GridStateEvent> events = new ArrayList<>();
+        Assert.assertTrue(GridEvents.read(cursor, events));
+        Assert.assertEquals(events.size(), 2);
+        Assert.assertEquals(events.get(0).getType(), GridEventType.NODE_REGISTERED);
+        Assert.assertEquals(events.get(1).getType(), GridEventType.SESSION_STARTED);
+        Assert.assertEquals(events.get(1).getId(), cursor + 2);
+
+        events.clear();
+        Assert.assertTrue(GridEvents.read(cursor + 2, events));
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testSlowSubscriberLosesPosition() {
+        long cursor = GridEvents.getLastEventId();
+        for (int i = 0; i < 2000; i++) {
+            GridEvents.publish(GridEventType.DEVICE_QUARANTINED, "udid2");
+        }
+        Assert.assertFalse(GridEvents.read(cursor, new ArrayList<>()));
+        Assert.assertFalse(GridEvents.read(GridEvents.getLastEventId() + 1, new ArrayList<>()), "Unknown event id should require resync");
+    }
+
+    @Test
+    public void testAwaitReturnsOnPublish() throws InterruptedException {
+        long cursor = GridEvents.getLastEventId();
+        new Thread(() -> GridEvents.publish(GridEventType.SESSION_ENDED, "udid3")).start();
+        long start = System.currentTimeMillis();
+        GridEvents.await(cursor, 10_000);
+        Assert.assertTrue(System.currentTimeMillis() - start < 10_000);
+        Assert.assertTrue(GridEvents.getLastEventId() > cursor);
+    }
+
+    @Test
+    public void testJson() {
+        GridEvents.publish(GridEventType.STF_RESERVATION_FAILED, "udid4");
+        List<GridStateEvent> events = new ArrayList<>();
+        GridEvents.read(GridEvents.getLastEventId() - 1, events);
+        Assert.assertTrue(events.get(0).toJson().contains("\"type\":\"STF_RESERVATION_FAILED\""));
+        Assert.assertTrue(events.get(0).toJson().contains("\"udid\":\"udid4\""));
+    }
+}
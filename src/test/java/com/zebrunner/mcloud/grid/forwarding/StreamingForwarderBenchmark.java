@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.forwarding;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Peak heap growth while 16 concurrent 10MB responses are forwarded by {@link StreamingForwarder} from the fake node of
+ * {@link StreamingForwarderTest}. Depends on the GC, so it is not a test.
+ * Run with: {@code java -cp <test-classpath> com.zebrunner.mcloud.grid.forwarding.StreamingForwarderBenchmark [responses]}
+ */
+public class StreamingForwarderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        StreamingForwarderTest forwarder = new StreamingForwarderTest();
+        forwarder.setUp();
+        try {
+            // warm up connections and buffers
+            forwarder.forwardAll(16, new AtomicInteger());
+
+            List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .collect(Collectors.toList());
+            System.gc();
+            long before = heap.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+            heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+            List<Long> forwarded = forwarder.forwardAll(count, new AtomicInteger());
+
+            long peak = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() - before;
+            System.out.printf("Streamed %d x %d MB, peak heap growth %d MB%n", forwarded.size(),
+                    forwarded.stream().mapToLong(Long::longValue).max().orElse(0) >> 20, peak >> 20);
+        } finally {
+            forwarder.tearDown();
+        }
+    }
+}
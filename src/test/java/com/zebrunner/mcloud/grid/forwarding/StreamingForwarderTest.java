@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.forwarding;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
+import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+import org.openqa.selenium.MutableCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent 10MB responses (screenshots, screen recordings) forwarded from the fake node are streamed through the pooled buffers.
+ * Heap usage is measured by {@link StreamingForwarderBenchmark}.
+ */
+public class StreamingForwarderTest {
+    private static final int CONCURRENCY = 16;
+    private static final int PAYLOAD_SIZE = 10 * 1024 * 1024;
+    private static final byte[] CHUNK = new byte[1024 * 1024];
+
+    private HttpServer node;
+    private ExecutorService executor;
+    private TestSession session;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        node = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        node.createContext("/wd/hub/session", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, PAYLOAD_SIZE);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < PAYLOAD_SIZE / CHUNK.length; i++) {
+                    out.write(CHUNK);
+                }
+            }
+        });
+        node.setExecutor(Executors.newFixedThreadPool(CONCURRENCY));
+        node.start();
+        executor = Executors.newFixedThreadPool(CONCURRENCY);
+
+        GridNodeConfiguration config = new GridNodeConfiguration();
+        config.remoteHost = "http://localhost:" + node.getAddress().getPort();
+        config.browserTimeout = 60;
+        MutableCapabilities capabilities = new MutableCapabilities();
+        capabilities.setCapability("browserName", "test");
+        config.capabilities = new ArrayList<>(List.of(capabilities));
+        // registry without the hub and the matcher thread
+        GridRegistry registry = (GridRegistry) Proxy.newProxyInstance(StreamingForwarderTest.class.getClassLoader(),
+                new Class<?>[] { GridRegistry.class }, (instance, method, args) -> null);
+        DefaultRemoteProxy proxy = new DefaultRemoteProxy(new RegistrationRequest(config), registry);
+        session = proxy.getTestSlots().get(0).getNewSession(new HashMap<>(Map.of("browserName", "test")));
+        session.setExternalKey(new ExternalSessionKey("load-test"));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown() {
+        executor.shutdownNow();
+        node.stop(0);
+        ((ExecutorService) node.getExecutor()).shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentLargeResponses() throws Exception {
+        AtomicInteger largestWrite = new AtomicInteger();
+        List<Long> forwarded = forwardAll(CONCURRENCY * 2, largestWrite);
+
+        forwarded.forEach(size -> Assert.assertEquals(size.longValue(), PAYLOAD_SIZE));
+        // the body is copied to the client through the pooled buffers, not read into the heap as a whole
+        Assert.assertTrue(largestWrite.get() <= StreamingForwarder.getBufferPool().getBufferSize(), "Largest write: " + largestWrite);
+        // buffers are returned to the pool, at most one buffer per forwarding thread is allocated
+        Assert.assertTrue(StreamingForwarder.getBufferPool().available() > 0);
+        Assert.assertTrue(StreamingForwarder.getBufferPool().available() <= CONCURRENCY);
+    }
+
+    /**
+     * @param count number of the forwarded responses, {@code CONCURRENCY} at a time
+     * @param largestWrite largest write to the client output stream
+     * @return number of the bytes written to the client per response
+     */
+    List<Long> forwardAll(int count, AtomicInteger largestWrite) throws Exception {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(() -> {
+                AtomicLong written = new AtomicLong();
+                StreamingForwarder.forward(session, new WebDriverRequest(request("/session/load-test/screenshot"), null),
+                        response(written, largestWrite));
+                return written.get();
+            }));
+        }
+        List<Long> result = new ArrayList<>();
+        for (Future<Long> future : futures) {
+            result.add(future.get());
+        }
+        return result;
+    }
+
+    private static HttpServletRequest request(String pathInfo) {
+        ServletInputStream body = new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return true;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+
+            @Override
+            public int read() {
+                return -1;
+            }
+        };
+        return (HttpServletRequest) Proxy.newProxyInstance(StreamingForwarderTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (instance, method, args) -> {
+                    switch (method.getName()) {
+                    case "getMethod":
+                        return "GET";
+                    case "getServletPath":
+                        return "/wd/hub";
+                    case "getContextPath":
+                        return "";
+                    case "getPathInfo":
+                        return pathInfo;
+                    case "getRequestURI":
+                        return "/wd/hub" + pathInfo;
+                    case "getInputStream":
+                        return body;
+                    case "getHeaderNames":
+                        return Collections.emptyEnumeration();
+                    case "getContentLength":
+                        return 0;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    private static HttpServletResponse response(AtomicLong written, AtomicInteger largestWrite) {
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                written.incrementAndGet();
+                largestWrite.accumulateAndGet(1, Math::max);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written.addAndGet(len);
+                largestWrite.accumulateAndGet(len, Math::max);
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(StreamingForwarderTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, (instance, method, args) -> {
+                    switch (method.getName()) {
+                    case "getOutputStream":
+                        return out;
+                    case "isCommitted":
+                    case "containsHeader":
+                        return false;
+                    case "getStatus":
+                        return 200;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.owlike.genson.Genson;
+import com.zebrunner.mcloud.grid.models.stf.Devices;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
+
+/**
+ * Compares retained size of the STF device list as {@link Devices} (Genson object mapping) and as {@link STFDeviceRecord} list.
+ * Size is estimated by walking the object graph (64-bit JVM with compressed oops), shared instances are counted once.
+ */
+public class STFDeviceFootprintTest {
+    private static final int DEVICES = 1000;
+
+    @Test
+    public void testFootprint() throws Exception {
+        byte[] payload = STFDevicesPayload.build(DEVICES);
+        Devices devices = new Genson.Builder().useTimeInMillis(true).create()
+                .deserialize(new ByteArrayInputStream(payload), Devices.class);
+        List<STFDeviceRecord> records = STFDevicesParser.parse(new ByteArrayInputStream(payload));
+
+        long pojoSize = sizeOf(devices);
+        long recordSize = sizeOf(records);
+        Assert.assertEquals(records.size(), devices.getDevices().size());
+        Assert.assertTrue(recordSize * 5 < pojoSize, String.format("POJO: %s, records: %s", pojoSize, recordSize));
+    }
+
+    private static long sizeOf(Object root) throws IllegalAccessException {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> queue = new ArrayDeque<>();
+        queue.add(root);
+        long size = 0;
+        while (!queue.isEmpty()) {
+            Object object = queue.poll();
+            if (!visited.add(object)) {
+                continue;
+            }
+            Class<?> type = object.getClass();
+            if (object instanceof String) {
+                size += align(24) + align(16 + ((String) object).length());
+            } else if (object instanceof Number || object instanceof Boolean) {
+                size += 16;
+            } else if (object instanceof Map) {
+                // HashMap: object, table and one node per entry
+                Map<?, ?> map = (Map<?, ?>) object;
+                size += 48 + align(16 + 4L * Math.max(16, Integer.highestOneBit(map.size() * 2))) + 32L * map.size();
+                map.forEach((key, value) -> {
+                    addIfNotNull(queue, key);
+                    addIfNotNull(queue, value);
+                });
+            } else if (object instanceof Collection) {
+                // ArrayList: object and elements array
+                Collection<?> collection = (Collection<?>) object;
+                size += 24 + align(16 + 4L * Math.max(10, collection.size()));
+                collection.forEach(value -> addIfNotNull(queue, value));
+            } else if (type.isEnum()) {
+                // enum constants are shared
+                continue;
+            } else {
+                long objectSize = 12;
+                for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        objectSize += fieldSize(field.getType());
+                        if (!field.getType().isPrimitive()) {
+                            field.setAccessible(true);
+                            addIfNotNull(queue, field.get(object));
+                        }
+                    }
+                }
+                size += align(objectSize);
+            }
+        }
+        return size;
+    }
+
+    private static void addIfNotNull(Deque<Object> queue, Object value) {
+        if (value != null) {
+            queue.add(value);
+        }
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == boolean.class || type == byte.class) {
+            return 1;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 4;
+    }
+
+    private static long align(long size) {
+        return (size + 7) / 8 * 8;
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+
+import com.owlike.genson.Genson;
+import com.zebrunner.mcloud.grid.models.stf.Devices;
+
+/**
+ * Compares latency and allocation of the STF devices response parsing: Genson object mapping (used before),
+ * streaming parsing of all devices and streaming search of one device (stops when the device is found).
+ * Run with: {@code java -cp <test-classpath> com.zebrunner.mcloud.grid.integration.client.STFDevicesParserBenchmark [devices] [iterations]}
+ */
+public class STFDevicesParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        byte[] payload = STFDevicesPayload.build(count);
+        Genson genson = new Genson.Builder().useTimeInMillis(true).create();
+        String middle = STFDevicesPayload.serial(count / 2);
+
+        System.out.printf("Payload: %s devices, %s KB%n", count, payload.length / 1024);
+        for (int round = 0; round < 2; round++) {
+            // first round is warm up
+            boolean print = round == 1;
+            measure("genson Devices", iterations, print,
+                    () -> genson.deserialize(new ByteArrayInputStream(payload), Devices.class).getDevices().size());
+            measure("streaming parse", iterations, print,
+                    () -> STFDevicesParser.parse(new ByteArrayInputStream(payload)).size());
+            measure("streaming find (middle)", iterations, print,
+                    () -> STFDevicesParser.find(new ByteArrayInputStream(payload), middle).isPresent() ? 1 : 0);
+        }
+    }
+
+    private static void measure(String name, int iterations, boolean print, Task task) throws Exception {
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long result = 0;
+        long allocatedBefore = mxBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = mxBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (print) {
+            System.out.printf("%-25s %10.3f ms/op %12d bytes/op (%s)%n", name, elapsed / 1_000_000.0 / iterations,
+                    allocated / iterations, result / iterations);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Optional;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceRecord;
+import com.zebrunner.mcloud.grid.models.stf.STFDeviceStatus;
+
+public class STFDevicesParserTest {
+
+    @Test
+    public void testParse() throws Exception {
+        List<STFDeviceRecord> devices = STFDevicesParser.parse(new ByteArrayInputStream(STFDevicesPayload.build(10)));
+        Assert.assertEquals(devices.size(), 10);
+
+        STFDeviceRecord reserved = devices.get(3);
+        Assert.assertEquals(reserved.getSerial(), "device-0003");
+        Assert.assertEquals(reserved.getStatus(), STFDeviceStatus.ONLINE);
+        Assert.assertEquals(reserved.getModel(), "SM-G965F");
+        Assert.assertSame(reserved.getModel(), devices.get(4).getModel());
+        Assert.assertTrue(reserved.isPresent());
+        Assert.assertTrue(reserved.isReady());
+        Assert.assertEquals(reserved.getOwnerName(), "automation");
+        Assert.assertEquals(reserved.getRemoteConnectUrl(), "stf.example.com:7404");
+        Assert.assertEquals(reserved.getBatteryLevel(), 100f);
+        Assert.assertEquals(reserved.getBatteryTemperature(), 27.5f);
+
+        STFDeviceRecord free = devices.get(4);
+        Assert.assertNull(free.getOwnerName());
+        Assert.assertNull(free.getRemoteConnectUrl());
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        byte[] payload = STFDevicesPayload.build(10);
+        Optional<STFDeviceRecord> device = STFDevicesParser.find(new ByteArrayInputStream(payload), "device-0006");
+        Assert.assertTrue(device.isPresent());
+        Assert.assertEquals(device.get().getOwnerName(), "automation");
+        Assert.assertTrue(STFDevicesParser.find(new ByteArrayInputStream(payload), "unknown").isEmpty());
+    }
+
+    @Test
+    public void testMissingFields() throws Exception {
+        String payload = "{\"success\":true,\"devices\":[{\"serial\":\"device-1\",\"owner\":null,\"status\":null}]}";
+        STFDeviceRecord device = STFDevicesParser.parse(new ByteArrayInputStream(payload.getBytes())).get(0);
+        Assert.assertEquals(device.getStatus(), STFDeviceStatus.MISSING);
+        Assert.assertFalse(device.isPresent());
+        Assert.assertTrue(STFDevicesParser.parse(new ByteArrayInputStream("{\"success\":false}".getBytes())).isEmpty());
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * STF {@code /api/v1/devices} response built from the captured device ({@code stf/device.json}).
+ */
+final class STFDevicesPayload {
+
+    private STFDevicesPayload() {
+        //hide
+    }
+
+    /**
+     * @param count amount of devices, every third device is reserved by the 'automation' user with remote connect
+     * @return response body
+     */
+    static byte[] build(int count) throws IOException {
+        String template;
+        try (InputStream stream = STFDevicesPayload.class.getResourceAsStream("/stf/device.json")) {
+            template = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        StringBuilder payload = new StringBuilder("{\"success\":true,\"devices\":[");
+        for (int i = 0; i < count; i++) {
+            boolean reserved = i % 3 == 0;
+            String serial = serial(i);
+            payload.append(i == 0 ? "" : ",")
+                    .append(template.replace("%SERIAL%", serial)
+                            .replace("%OWNER%", reserved ? "{\"email\":\"automation@zebrunner.com\",\"name\":\"automation\",\"privilege\":\"user\"}" : "null")
+                            .replace("%REMOTE_CONNECT%", String.valueOf(reserved))
+                            .replace("%REMOTE_CONNECT_URL%", reserved ? "\"stf.example.com:" + (7401 + i) + "\"" : "null"));
+        }
+        return payload.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String serial(int index) {
+        return String.format("device-%04d", index);
+    }
+}
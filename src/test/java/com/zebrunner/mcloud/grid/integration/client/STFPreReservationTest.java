@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.integration.client;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.zebrunner.mcloud.grid.util.CapabilityUtils;
+
+public class STFPreReservationTest {
+
+    @Test
+    public void testProfile() {
+        Assert.assertEquals(CapabilityUtils.getProfile(Map.of("platformName", "ANDROID", "appium:platformVersion", "13",
+                "zebrunner:deviceType", "Phone", "appium:udid", "emulator-5554")), "android/13//phone");
+        Assert.assertEquals(CapabilityUtils.getProfile(Map.of("platformName", "Android", "platformVersion", "13", "deviceType", "phone")),
+                "android/13//phone");
+    }
+
+    @Test
+    public void testDemand() {
+        STFPreReservation.Demand demand = new STFPreReservation.Demand();
+        Assert.assertFalse(demand.update(3));
+        Assert.assertEquals(demand.get(), 3d);
+        Assert.assertFalse(demand.update(0));
+        Assert.assertEquals(demand.get(), 2.4d, 0.001d);
+        Assert.assertFalse(demand.update(5));
+        Assert.assertEquals(demand.get(), 5d);
+        int intervals = 0;
+        while (!demand.update(0)) {
+            intervals++;
+        }
+        Assert.assertEquals(intervals, 10);
+    }
+}
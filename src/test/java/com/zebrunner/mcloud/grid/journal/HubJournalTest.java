@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.journal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HubJournalTest {
+
+    @Test
+    public void testAppendAndReopen() throws Exception {
+        Path path = Files.createTempDirectory("journal").resolve("hub.journal");
+        JournalFile journal = new JournalFile(path, 1024);
+        Assert.assertTrue(journal.open().isEmpty());
+        Assert.assertTrue(journal.append("R\tudid-1\t1\tfalse"));
+        Assert.assertTrue(journal.append("B\tudid-1\tsession-1"));
+        journal.close();
+
+        JournalFile reopened = new JournalFile(path, 1024);
+        Assert.assertEquals(reopened.open(), List.of("R\tudid-1\t1\tfalse", "B\tudid-1\tsession-1"));
+        Assert.assertTrue(reopened.append("U\tudid-1"));
+        reopened.rewrite(List.of("R\tudid-1\t1\tfalse"));
+        Assert.assertTrue(reopened.append("D\tudid-1"));
+        reopened.close();
+
+        Assert.assertEquals(new JournalFile(path, 1024).open(), List.of("R\tudid-1\t1\tfalse", "D\tudid-1"));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        Path path = Files.createTempDirectory("journal").resolve("hub.journal");
+        JournalFile journal = new JournalFile(path, 32);
+        journal.open();
+        Assert.assertTrue(journal.append("Q\tudid-1\tMANUAL\t1"));
+        Assert.assertFalse(journal.append("Q\tudid-2\tMANUAL\t1"));
+        journal.close();
+    }
+
+    @Test
+    public void testStateReplay() {
+        long until = System.currentTimeMillis() + 60_000;
+        HubJournal.apply("R\tjournal-1\t100\tfalse");
+        HubJournal.apply("B\tjournal-1\tsession-1");
+        HubJournal.apply("Q\tjournal-2\tMANUAL\t" + until);
+        HubJournal.apply("R\tjournal-3\t100\ttrue");
+        HubJournal.apply("D\tjournal-3");
+
+        Assert.assertEquals(HubJournal.getState().get("journal-1").getSessionId(), "session-1");
+        Assert.assertFalse(HubJournal.getState().get("journal-1").isManual());
+        Assert.assertEquals(HubJournal.getState().get("journal-2").getQuarantineReason(), "MANUAL");
+        Assert.assertNull(HubJournal.getState().get("journal-3"));
+        Assert.assertTrue(HubJournal.snapshot().containsAll(List.of("R\tjournal-1\t100\tfalse", "B\tjournal-1\tsession-1",
+                "Q\tjournal-2\tMANUAL\t" + until)));
+
+        HubJournal.apply("U\tjournal-1");
+        HubJournal.apply("D\tjournal-1");
+        HubJournal.apply("C\tjournal-2");
+        Assert.assertTrue(HubJournal.getState().isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class GridLogTest {
+
+    @Test
+    public void testSimpleFormatter() {
+        Logger logger = Logger.getLogger(GridLogTest.class.getName());
+        logger.setUseParentHandlers(false);
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+                // nothing to flush
+            }
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            GridLog.log(logger, Level.INFO, "udid-1", "session-1", "new-session", "[%s] Session will be launched on '%s'.", "udid-1", "Pixel 7");
+        } finally {
+            logger.removeHandler(handler);
+        }
+        Assert.assertEquals(records.size(), 1);
+        String formatted = new SimpleFormatter().formatMessage(records.get(0));
+        Assert.assertEquals(formatted, "[udid-1] Session will be launched on 'Pixel 7'.");
+        Assert.assertEquals(((StructuredLogRecord) records.get(0)).getPattern(), "[%s] Session will be launched on '%s'.");
+        Assert.assertEquals(((StructuredLogRecord) records.get(0)).formatMessage(), formatted);
+    }
+}
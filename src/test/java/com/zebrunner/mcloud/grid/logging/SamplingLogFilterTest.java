@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SamplingLogFilterTest {
+
+    @Test
+    public void testSuppress() {
+        SamplingLogFilter filter = new SamplingLogFilter(null, null);
+        Assert.assertFalse(filter.isLoggable(new LogRecord(Level.WARNING, "Timed out waiting for a node to become available")));
+        Assert.assertTrue(filter.isLoggable(new LogRecord(Level.WARNING, "Session will be launched")));
+        Assert.assertTrue(filter.isLoggable(new LogRecord(Level.SEVERE, "Timed out waiting for a node to become available")));
+    }
+
+    @Test
+    public void testSample() {
+        SamplingLogFilter filter = new SamplingLogFilter("", "before command=3; unknown=abc");
+        int logged = 0;
+        for (int i = 0; i < 9; i++) {
+            if (filter.isLoggable(new LogRecord(Level.INFO, "[%s] Before command: %s"))) {
+                logged++;
+            }
+        }
+        Assert.assertEquals(logged, 3);
+        Assert.assertTrue(filter.isLoggable(new LogRecord(Level.INFO, "Timed out waiting for a node to become available")));
+    }
+
+    @Test
+    public void testStructuredFormat() {
+        StructuredLogRecord record = new StructuredLogRecord(Level.WARNING, "[%s] After session.", new Object[] { "udid-1" },
+                "udid-1", "session-1", "after-session");
+        record.setLoggerName("com.zebrunner.mcloud.grid.MobileRemoteProxy");
+        String line = new StructuredFormatter().format(record);
+        Assert.assertTrue(line.contains("WARNING [MobileRemoteProxy] [udid-1] After session. udid=udid-1 sessionId=session-1 phase=after-session"),
+                line);
+    }
+}
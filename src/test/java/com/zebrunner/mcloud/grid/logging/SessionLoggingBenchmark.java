@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2018-2021 Zebrunner (https://zebrunner.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.zebrunner.mcloud.grid.logging;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * Compares per-session logging cost of the synchronous JUL handler and {@link AsyncConsoleHandler}.
+ * Every session writes the same amount of records as the hub does for a successful session.
+ * Run with: {@code java -cp <test-classpath> com.zebrunner.mcloud.grid.logging.SessionLoggingBenchmark [sessions] [threads]}
+ */
+public class SessionLoggingBenchmark {
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+            // ignore
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // ignore
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        // buffer fits all records, so the async handler is measured without dropping anything
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(
+                String.format("%s.capacity=%d", AsyncConsoleHandler.class.getName(), sessions * 5).getBytes(StandardCharsets.UTF_8)));
+
+        // warm up
+        run("sync", new StreamHandler(NULL_STREAM, new SimpleFormatter()), false, sessions / 10, threads);
+        run("async", new AsyncConsoleHandler(NULL_STREAM), true, sessions / 10, threads);
+
+        print("sync (StreamHandler + format in lambda)", run("sync", new StreamHandler(NULL_STREAM, new SimpleFormatter()), false, sessions, threads), sessions);
+        print("async (AsyncConsoleHandler + GridLog)", run("async", new AsyncConsoleHandler(NULL_STREAM), true, sessions, threads), sessions);
+    }
+
+    private static long[] run(String name, Handler handler, boolean structured, int sessions, int threads) throws InterruptedException {
+        Logger logger = Logger.getLogger(SessionLoggingBenchmark.class.getName() + "." + name);
+        logger.setUseParentHandlers(false);
+        for (Handler h : logger.getHandlers()) {
+            logger.removeHandler(h);
+        }
+        logger.addHandler(handler);
+        logger.setLevel(Level.INFO);
+
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        AtomicLong allocated = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int threadIndex = t;
+            Thread thread = new Thread(() -> {
+                long before = mxBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                for (int i = threadIndex; i < sessions; i += threads) {
+                    String udid = "udid-" + (i % 100);
+                    String sessionId = "session-" + i;
+                    if (structured) {
+                        logStructured(logger, udid, sessionId);
+                    } else {
+                        logSync(logger, udid, sessionId);
+                    }
+                }
+                allocated.addAndGet(mxBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before);
+                latch.countDown();
+            });
+            thread.start();
+        }
+        latch.await();
+        long elapsed = System.nanoTime() - start;
+        handler.close();
+        long dropped = handler instanceof AsyncConsoleHandler ? ((AsyncConsoleHandler) handler).getDropped() : 0;
+        return new long[] { elapsed, allocated.get(), dropped };
+    }
+
+    private static void logSync(Logger logger, String udid, String sessionId) {
+        logger.warning(() -> String.format("[%s] 'TestSession session = testslot.getNewSession(requestedCapability);' return SESSION.", udid));
+        logger.warning(() -> String.format("[%s] Session will be launched on '%s'.", udid, "device"));
+        logger.info(() -> String.format("[%s] Before session.", udid));
+        logger.warning(() -> String.format("[%s] After session. Last command: '%s'", udid, "DELETE"));
+        logger.warning(() -> String.format("[%s] Session on [%s]  will be closed. Ext.id: [%s]", udid, "device", sessionId));
+    }
+
+    private static void logStructured(Logger logger, String udid, String sessionId) {
+        GridLog.warning(logger, udid, "slot", "[%s] 'TestSession session = testslot.getNewSession(requestedCapability);' return SESSION.", udid);
+        GridLog.log(logger, Level.WARNING, udid, sessionId, "new-session", "[%s] Session will be launched on '%s'.", udid, "device");
+        GridLog.log(logger, Level.INFO, udid, sessionId, "before-session", "[%s] Before session.", udid);
+        GridLog.log(logger, Level.WARNING, udid, sessionId, "after-session", "[%s] After session. Last command: '%s'", udid, "DELETE");
+        GridLog.log(logger, Level.WARNING, udid, sessionId, "after-session", "[%s] Session on [%s]  will be closed. Ext.id: [%s]",
+                udid, "device", sessionId);
+    }
+
+    private static void print(String name, long[] result, int sessions) {
+        System.out.printf("%-45s %10.2f us/session %10d bytes/session (caller threads) %10d dropped records%n", name,
+                result[0] / 1000.0 / sessions, result[1] / sessions, result[2]);
+    }
+}